@@ -0,0 +1,80 @@
+package gr.aegean.benchmark;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import gr.aegean.entity.AnalysisReport;
+import gr.aegean.entity.Constraint;
+import gr.aegean.entity.Preference;
+import gr.aegean.service.assessment.AssessmentService;
+import gr.aegean.service.assessment.FilteringService;
+import gr.aegean.service.assessment.RankingService;
+import gr.aegean.service.assessment.TreeService;
+
+
+/*
+    Filtering and assessing all the reports of an analysis, what PUT /api/v1/analysis/{analysisId} does with the new
+    constraints and preferences. Each invocation assesses the reports with the next preference set.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class AssessmentBenchmark {
+    @Param({"10", "1000", "100000"})
+    public int reportCount;
+    private static final int PREFERENCE_SET_COUNT = 64;
+    private final TreeService treeService = new TreeService();
+    private final FilteringService filteringService = new FilteringService();
+    private final AssessmentService assessmentService = new AssessmentService(
+            new RankingService(treeService),
+            filteringService);
+    private List<AnalysisReport> reports;
+    private List<List<Preference>> preferenceSets;
+    private List<Constraint> constraints;
+    private int next;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        SyntheticReports syntheticReports = new SyntheticReports(42);
+        reports = syntheticReports.scoredReports(reportCount);
+        preferenceSets = syntheticReports.preferenceSets(treeService.buildTree(), PREFERENCE_SET_COUNT);
+        constraints = syntheticReports.constraints(3);
+    }
+
+    @Benchmark
+    public List<List<AnalysisReport>> filter() {
+        return filteringService.filter(reports, constraints);
+    }
+
+    @Benchmark
+    public List<List<AnalysisReport>> assessWithoutConstraints() {
+        return assessmentService.assessAnalysisResult(reports, List.of(), nextPreferences());
+    }
+
+    @Benchmark
+    public List<List<AnalysisReport>> assessWithConstraints() {
+        return assessmentService.assessAnalysisResult(reports, constraints, nextPreferences());
+    }
+
+    private List<Preference> nextPreferences() {
+        next = (next + 1) % PREFERENCE_SET_COUNT;
+
+        return preferenceSets.get(next);
+    }
+}
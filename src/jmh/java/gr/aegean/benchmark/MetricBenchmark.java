@@ -0,0 +1,74 @@
+package gr.aegean.benchmark;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import gr.aegean.model.analysis.quality.QualityMetric;
+import gr.aegean.model.analysis.sonarqube.HotspotsReport;
+import gr.aegean.model.analysis.sonarqube.IssuesReport;
+import gr.aegean.service.analysis.MetricService;
+
+
+/*
+    Applying the utfs to the measures of a project with entryCount issues and as many hotspots. The severities are
+    counted as the issues and hotspots are added to their reports, so collectAndApplyUtf measures the counting the
+    fetch stage does along with the utfs, and applyUtf the utfs alone.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class MetricBenchmark {
+    @Param({"10", "1000", "100000"})
+    public int entryCount;
+    private final MetricService metricService = new MetricService();
+    private Map<QualityMetric, Double> sonarMetrics;
+    private List<IssuesReport.IssueDetails> issues;
+    private List<HotspotsReport.HotspotDetails> hotspots;
+    private IssuesReport issuesReport;
+    private HotspotsReport hotspotsReport;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        SyntheticReports syntheticReports = new SyntheticReports(42);
+        sonarMetrics = syntheticReports.sonarMetrics();
+        issues = syntheticReports.issues(entryCount);
+        hotspots = syntheticReports.hotspots(entryCount);
+
+        issuesReport = new IssuesReport();
+        issuesReport.setIssues(issues);
+        hotspotsReport = new HotspotsReport();
+        hotspotsReport.setHotspots(hotspots);
+    }
+
+    @Benchmark
+    public Map<QualityMetric, Double> applyUtf() {
+        return metricService.applyUtf(sonarMetrics, issuesReport, hotspotsReport);
+    }
+
+    @Benchmark
+    public Map<QualityMetric, Double> collectAndApplyUtf() {
+        IssuesReport collectedIssues = new IssuesReport();
+        collectedIssues.setIssues(issues);
+        HotspotsReport collectedHotspots = new HotspotsReport();
+        collectedHotspots.setHotspots(hotspots);
+
+        return metricService.applyUtf(sonarMetrics, collectedIssues, collectedHotspots);
+    }
+}
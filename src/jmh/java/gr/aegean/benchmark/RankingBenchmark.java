@@ -0,0 +1,65 @@
+package gr.aegean.benchmark;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import gr.aegean.entity.AnalysisReport;
+import gr.aegean.entity.Preference;
+import gr.aegean.model.analysis.quality.TreeNode;
+import gr.aegean.service.assessment.RankingService;
+import gr.aegean.service.assessment.TreeService;
+
+
+/*
+    Ranking a single report, which every report of an analysis goes through on every refresh. Each invocation ranks
+    the next report with the next preference set, so the benchmark doesn't measure one preference set that the JIT
+    could specialize for.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class RankingBenchmark {
+    private static final int REPORT_COUNT = 1_000;
+    private static final int PREFERENCE_SET_COUNT = 256;
+    private final TreeService treeService = new TreeService();
+    private final RankingService rankingService = new RankingService(treeService);
+    private List<AnalysisReport> reports;
+    private List<List<Preference>> preferenceSets;
+    private int next;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        SyntheticReports syntheticReports = new SyntheticReports(42);
+        reports = syntheticReports.scoredReports(REPORT_COUNT);
+        preferenceSets = syntheticReports.preferenceSets(treeService.buildTree(), PREFERENCE_SET_COUNT);
+    }
+
+    @Benchmark
+    public TreeNode buildTree() {
+        return treeService.buildTree();
+    }
+
+    @Benchmark
+    public double rankTree() {
+        next++;
+
+        return rankingService.rankTree(
+                reports.get(next % REPORT_COUNT).getQualityMetricsReport(),
+                preferenceSets.get(next % PREFERENCE_SET_COUNT));
+    }
+}
@@ -0,0 +1,148 @@
+package gr.aegean.benchmark;
+
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import gr.aegean.entity.AnalysisReport;
+import gr.aegean.entity.Constraint;
+import gr.aegean.entity.Preference;
+import gr.aegean.model.analysis.quality.QualityAttribute;
+import gr.aegean.model.analysis.quality.QualityMetric;
+import gr.aegean.model.analysis.quality.QualityMetricOperator;
+import gr.aegean.model.analysis.quality.TreeNode;
+import gr.aegean.model.analysis.sonarqube.HotspotsReport;
+import gr.aegean.model.analysis.sonarqube.IssuesReport;
+import gr.aegean.model.analysis.sonarqube.Severity;
+import gr.aegean.model.analysis.sonarqube.VulnerabilityProbability;
+
+
+/*
+    Reports, preferences and constraints with random values, shaped like the ones of a real analysis. The generator is
+    seeded, so every run of a benchmark works on the same data.
+ */
+final class SyntheticReports {
+    private final Random random;
+    private static final String[] ISSUE_TYPES = {"BUG", "VULNERABILITY", "CODE_SMELL"};
+
+    SyntheticReports(long seed) {
+        this.random = new Random(seed);
+    }
+
+    /*
+        The quality metrics of a scored report, every metric is in the range of [0.0 - 1.0] after its utf.
+     */
+    List<AnalysisReport> scoredReports(int count) {
+        List<AnalysisReport> reports = new ArrayList<>(count);
+
+        for (int i = 0; i < count; i++) {
+            Map<QualityMetric, Double> metrics = new EnumMap<>(QualityMetric.class);
+            for (QualityMetric metric : QualityMetric.values()) {
+                metrics.put(metric, random.nextDouble());
+            }
+
+            reports.add(new AnalysisReport(new IssuesReport(), new HotspotsReport(), metrics));
+        }
+
+        return reports;
+    }
+
+    /*
+        The quality metrics as SonarQube reports them, before the utf is applied.
+     */
+    Map<QualityMetric, Double> sonarMetrics() {
+        Map<QualityMetric, Double> metrics = new EnumMap<>(QualityMetric.class);
+        double linesOfCode = 1_000 + random.nextInt(200_000);
+
+        metrics.put(QualityMetric.COMMENT_RATE, random.nextDouble() * 100);
+        metrics.put(QualityMetric.METHOD_SIZE, random.nextDouble() * 200);
+        metrics.put(QualityMetric.DUPLICATION, random.nextDouble());
+        metrics.put(QualityMetric.TECHNICAL_DEBT_RATIO, random.nextDouble());
+        metrics.put(QualityMetric.RELIABILITY_REMEDIATION_EFFORT, random.nextDouble() * linesOfCode);
+        metrics.put(QualityMetric.CYCLOMATIC_COMPLEXITY, random.nextDouble() * linesOfCode / 5);
+        metrics.put(QualityMetric.COGNITIVE_COMPLEXITY, random.nextDouble() * linesOfCode / 5);
+        metrics.put(QualityMetric.SECURITY_REMEDIATION_EFFORT, random.nextDouble() * linesOfCode * 0.06);
+        metrics.put(QualityMetric.BUG_SEVERITY, 0.0);
+        metrics.put(QualityMetric.VULNERABILITY_SEVERITY, 0.0);
+        metrics.put(QualityMetric.HOTSPOT_PRIORITY, 0.0);
+        metrics.put(QualityMetric.LINES_OF_CODE, linesOfCode);
+
+        return metrics;
+    }
+
+    List<IssuesReport.IssueDetails> issues(int count) {
+        List<IssuesReport.IssueDetails> issues = new ArrayList<>(count);
+
+        for (int i = 0; i < count; i++) {
+            IssuesReport.IssueDetails issue = new IssuesReport.IssueDetails();
+            issue.setType(ISSUE_TYPES[random.nextInt(ISSUE_TYPES.length)]);
+            issue.setSeverity(Severity.values()[random.nextInt(Severity.values().length)]);
+            issue.setComponent("src/main/File" + random.nextInt(count) + ".java");
+            issue.setLine(random.nextInt(1_000));
+            issues.add(issue);
+        }
+
+        return issues;
+    }
+
+    List<HotspotsReport.HotspotDetails> hotspots(int count) {
+        List<HotspotsReport.HotspotDetails> hotspots = new ArrayList<>(count);
+        VulnerabilityProbability[] probabilities = VulnerabilityProbability.values();
+
+        for (int i = 0; i < count; i++) {
+            HotspotsReport.HotspotDetails hotspot = new HotspotsReport.HotspotDetails();
+            hotspot.setVulnerabilityProbability(probabilities[random.nextInt(probabilities.length)]);
+            hotspot.setComponent("src/main/File" + random.nextInt(count) + ".java");
+            hotspot.setLine(random.nextInt(1_000));
+            hotspots.add(hotspot);
+        }
+
+        return hotspots;
+    }
+
+    /*
+        Every preference set gives weight to some of the child nodes of each parent node. The weights of the child
+        nodes of a parent never add up to more than 1.0, like the ones TreeService validates.
+     */
+    List<List<Preference>> preferenceSets(TreeNode root, int count) {
+        List<List<Preference>> preferenceSets = new ArrayList<>(count);
+
+        for (int i = 0; i < count; i++) {
+            List<Preference> preferences = new ArrayList<>();
+            addPreferences(root, preferences);
+            preferenceSets.add(preferences);
+        }
+
+        return preferenceSets;
+    }
+
+    List<Constraint> constraints(int count) {
+        List<Constraint> constraints = new ArrayList<>(count);
+        QualityMetricOperator[] operators = {QualityMetricOperator.GTE, QualityMetricOperator.LTE};
+
+        for (int i = 0; i < count; i++) {
+            constraints.add(new Constraint(
+                    QualityMetric.values()[random.nextInt(QualityMetric.values().length - 1)],
+                    operators[random.nextInt(operators.length)],
+                    random.nextDouble()));
+        }
+
+        return constraints;
+    }
+
+    private void addPreferences(TreeNode node, List<Preference> preferences) {
+        double remainingWeight = 1.0;
+
+        for (TreeNode child : node.getChildren()) {
+            if (random.nextBoolean()) {
+                double weight = random.nextDouble() * remainingWeight / 2;
+                remainingWeight -= weight;
+                preferences.add(new Preference(QualityAttribute.valueOf(child.getName()), weight));
+            }
+
+            addPreferences(child, preferences);
+        }
+    }
+}
@@ -1,5 +1,7 @@
 package gr.aegean.config;
 
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
@@ -7,6 +9,10 @@ import org.springframework.scheduling.annotation.EnableAsync;
 import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
 
 import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+
+import gr.aegean.exception.ServerErrorException;
+import gr.aegean.model.analysis.ExecutionMode;
 
 
 /*
@@ -20,9 +26,26 @@ public class AsyncConfig {
     private int corePoolSize;
     @Value("${thread.maxPoolSize}")
     private int maxPoolSize;
+    @Value("${thread.mode}")
+    private ExecutionMode threadMode;
+    @Value("${sonar.maxConcurrentRequests}")
+    private int sonarMaxConcurrentRequests;
+    private static final Logger LOG = LoggerFactory.getLogger(AsyncConfig.class);
 
+    /*
+        In VIRTUAL mode every task gets its own virtual thread and the pool size no longer applies. The clones and the
+        scans are limited by ConcurrencyLimits instead.
+     */
     @Bean
     public Executor taskExecutor() {
+        if (threadMode == ExecutionMode.VIRTUAL) {
+            if (threadMode.resolve() == ExecutionMode.VIRTUAL) {
+                return virtualThreadExecutor();
+            }
+            LOG.warn("Virtual threads need JDK 21 or later, running on {} with platform threads",
+                    Runtime.version());
+        }
+
         ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
 
         executor.setCorePoolSize(corePoolSize);
@@ -33,4 +56,31 @@ public class AsyncConfig {
 
         return executor;
     }
+
+    /*
+        All the requests to the SonarQube server go through this executor, so its pool size is the max number of
+        concurrent requests the server will receive from us, no matter how many analyses are running.
+     */
+    @Bean
+    public Executor sonarExecutor() {
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+
+        executor.setCorePoolSize(sonarMaxConcurrentRequests);
+        executor.setMaxPoolSize(sonarMaxConcurrentRequests);
+        executor.setThreadNamePrefix("Sonar-");
+        executor.initialize();
+
+        return executor;
+    }
+
+    /*
+        We compile against JDK 17, so the factory method is looked up at runtime.
+     */
+    private Executor virtualThreadExecutor() {
+        try {
+            return (Executor) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException roe) {
+            throw new ServerErrorException("Failed to create the virtual thread executor");
+        }
+    }
 }
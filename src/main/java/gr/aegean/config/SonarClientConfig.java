@@ -0,0 +1,99 @@
+package gr.aegean.config;
+
+import org.apache.hc.client5.http.config.ConnectionConfig;
+import org.apache.hc.client5.http.config.RequestConfig;
+import org.apache.hc.client5.http.impl.classic.CloseableHttpClient;
+import org.apache.hc.client5.http.impl.classic.HttpClientBuilder;
+import org.apache.hc.client5.http.impl.io.PoolingHttpClientConnectionManager;
+import org.apache.hc.client5.http.impl.io.PoolingHttpClientConnectionManagerBuilder;
+import org.apache.hc.core5.util.TimeValue;
+import org.apache.hc.core5.util.Timeout;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.http.client.HttpComponentsClientHttpRequestFactory;
+import org.springframework.web.client.RestTemplate;
+
+import java.time.Duration;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.httpcomponents.hc5.PoolingHttpClientConnectionManagerMetricsBinder;
+
+
+/*
+    Every request to the SonarQube server goes through a single client, so connections are kept alive and reused across
+    pages and analyses instead of opening a new connection per request.
+ */
+@Configuration
+public class SonarClientConfig {
+    @Value("${sonar.http.maxConnections}")
+    private int maxConnections;
+    @Value("${sonar.http.maxConnectionsPerRoute}")
+    private int maxConnectionsPerRoute;
+    @Value("${sonar.http.connectTimeout}")
+    private Duration connectTimeout;
+    @Value("${sonar.http.readTimeout}")
+    private Duration readTimeout;
+    @Value("${sonar.http.connectionRequestTimeout}")
+    private Duration connectionRequestTimeout;
+    @Value("${sonar.http.idleTimeout}")
+    private Duration idleTimeout;
+    @Value("${sonar.http.gzip}")
+    private boolean gzip;
+
+    @Bean(destroyMethod = "close")
+    public PoolingHttpClientConnectionManager sonarConnectionManager() {
+        return PoolingHttpClientConnectionManagerBuilder.create()
+                .setMaxConnTotal(maxConnections)
+                .setMaxConnPerRoute(maxConnectionsPerRoute)
+                .setDefaultConnectionConfig(ConnectionConfig.custom()
+                        .setConnectTimeout(Timeout.of(connectTimeout))
+                        .setSocketTimeout(Timeout.of(readTimeout))
+                        .setValidateAfterInactivity(TimeValue.ofSeconds(2))
+                        .build())
+                .build();
+    }
+
+    /*
+        The connection request timeout is how long a request waits for a free connection when the pool is exhausted.
+        Content compression is on by default in the http client, it sends Accept-Encoding and decompresses the
+        responses.
+     */
+    @Bean(destroyMethod = "close")
+    public CloseableHttpClient sonarHttpClient(PoolingHttpClientConnectionManager sonarConnectionManager) {
+        HttpClientBuilder builder = HttpClientBuilder.create()
+                .setConnectionManager(sonarConnectionManager)
+                .setDefaultRequestConfig(RequestConfig.custom()
+                        .setConnectionRequestTimeout(Timeout.of(connectionRequestTimeout))
+                        .setResponseTimeout(Timeout.of(readTimeout))
+                        .build())
+                .evictExpiredConnections()
+                .evictIdleConnections(TimeValue.of(idleTimeout));
+
+        if (!gzip) {
+            builder.disableContentCompression();
+        }
+
+        return builder.build();
+    }
+
+    @Bean
+    public RestTemplate sonarRestTemplate(CloseableHttpClient sonarHttpClient) {
+        return new RestTemplate(new HttpComponentsClientHttpRequestFactory(sonarHttpClient));
+    }
+
+    /*
+        The pool stats are available under /actuator/metrics/httpcomponents.httpclient.pool.*
+     */
+    @Bean
+    public PoolingHttpClientConnectionManagerMetricsBinder sonarConnectionPoolMetrics(
+            PoolingHttpClientConnectionManager sonarConnectionManager,
+            MeterRegistry meterRegistry) {
+        PoolingHttpClientConnectionManagerMetricsBinder binder = new PoolingHttpClientConnectionManagerMetricsBinder(
+                sonarConnectionManager,
+                "sonar");
+        binder.bindTo(meterRegistry);
+
+        return binder;
+    }
+}
@@ -11,6 +11,8 @@ import org.springframework.security.config.annotation.web.configurers.AbstractHt
 import org.springframework.security.config.http.SessionCreationPolicy;
 import org.springframework.security.web.SecurityFilterChain;
 
+import jakarta.servlet.DispatcherType;
+
 import lombok.RequiredArgsConstructor;
 
 
@@ -27,13 +29,21 @@ public class SecurityConfig {
 
         Password reset: "/api/v1/auth/password_reset?token="
         Email update: "/api/v1/user/email?token="
+
+        The SonarQube webhook is called by the SonarQube server, not by a user. It is authenticated by the signature of
+        its payload instead.
+
+        The async dispatch that completes a streamed response, e.g. the progress events of an analysis job, belongs to
+        a request that was already authorized.
      */
     @Bean
     public SecurityFilterChain securityFilterChain(HttpSecurity http) throws Exception {
         return http
                 .authorizeHttpRequests(auth -> {
+                    auth.dispatcherTypeMatchers(DispatcherType.ASYNC).permitAll();
                     auth.requestMatchers(HttpMethod.POST, "/api/v1/auth/**").permitAll();
                     auth.requestMatchers(HttpMethod.PUT, "/api/v1/auth/password_reset/confirm").permitAll();
+                    auth.requestMatchers(HttpMethod.POST, "/api/v1/sonar/webhook").permitAll();
                     /*
                         In "/api/v1/user/email/**" => ** represents zero or more directories. In the case of the request
                         "/api/v1/user/email?token=token" we have 0 subdirectories, so it works. It doesn't mean anything
@@ -2,6 +2,7 @@ package gr.aegean.controller;
 
 import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.DeleteMapping;
 import org.springframework.web.bind.annotation.GetMapping;
@@ -11,10 +12,16 @@ import org.springframework.web.bind.annotation.PutMapping;
 import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 import org.springframework.web.util.UriComponentsBuilder;
 
+import gr.aegean.mapper.dto.AnalysisJobDTOMapper;
+import gr.aegean.model.analysis.AnalysisJob;
+import gr.aegean.model.analysis.AnalysisJobStatus;
+import gr.aegean.service.analysis.AnalysisJobService;
 import gr.aegean.service.analysis.AnalysisService;
 import gr.aegean.service.analysis.ProcessProjectService;
+import gr.aegean.model.dto.analysis.AnalysisJobDTO;
 import gr.aegean.model.dto.analysis.AnalysisRequest;
 import gr.aegean.model.dto.analysis.AnalysisResult;
 import gr.aegean.model.dto.analysis.RefreshRequest;
@@ -32,20 +39,66 @@ import java.net.URI;
 public class AnalysisController {
     private final ProcessProjectService processProjectService;
     private final AnalysisService analysisService;
+    private final AnalysisJobService analysisJobService;
+    private final AnalysisJobDTOMapper jobMapper = new AnalysisJobDTOMapper();
 
+    /*
+        The analysis can take minutes, so we don't keep the request thread waiting. We respond with 202 and the
+        location of the job, which the client polls to find out when the analysis is available.
+     */
     @PostMapping
-    public ResponseEntity<Void> analyze(@Valid @RequestBody AnalysisRequest analysisRequest,
-                                        UriComponentsBuilder uriBuilder) {
-        Integer analysisId = processProjectService.processProject(analysisRequest).join();
+    public ResponseEntity<AnalysisJobDTO> analyze(@Valid @RequestBody AnalysisRequest analysisRequest,
+                                                  UriComponentsBuilder uriBuilder) {
+        AnalysisJob job = processProjectService.processProject(analysisRequest);
         URI location = uriBuilder
-                .path("/api/v1/analysis/{analysisId}")
-                .buildAndExpand(analysisId)
+                .path("/api/v1/analysis/jobs/{jobId}")
+                .buildAndExpand(job.getId())
                 .toUri();
 
         HttpHeaders headers = new HttpHeaders();
         headers.setLocation(location);
 
-        return new ResponseEntity<>(headers, HttpStatus.CREATED);
+        return new ResponseEntity<>(jobMapper.apply(job), headers, HttpStatus.ACCEPTED);
+    }
+
+    /*
+        Once the job is DONE the Location header points to the analysis that was created.
+     */
+    @GetMapping("/jobs/{jobId}")
+    public ResponseEntity<AnalysisJobDTO> getAnalysisJob(@PathVariable String jobId,
+                                                         UriComponentsBuilder uriBuilder) {
+        AnalysisJob job = analysisJobService.findJob(jobId);
+        HttpHeaders headers = new HttpHeaders();
+
+        if (job.getStatus() == AnalysisJobStatus.DONE) {
+            URI location = uriBuilder
+                    .path("/api/v1/analysis/{analysisId}")
+                    .buildAndExpand(job.getAnalysisId())
+                    .toUri();
+            headers.setLocation(location);
+        }
+
+        return new ResponseEntity<>(jobMapper.apply(job), headers, HttpStatus.OK);
+    }
+
+    /*
+        Instead of polling the job, the client can subscribe to the stages every repository goes through as they
+        happen, along with their timings.
+     */
+    @GetMapping(value = "/jobs/{jobId}/events", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public SseEmitter streamAnalysisJob(@PathVariable String jobId) {
+        return analysisJobService.streamJob(jobId);
+    }
+
+    /*
+        Stops a running job. The clones, containers and scans of its repositories are killed in the background, the
+        job is CANCELLED right away.
+     */
+    @DeleteMapping("/jobs/{jobId}")
+    public ResponseEntity<Void> cancelAnalysisJob(@PathVariable String jobId) {
+        analysisJobService.cancelJob(jobId);
+
+        return new ResponseEntity<>(HttpStatus.NO_CONTENT);
     }
 
     @GetMapping("/{analysisId}")
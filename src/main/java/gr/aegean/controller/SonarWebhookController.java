@@ -0,0 +1,33 @@
+package gr.aegean.controller;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestHeader;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+import gr.aegean.service.analysis.SonarWebhookService;
+
+import lombok.RequiredArgsConstructor;
+
+
+/*
+    The payload is read as a String because the signature is computed on the raw body.
+ */
+@RestController
+@RequiredArgsConstructor
+@RequestMapping("/api/v1/sonar")
+public class SonarWebhookController {
+    private final SonarWebhookService sonarWebhookService;
+
+    @PostMapping("/webhook")
+    public ResponseEntity<Void> handleWebhook(@RequestBody String payload,
+                                              @RequestHeader(value = "X-Sonar-Webhook-HMAC-SHA256",
+                                                      required = false) String signature) {
+        sonarWebhookService.handleWebhook(payload, signature);
+
+        return new ResponseEntity<>(HttpStatus.NO_CONTENT);
+    }
+}
@@ -0,0 +1,45 @@
+package gr.aegean.deserializer;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.DeserializationContext;
+import com.fasterxml.jackson.databind.JsonDeserializer;
+
+import gr.aegean.model.analysis.sonarqube.HotspotsReport;
+import gr.aegean.model.analysis.sonarqube.Paging;
+
+import java.io.IOException;
+
+/*
+    Reads the hotspots one at a time straight from the stream, so their vulnerability probabilities are counted in the
+    same pass. The components SonarQube sends along with the hotspots are skipped.
+ */
+public class HotspotsReportDeserializer extends JsonDeserializer<HotspotsReport> {
+
+    @Override
+    public HotspotsReport deserialize(JsonParser parser, DeserializationContext context) throws IOException {
+        if (!parser.isExpectedStartObjectToken()) {
+            return (HotspotsReport) context.handleUnexpectedToken(HotspotsReport.class, parser);
+        }
+
+        HotspotsReport hotspotsReport = new HotspotsReport();
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.getCurrentName();
+            JsonToken value = parser.nextToken();
+
+            switch (field) {
+                case "hotspots" -> {
+                    if (value == JsonToken.START_ARRAY) {
+                        while (parser.nextToken() != JsonToken.END_ARRAY) {
+                            hotspotsReport.addHotspot(context.readValue(parser, HotspotsReport.HotspotDetails.class));
+                        }
+                    }
+                }
+                case "paging" -> hotspotsReport.setPaging(context.readValue(parser, Paging.class));
+                default -> parser.skipChildren();
+            }
+        }
+
+        return hotspotsReport;
+    }
+}
@@ -0,0 +1,46 @@
+package gr.aegean.deserializer;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.DeserializationContext;
+import com.fasterxml.jackson.databind.JsonDeserializer;
+
+import gr.aegean.model.analysis.sonarqube.IssuesReport;
+import gr.aegean.model.analysis.sonarqube.Paging;
+
+import java.io.IOException;
+
+/*
+    Reads the issues one at a time straight from the stream and adds them to the report, so their severities are
+    counted in the same pass. Everything else SonarQube sends along with the issues, like components, rules and facets,
+    is skipped without being read into memory.
+ */
+public class IssuesReportDeserializer extends JsonDeserializer<IssuesReport> {
+
+    @Override
+    public IssuesReport deserialize(JsonParser parser, DeserializationContext context) throws IOException {
+        if (!parser.isExpectedStartObjectToken()) {
+            return (IssuesReport) context.handleUnexpectedToken(IssuesReport.class, parser);
+        }
+
+        IssuesReport issuesReport = new IssuesReport();
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.getCurrentName();
+            JsonToken value = parser.nextToken();
+
+            switch (field) {
+                case "issues" -> {
+                    if (value == JsonToken.START_ARRAY) {
+                        while (parser.nextToken() != JsonToken.END_ARRAY) {
+                            issuesReport.addIssue(context.readValue(parser, IssuesReport.IssueDetails.class));
+                        }
+                    }
+                }
+                case "paging" -> issuesReport.setPaging(context.readValue(parser, Paging.class));
+                default -> parser.skipChildren();
+            }
+        }
+
+        return issuesReport;
+    }
+}
@@ -1,5 +1,7 @@
 package gr.aegean.entity;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
+
 import lombok.AllArgsConstructor;
 import lombok.Getter;
 import lombok.NoArgsConstructor;
@@ -27,6 +29,13 @@ public class AnalysisReport {
     private HotspotsReport hotspotsReport;
     private Map<QualityMetric, Double> qualityMetricsReport;
     private Double rank;
+    /*
+        The SonarQube measures of every file, keyed by the path of the file and then by the metric. They are only
+        needed to analyze the next commit of the repository incrementally, so they are stored with the cached report
+        and not as part of it.
+     */
+    @JsonIgnore
+    private Map<String, Map<String, Double>> fileMeasures;
 
     public AnalysisReport(IssuesReport issuesReport,
                           HotspotsReport hotspotsReport,
@@ -0,0 +1,17 @@
+package gr.aegean.entity;
+
+import java.time.LocalDateTime;
+
+
+/*
+    The report is kept as json, the same way it is stored in the analysis_report table. Every cache hit deserializes
+    its own copy of the report, so the cached entry can never be modified by the request that reads it.
+    The measures of every file are kept next to the report, so the next commit of the repository can be analyzed
+    incrementally. They are null for entries created before incremental analysis.
+ */
+public record AnalysisReportCacheEntry(String projectUrl,
+                                       String commitSha,
+                                       String report,
+                                       String fileMeasures,
+                                       LocalDateTime createdDate) {
+}
@@ -0,0 +1,13 @@
+package gr.aegean.exception;
+
+
+/*
+    A stage of the analysis of a repository ran past its deadline. Only that repository is skipped, the rest of the
+    request goes on.
+ */
+public class StageTimeoutException extends RuntimeException {
+
+    public StageTimeoutException(String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,19 @@
+package gr.aegean.mapper.dto;
+
+import gr.aegean.model.analysis.AnalysisJob;
+import gr.aegean.model.dto.analysis.AnalysisJobDTO;
+
+import java.util.function.Function;
+
+
+public class AnalysisJobDTOMapper implements Function<AnalysisJob, AnalysisJobDTO> {
+
+    @Override
+    public AnalysisJobDTO apply(AnalysisJob job) {
+        return new AnalysisJobDTO(
+                job.getId(),
+                job.getStatus(),
+                job.getAnalysisId(),
+                job.getErrorMessage());
+    }
+}
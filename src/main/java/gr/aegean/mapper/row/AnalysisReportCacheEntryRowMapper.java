@@ -0,0 +1,26 @@
+package gr.aegean.mapper.row;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+
+import org.springframework.jdbc.core.RowMapper;
+
+import gr.aegean.entity.AnalysisReportCacheEntry;
+
+
+public class AnalysisReportCacheEntryRowMapper implements RowMapper<AnalysisReportCacheEntry> {
+    @Override
+    public AnalysisReportCacheEntry mapRow(ResultSet resultSet, int rowNum) throws SQLException {
+        Timestamp timestamp = resultSet.getTimestamp("created_date");
+        LocalDateTime createdDate = timestamp != null ? timestamp.toLocalDateTime() : null;
+
+        return new AnalysisReportCacheEntry(
+                resultSet.getString("project_url"),
+                resultSet.getString("commit_sha"),
+                resultSet.getString("report"),
+                resultSet.getString("file_measures"),
+                createdDate);
+    }
+}
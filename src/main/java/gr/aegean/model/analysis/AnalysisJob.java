@@ -0,0 +1,262 @@
+package gr.aegean.model.analysis;
+
+import lombok.AccessLevel;
+import lombok.Getter;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+
+/*
+    An analysis job tracks the progress of an analysis request that runs in the background. The request thread returns
+    as soon as the job is created and the client polls the job until it is either DONE, FAILED or CANCELLED, or
+    subscribes to the progress events of its repositories.
+ */
+@Getter
+public class AnalysisJob {
+    private final String id;
+    private final Integer userId;
+    private final Instant createdDate;
+    private volatile AnalysisJobStatus status;
+    private volatile Integer analysisId;
+    private volatile String errorMessage;
+    private volatile Instant finishedDate;
+    @Getter(AccessLevel.NONE)
+    private final List<AnalysisProgressEvent> events = new ArrayList<>();
+    @Getter(AccessLevel.NONE)
+    private final Map<String, Instant> lastEventDates = new HashMap<>();
+    /*
+        A listener can unsubscribe while it's being notified, e.g. when sending to a closed stream fails.
+     */
+    @Getter(AccessLevel.NONE)
+    private final List<AnalysisJobListener> listeners = new CopyOnWriteArrayList<>();
+    /*
+        Listeners send to the client, which can block, so they are never notified while the job is locked or by the
+        thread that recorded the event, which is a stage worker. The notifications are queued under the lock, in the
+        order of the events, and drained on the notifier by one task at a time, so every listener still sees the
+        events in order and a slow client only holds a notifier thread.
+     */
+    @Getter(AccessLevel.NONE)
+    private final Executor notifier;
+    @Getter(AccessLevel.NONE)
+    private final Queue<Runnable> notifications = new ConcurrentLinkedQueue<>();
+    @Getter(AccessLevel.NONE)
+    private final AtomicBoolean notifying = new AtomicBoolean();
+    /*
+        Stop the stages of the job that are running, when the job is cancelled.
+     */
+    @Getter(AccessLevel.NONE)
+    private final List<Runnable> cancelHooks = new ArrayList<>();
+
+    /*
+        Listeners are notified by the thread that records the event.
+     */
+    public AnalysisJob(Integer userId) {
+        this(userId, Runnable::run);
+    }
+
+    public AnalysisJob(Integer userId, Executor notifier) {
+        this.notifier = notifier;
+        this.id = UUID.randomUUID().toString();
+        this.userId = userId;
+        this.createdDate = Instant.now();
+        this.status = AnalysisJobStatus.QUEUED;
+    }
+
+    /*
+        The repositories of a request are analyzed in parallel, so different threads will report different stages. The
+        job reflects the furthest stage any of the repositories has reached and never moves backwards.
+     */
+    public synchronized void advanceTo(AnalysisJobStatus next) {
+        if (!isFinished() && next.ordinal() > status.ordinal()) {
+            status = next;
+        }
+    }
+
+    public void record(String projectUrl, AnalysisProgressStage stage) {
+        synchronized (this) {
+            if (isFinished()) {
+                return;
+            }
+
+            Instant now = Instant.now();
+            Instant previous = lastEventDates.getOrDefault(projectUrl, createdDate);
+            lastEventDates.put(projectUrl, now);
+
+            AnalysisProgressEvent event = new AnalysisProgressEvent(
+                    projectUrl,
+                    stage,
+                    now,
+                    Duration.between(previous, now).toMillis(),
+                    Duration.between(createdDate, now).toMillis());
+            events.add(event);
+            List<AnalysisJobListener> recipients = List.copyOf(listeners);
+            notifications.add(() -> recipients.forEach(listener -> listener.onProgress(event)));
+        }
+
+        deliverNotifications();
+    }
+
+    /*
+        A job that was cancelled is not completed or failed by the stages that were still unwinding.
+     */
+    public void complete(Integer analysisId) {
+        synchronized (this) {
+            if (isFinished()) {
+                return;
+            }
+
+            this.analysisId = analysisId;
+            this.status = AnalysisJobStatus.DONE;
+            this.finishedDate = Instant.now();
+            queueFinished();
+        }
+
+        deliverNotifications();
+    }
+
+    public void fail(String errorMessage) {
+        synchronized (this) {
+            if (isFinished()) {
+                return;
+            }
+
+            this.errorMessage = errorMessage;
+            this.status = AnalysisJobStatus.FAILED;
+            this.finishedDate = Instant.now();
+            queueFinished();
+        }
+
+        deliverNotifications();
+    }
+
+    /*
+        The job is finished as soon as it's cancelled, the stages that are running are stopped and release their
+        threads in the background. Stopping a stage can kill a container, so the hooks also run outside the lock.
+     */
+    public void cancel() {
+        List<Runnable> hooks;
+
+        synchronized (this) {
+            if (isFinished()) {
+                return;
+            }
+
+            this.errorMessage = "The analysis was cancelled";
+            this.status = AnalysisJobStatus.CANCELLED;
+            this.finishedDate = Instant.now();
+            queueFinished();
+
+            hooks = List.copyOf(cancelHooks);
+            cancelHooks.clear();
+        }
+
+        deliverNotifications();
+        hooks.forEach(Runnable::run);
+    }
+
+    /*
+        A hook that is registered after the job was cancelled runs right away.
+     */
+    public void onCancel(Runnable hook) {
+        synchronized (this) {
+            if (status != AnalysisJobStatus.CANCELLED) {
+                cancelHooks.add(hook);
+                return;
+            }
+        }
+
+        hook.run();
+    }
+
+    public synchronized void removeCancelHook(Runnable hook) {
+        cancelHooks.remove(hook);
+    }
+
+    public boolean isCancelled() {
+        return status == AnalysisJobStatus.CANCELLED;
+    }
+
+    /*
+        The events recorded so far are replayed to the listener first, so a late subscriber still sees the entire
+        progress. A listener of a job that is already finished is only notified, not kept.
+     */
+    public void subscribe(AnalysisJobListener listener) {
+        synchronized (this) {
+            List<AnalysisProgressEvent> replay = List.copyOf(events);
+            notifications.add(() -> replay.forEach(listener::onProgress));
+
+            if (isFinished()) {
+                notifications.add(() -> listener.onFinished(this));
+            } else {
+                listeners.add(listener);
+            }
+        }
+
+        deliverNotifications();
+    }
+
+    public void unsubscribe(AnalysisJobListener listener) {
+        listeners.remove(listener);
+    }
+
+    public synchronized List<AnalysisProgressEvent> getEvents() {
+        return List.copyOf(events);
+    }
+
+    public boolean isFinished() {
+        return status == AnalysisJobStatus.DONE
+                || status == AnalysisJobStatus.FAILED
+                || status == AnalysisJobStatus.CANCELLED;
+    }
+
+    private void queueFinished() {
+        List<AnalysisJobListener> recipients = List.copyOf(listeners);
+        listeners.clear();
+        notifications.add(() -> recipients.forEach(listener -> listener.onFinished(this)));
+    }
+
+    /*
+        A drain that is already scheduled or running picks up the notifications that are queued meanwhile. Once the
+        notifier is shut down the notifications are dropped, there is no one left to stream to.
+     */
+    private void deliverNotifications() {
+        if (notifications.isEmpty() || !notifying.compareAndSet(false, true)) {
+            return;
+        }
+
+        try {
+            notifier.execute(this::drainNotifications);
+        } catch (RejectedExecutionException ree) {
+            notifications.clear();
+            notifying.set(false);
+        }
+    }
+
+    /*
+        The queue is checked again after the flag is cleared, in case a notification was queued right before that.
+     */
+    private void drainNotifications() {
+        do {
+            try {
+                Runnable notification;
+                while ((notification = notifications.poll()) != null) {
+                    notification.run();
+                }
+            } finally {
+                notifying.set(false);
+            }
+        } while (!notifications.isEmpty() && notifying.compareAndSet(false, true));
+    }
+}
@@ -0,0 +1,13 @@
+package gr.aegean.model.analysis;
+
+
+/*
+    Called on the notifier of the job, never by the stage that records the event and never while holding the lock of
+    the job. The notifications of a job are delivered by one thread at a time, in the order they were recorded.
+ */
+public interface AnalysisJobListener {
+
+    void onProgress(AnalysisProgressEvent event);
+
+    void onFinished(AnalysisJob job);
+}
@@ -0,0 +1,15 @@
+package gr.aegean.model.analysis;
+
+
+/*
+    The order of the constants matters. A job can only move forward, from QUEUED towards DONE/FAILED/CANCELLED.
+ */
+public enum AnalysisJobStatus {
+    QUEUED,
+    CLONING,
+    SCANNING,
+    FETCHING,
+    DONE,
+    FAILED,
+    CANCELLED
+}
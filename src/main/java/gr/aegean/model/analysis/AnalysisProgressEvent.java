@@ -0,0 +1,15 @@
+package gr.aegean.model.analysis;
+
+import java.time.Instant;
+
+
+/*
+    The stageMillis is the time since the previous event of the same repository, or since the job was created for its
+    first event. The elapsedMillis is the time since the job was created.
+ */
+public record AnalysisProgressEvent(String projectUrl,
+                                    AnalysisProgressStage stage,
+                                    Instant timestamp,
+                                    long stageMillis,
+                                    long elapsedMillis) {
+}
@@ -0,0 +1,19 @@
+package gr.aegean.model.analysis;
+
+
+/*
+    The stages a repository goes through during an analysis. A repository either reaches SCORED, or stops at CACHED,
+    SKIPPED or FAILED. SHARED means the same commit was already being analyzed and the repository waits for that
+    analysis instead of running its own.
+ */
+public enum AnalysisProgressStage {
+    CLONED,
+    CACHED,
+    SHARED,
+    LANGUAGES_DETECTED,
+    SCAN_STARTED,
+    SONAR_PROCESSED,
+    SCORED,
+    SKIPPED,
+    FAILED
+}
@@ -0,0 +1,48 @@
+package gr.aegean.model.analysis;
+
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.Set;
+
+
+/*
+    A checkout that passed language detection, as it moves from the detect stage through the scan stage to the fetch
+    stage. The compute engine task id is null until the project is scanned, and it stays null if the scanner output
+    didn't include it.
+    The previous analysis and the files that changed since its commit are null unless the project is analyzed
+    incrementally.
+ */
+public record DetectedProject(Path projectPath,
+                              String projectKey,
+                              ProjectProfile profile,
+                              Map<String, Double> languages,
+                              String ceTaskId,
+                              PreviousAnalysis previousAnalysis,
+                              Set<String> changedFiles) {
+
+    public DetectedProject withCeTaskId(String ceTaskId) {
+        return new DetectedProject(
+                projectPath,
+                projectKey,
+                profile,
+                languages,
+                ceTaskId,
+                previousAnalysis,
+                changedFiles);
+    }
+
+    public DetectedProject withPreviousAnalysis(PreviousAnalysis previousAnalysis, Set<String> changedFiles) {
+        return new DetectedProject(
+                projectPath,
+                projectKey,
+                profile,
+                languages,
+                ceTaskId,
+                previousAnalysis,
+                changedFiles);
+    }
+
+    public boolean isIncremental() {
+        return previousAnalysis != null;
+    }
+}
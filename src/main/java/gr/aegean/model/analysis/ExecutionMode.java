@@ -0,0 +1,23 @@
+package gr.aegean.model.analysis;
+
+
+/*
+    PLATFORM runs every repository pipeline on a thread of a fixed size pool. VIRTUAL runs each one on its own virtual
+    thread, which needs a JDK 21 or later. The pipeline spends most of its time blocked on the network, git, docker and
+    sonar, so a blocked virtual thread costs next to nothing and many more repositories can be in flight at once.
+ */
+public enum ExecutionMode {
+    PLATFORM,
+    VIRTUAL;
+
+    /*
+        Virtual threads are requested but the JDK doesn't have them, so we fall back to platform threads.
+     */
+    public ExecutionMode resolve() {
+        if (this == VIRTUAL && Runtime.version().feature() < 21) {
+            return PLATFORM;
+        }
+
+        return this;
+    }
+}
@@ -0,0 +1,10 @@
+package gr.aegean.model.analysis;
+
+
+/*
+    IN_PROCESS detects the languages by walking the project directory, LINGUIST runs GitHub linguist in a container.
+ */
+public enum LanguageDetectionMode {
+    IN_PROCESS,
+    LINGUIST
+}
@@ -0,0 +1,22 @@
+package gr.aegean.model.analysis;
+
+
+/*
+    The stages a repository goes through, in order. Each stage has its own pool, so a slow scan doesn't hold a thread
+    that could be cloning the next repository.
+ */
+public enum PipelineStage {
+    CLONE,
+    DETECT,
+    SCAN,
+    FETCH,
+    SCORE,
+    PERSIST;
+
+    /**
+     * @return The name of the stage in the configuration and in the metrics, e.g. clone.
+     */
+    public String key() {
+        return name().toLowerCase();
+    }
+}
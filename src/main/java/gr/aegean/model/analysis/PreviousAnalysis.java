@@ -0,0 +1,11 @@
+package gr.aegean.model.analysis;
+
+import gr.aegean.entity.AnalysisReport;
+
+
+/*
+    The latest cached analysis of a repository and the commit it was produced from. The report includes the measures
+    of its files.
+ */
+public record PreviousAnalysis(String commitSha, AnalysisReport report) {
+}
@@ -0,0 +1,25 @@
+package gr.aegean.model.analysis;
+
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.Set;
+
+
+/*
+    What a single scan of a checkout found, so later stages don't have to walk the project again.
+    buildMarkers: the names of the build files found anywhere in the project, e.g. pom.xml, package.json
+    modules: the top level directories that have a build file of their own
+    bytesByExtension: keyed by the lowercase extension, files without one are under ""
+ */
+public record ProjectProfile(Path root,
+                             Set<String> buildMarkers,
+                             Set<String> modules,
+                             long fileCount,
+                             long totalBytes,
+                             Map<String, Long> bytesByExtension,
+                             Map<String, Long> bytesByLanguage) {
+
+    public boolean isMavenProject() {
+        return buildMarkers.contains("pom.xml");
+    }
+}
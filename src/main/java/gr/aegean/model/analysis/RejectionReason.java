@@ -0,0 +1,23 @@
+package gr.aegean.model.analysis;
+
+
+/*
+    Why a repository was skipped instead of analyzed, published as analysis.repositories.rejected tagged with the
+    reason.
+    PRIVATE: the remote can't be read, because the repository is private or the url doesn't point to one
+    UNSUPPORTED_LANGUAGE: none of the detected languages is supported
+    UNSUPPORTED_BUILD: a Java project that is not built with Maven
+    BUILD_FAILED: the Maven build of the project failed
+    ANALYSIS_FAILED: SonarQube failed to process the report of the scanner
+ */
+public enum RejectionReason {
+    PRIVATE,
+    UNSUPPORTED_LANGUAGE,
+    UNSUPPORTED_BUILD,
+    BUILD_FAILED,
+    ANALYSIS_FAILED;
+
+    public String key() {
+        return name().toLowerCase();
+    }
+}
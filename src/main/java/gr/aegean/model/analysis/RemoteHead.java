@@ -0,0 +1,9 @@
+package gr.aegean.model.analysis;
+
+
+/*
+    The default branch of a remote repository and the commit it points to, e.g. refs/heads/main. The branch is null
+    when the remote did not tell us which branch its HEAD points to.
+ */
+public record RemoteHead(String branch, String commitSha) {
+}
@@ -0,0 +1,13 @@
+package gr.aegean.model.analysis;
+
+
+/*
+    The outcome of a scan that ran in a container. The compute engine task id is null if it was not found in the output
+    of the scanner.
+ */
+public record ScanResult(int exitCode, String ceTaskId) {
+
+    public boolean succeeded() {
+        return exitCode == 0;
+    }
+}
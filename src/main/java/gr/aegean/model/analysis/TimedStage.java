@@ -0,0 +1,25 @@
+package gr.aegean.model.analysis;
+
+
+/*
+    The steps of the analysis of a repository we time, published as analysis.stage.duration tagged with the step.
+    The stages of the pipeline are coarser, the scan stage for example both builds the Maven image and runs the
+    scanner. Each Sonar request of the fetch is timed on its own, since they run concurrently.
+ */
+public enum TimedStage {
+    CLONE,
+    LANGUAGE_DETECTION,
+    BUILD,
+    SCAN,
+    SONAR_WAIT,
+    SONAR_FETCH_ISSUES,
+    SONAR_FETCH_HOTSPOTS,
+    SONAR_FETCH_MEASURES,
+    SONAR_FETCH_FILE_MEASURES,
+    UTF,
+    PERSIST;
+
+    public String key() {
+        return name().toLowerCase();
+    }
+}
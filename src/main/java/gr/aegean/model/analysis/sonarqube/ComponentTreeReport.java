@@ -0,0 +1,28 @@
+package gr.aegean.model.analysis.sonarqube;
+
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+
+import lombok.Getter;
+import lombok.Setter;
+
+import java.util.List;
+
+
+/*
+    The measures of the files of a project, a page at a time. The path of a file is relative to the project directory.
+ */
+@Getter
+@Setter
+@JsonIgnoreProperties(ignoreUnknown = true)
+public class ComponentTreeReport {
+    private Paging paging;
+    private List<Component> components;
+
+    @Getter
+    @Setter
+    @JsonIgnoreProperties(ignoreUnknown = true)
+    public static class Component {
+        private String path;
+        private List<QualityMetricReport.Measures> measures;
+    }
+}
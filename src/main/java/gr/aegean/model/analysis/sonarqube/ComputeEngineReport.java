@@ -0,0 +1,27 @@
+package gr.aegean.model.analysis.sonarqube;
+
+import lombok.Getter;
+import lombok.Setter;
+
+import java.util.List;
+
+
+/*
+    Maps the responses of api/ce/task (task) and api/ce/component (queue, current). After a scanner uploads its report,
+    SonarQube processes it in the background as a compute engine task. The analysis is only available once that task
+    has finished.
+ */
+@Getter
+@Setter
+public class ComputeEngineReport {
+    private Task task;
+    private List<Task> queue;
+    private Task current;
+
+    @Getter
+    @Setter
+    public static class Task {
+        private String id;
+        private String status;
+    }
+}
@@ -1,18 +1,65 @@
 package gr.aegean.model.analysis.sonarqube;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import com.fasterxml.jackson.databind.annotation.JsonDeserialize;
+
+import gr.aegean.deserializer.HotspotsReportDeserializer;
+
 import lombok.Getter;
 import lombok.Setter;
 
+import java.util.ArrayList;
+import java.util.EnumMap;
 import java.util.List;
+import java.util.Map;
 
 
+/*
+    The vulnerability probabilities are counted as the hotspots are added, so the hotspot priority metric doesn't have
+    to go through the hotspots again.
+ */
 @Getter
-@Setter
+@JsonDeserialize(using = HotspotsReportDeserializer.class)
 public class HotspotsReport {
-    private List<HotspotDetails> hotspots;
+    private List<HotspotDetails> hotspots = new ArrayList<>();
+    /*
+        Only read from the SonarQube response, it's not part of the report we store.
+     */
+    @Setter
+    @JsonProperty(access = JsonProperty.Access.WRITE_ONLY)
+    private Paging paging;
+    @JsonIgnore
+    private final Map<VulnerabilityProbability, Long> vulnerabilityProbabilityCount =
+            new EnumMap<>(VulnerabilityProbability.class);
+
+    public void setHotspots(List<HotspotDetails> hotspots) {
+        this.hotspots = new ArrayList<>();
+        vulnerabilityProbabilityCount.clear();
+        hotspots.forEach(this::addHotspot);
+    }
+
+    public void addHotspot(HotspotDetails hotspot) {
+        hotspots.add(hotspot);
+
+        if (hotspot.getVulnerabilityProbability() != null) {
+            vulnerabilityProbabilityCount.merge(hotspot.getVulnerabilityProbability(), 1L, Long::sum);
+        }
+    }
+
+    /*
+        Adds the hotspots of another page along with their counts.
+     */
+    public void merge(HotspotsReport other) {
+        hotspots.addAll(other.getHotspots());
+        other.getVulnerabilityProbabilityCount().forEach((probability, count) ->
+                vulnerabilityProbabilityCount.merge(probability, count, Long::sum));
+    }
 
     @Getter
     @Setter
+    @JsonIgnoreProperties(ignoreUnknown = true)
     public static class HotspotDetails {
         private String component;
         private String securityCategory;
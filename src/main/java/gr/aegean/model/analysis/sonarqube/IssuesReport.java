@@ -1,23 +1,77 @@
 package gr.aegean.model.analysis.sonarqube;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import com.fasterxml.jackson.databind.annotation.JsonDeserialize;
+
+import gr.aegean.deserializer.IssuesReportDeserializer;
+
 import lombok.Getter;
 import lombok.Setter;
 
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 
 /*
     For the mapping we need getters and a default constructor, the object mapper will use them to map the response from
     the server to our IssuesReport POJO. This class will map BUGS,CODE SMELLS AND VULNERABILITIES. HOTSPOTS is a
     separate request.
+    The severities of every issue type are counted as the issues are added, so the severity metrics don't have to go
+    through the issues again.
  */
 @Getter
-@Setter
+@JsonDeserialize(using = IssuesReportDeserializer.class)
 public class IssuesReport {
-    private List<IssueDetails> issues;
+    private List<IssueDetails> issues = new ArrayList<>();
+    /*
+        Only read from the SonarQube response, it's not part of the report we store.
+     */
+    @Setter
+    @JsonProperty(access = JsonProperty.Access.WRITE_ONLY)
+    private Paging paging;
+    @JsonIgnore
+    private final Map<String, Map<Severity, Long>> severityCountByType = new HashMap<>();
+
+    public void setIssues(List<IssueDetails> issues) {
+        this.issues = new ArrayList<>();
+        severityCountByType.clear();
+        issues.forEach(this::addIssue);
+    }
+
+    public void addIssue(IssueDetails issue) {
+        issues.add(issue);
+
+        if (issue.getType() != null && issue.getSeverity() != null) {
+            severityCountByType.computeIfAbsent(issue.getType(), type -> new EnumMap<>(Severity.class))
+                    .merge(issue.getSeverity(), 1L, Long::sum);
+        }
+    }
+
+    /*
+        Adds the issues of another page along with their counts.
+     */
+    public void merge(IssuesReport other) {
+        issues.addAll(other.getIssues());
+        other.getSeverityCountByType().forEach((type, severityCount) -> severityCount.forEach((severity, count) ->
+                severityCountByType.computeIfAbsent(type, key -> new EnumMap<>(Severity.class))
+                        .merge(severity, count, Long::sum)));
+    }
+
+    /**
+     * @return The number of issues of the given type per severity. Severities with no issues are not included.
+     */
+    public Map<Severity, Long> getSeverityCount(String type) {
+        return severityCountByType.getOrDefault(type, Map.of());
+    }
 
     @Getter
     @Setter
+    @JsonIgnoreProperties(ignoreUnknown = true)
     public static class IssueDetails {
         private String rule;
         private Severity severity;
@@ -0,0 +1,16 @@
+package gr.aegean.model.analysis.sonarqube;
+
+import lombok.Getter;
+import lombok.Setter;
+
+
+/*
+    Paginated SonarQube responses report the total number of items across all pages.
+ */
+@Getter
+@Setter
+public class Paging {
+    private int pageIndex;
+    private int pageSize;
+    private int total;
+}
@@ -0,0 +1,28 @@
+package gr.aegean.model.analysis.sonarqube;
+
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+
+import lombok.Getter;
+import lombok.Setter;
+
+import java.util.List;
+
+
+/*
+    The projects on the server, a page at a time. A project that was never analyzed has no last analysis date.
+ */
+@Getter
+@Setter
+@JsonIgnoreProperties(ignoreUnknown = true)
+public class ProjectsReport {
+    private Paging paging;
+    private List<Project> components;
+
+    @Getter
+    @Setter
+    @JsonIgnoreProperties(ignoreUnknown = true)
+    public static class Project {
+        private String key;
+        private String lastAnalysisDate;
+    }
+}
@@ -0,0 +1,16 @@
+package gr.aegean.model.analysis.sonarqube;
+
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+
+
+/*
+    The part of the payload SonarQube sends to a webhook once a compute engine task finishes, that we need.
+    https://docs.sonarsource.com/sonarqube/latest/project-administration/webhooks/
+ */
+@JsonIgnoreProperties(ignoreUnknown = true)
+public record SonarWebhookPayload(String taskId, String status, Project project) {
+
+    @JsonIgnoreProperties(ignoreUnknown = true)
+    public record Project(String key) {
+    }
+}
@@ -0,0 +1,13 @@
+package gr.aegean.model.dto.analysis;
+
+import gr.aegean.model.analysis.AnalysisJobStatus;
+
+
+/*
+    The analysisId is only present when the job is DONE and the message only when the job has FAILED.
+ */
+public record AnalysisJobDTO(String jobId,
+                             AnalysisJobStatus status,
+                             Integer analysisId,
+                             String message) {
+}
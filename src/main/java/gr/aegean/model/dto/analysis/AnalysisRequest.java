@@ -24,5 +24,16 @@ public record AnalysisRequest(
         @Valid
         List<Constraint> constraints,
         @Valid
-        List<Preference> preferences) {
+        List<Preference> preferences,
+        CloneOptions cloneOptions) {
+
+    public AnalysisRequest {
+        if (cloneOptions == null) {
+            cloneOptions = new CloneOptions(null, null);
+        }
+    }
+
+    public AnalysisRequest(List<String> projectUrls, List<Constraint> constraints, List<Preference> preferences) {
+        this(projectUrls, constraints, preferences, null);
+    }
 }
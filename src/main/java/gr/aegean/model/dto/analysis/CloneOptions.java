@@ -0,0 +1,20 @@
+package gr.aegean.model.dto.analysis;
+
+
+/*
+    By default, we only fetch the latest commit of the default branch without tags or submodules, since the analysis
+    only looks at the current state of the code. A request can opt out and ask for the full history or the submodules.
+    Git LFS content is never downloaded, JGit leaves the LFS pointer files in place.
+ */
+public record CloneOptions(Boolean shallow, Boolean submodules) {
+
+    public CloneOptions {
+        if (shallow == null) {
+            shallow = true;
+        }
+
+        if (submodules == null) {
+            submodules = false;
+        }
+    }
+}
@@ -0,0 +1,103 @@
+package gr.aegean.repository;
+
+import gr.aegean.entity.AnalysisReportCacheEntry;
+import gr.aegean.mapper.row.AnalysisReportCacheEntryRowMapper;
+
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.Optional;
+
+import org.springframework.dao.IncorrectResultSizeDataAccessException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Repository;
+
+import lombok.RequiredArgsConstructor;
+
+
+@Repository
+@RequiredArgsConstructor
+public class AnalysisReportCacheRepository {
+    private final JdbcTemplate jdbcTemplate;
+    private final AnalysisReportCacheEntryRowMapper mapper = new AnalysisReportCacheEntryRowMapper();
+
+    /*
+        The same commit can be analyzed twice if two requests for it ran at the same time, in that case the latest
+        report replaces the previous one.
+     */
+    public void saveEntry(AnalysisReportCacheEntry entry) {
+        final String sql = "INSERT INTO analysis_report_cache(" +
+                "project_url, " +
+                "commit_sha, " +
+                "report, " +
+                "file_measures, " +
+                "created_date) VALUES(?, ?, ?::jsonb, ?::jsonb, ?) " +
+                "ON CONFLICT (project_url, commit_sha) DO UPDATE SET " +
+                "report = EXCLUDED.report, " +
+                "file_measures = EXCLUDED.file_measures, " +
+                "created_date = EXCLUDED.created_date";
+
+        jdbcTemplate.update(
+                sql,
+                entry.projectUrl(),
+                entry.commitSha(),
+                entry.report(),
+                entry.fileMeasures(),
+                Timestamp.valueOf(entry.createdDate()));
+    }
+
+    /*
+        Entries that were not created after the expiry threshold have expired and are treated as missing.
+     */
+    public Optional<AnalysisReportCacheEntry> findEntry(String projectUrl,
+                                                        String commitSha,
+                                                        LocalDateTime expiryThreshold) {
+        final String sql = "SELECT " +
+                "project_url, " +
+                "commit_sha, " +
+                "report, " +
+                "file_measures, " +
+                "created_date " +
+                "FROM analysis_report_cache " +
+                "WHERE project_url = ? AND commit_sha = ? AND created_date > ?";
+
+        try {
+            AnalysisReportCacheEntry entry = jdbcTemplate.queryForObject(
+                    sql,
+                    mapper,
+                    projectUrl,
+                    commitSha,
+                    Timestamp.valueOf(expiryThreshold));
+
+            return Optional.ofNullable(entry);
+        } catch (IncorrectResultSizeDataAccessException ire) {
+            return Optional.empty();
+        }
+    }
+
+    /*
+        The most recent entry of the repository that has the measures of its files, the base of an incremental
+        analysis.
+     */
+    public Optional<AnalysisReportCacheEntry> findLatestEntry(String projectUrl, LocalDateTime expiryThreshold) {
+        final String sql = "SELECT " +
+                "project_url, " +
+                "commit_sha, " +
+                "report, " +
+                "file_measures, " +
+                "created_date " +
+                "FROM analysis_report_cache " +
+                "WHERE project_url = ? AND created_date > ? AND file_measures IS NOT NULL " +
+                "ORDER BY created_date DESC " +
+                "LIMIT 1";
+
+        return jdbcTemplate.query(sql, mapper, projectUrl, Timestamp.valueOf(expiryThreshold))
+                .stream()
+                .findFirst();
+    }
+
+    public void deleteExpiredEntries(LocalDateTime expiryThreshold) {
+        final String sql = "DELETE FROM analysis_report_cache WHERE created_date <= ?";
+
+        jdbcTemplate.update(sql, Timestamp.valueOf(expiryThreshold));
+    }
+}
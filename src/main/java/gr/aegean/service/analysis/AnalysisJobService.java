@@ -0,0 +1,132 @@
+package gr.aegean.service.analysis;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Service;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import gr.aegean.exception.ResourceNotFoundException;
+import gr.aegean.mapper.dto.AnalysisJobDTOMapper;
+import gr.aegean.model.analysis.AnalysisJob;
+import gr.aegean.model.analysis.AnalysisJobListener;
+import gr.aegean.model.analysis.AnalysisProgressEvent;
+import gr.aegean.service.auth.JwtService;
+
+import jakarta.annotation.PreDestroy;
+
+
+/*
+    Jobs only live in memory. Once a job is finished the result is persisted as an analysis, so the job is only needed
+    until the client picks up the analysis location. Finished jobs are evicted after the configured retention.
+ */
+@Service
+public class AnalysisJobService {
+    private final JwtService jwtService;
+    private final Duration retention;
+    private final Duration streamTimeout;
+    private final Map<String, AnalysisJob> jobs = new ConcurrentHashMap<>();
+    private final AnalysisJobDTOMapper jobMapper = new AnalysisJobDTOMapper();
+    /*
+        Streams the events of the jobs to their clients, off the pipeline threads. A job is drained by one task at a
+        time, so there is at most one thread for every job with pending events, and a client that stopped reading
+        only holds the thread of its own job until the stream times out.
+     */
+    private final ExecutorService notifier = Executors.newCachedThreadPool(
+            new CustomizableThreadFactory("JobEvents-"));
+
+    public AnalysisJobService(JwtService jwtService,
+                              @Value("${analysis.job.retention}") Duration retention,
+                              @Value("${analysis.job.streamTimeout}") Duration streamTimeout) {
+        this.jwtService = jwtService;
+        this.retention = retention;
+        this.streamTimeout = streamTimeout;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        notifier.shutdownNow();
+    }
+
+    public AnalysisJob createJob(Integer userId) {
+        evictFinishedJobs();
+
+        AnalysisJob job = new AnalysisJob(userId, notifier);
+        jobs.put(job.getId(), job);
+
+        return job;
+    }
+
+    /*
+        A user can only see their own jobs. For a job that belongs to a different user we respond as if the job did
+        not exist.
+     */
+    public AnalysisJob findJob(String jobId) {
+        Integer userId = Integer.parseInt(jwtService.getSubject());
+        AnalysisJob job = jobs.get(jobId);
+
+        if (job == null || !job.getUserId().equals(userId)) {
+            throw new ResourceNotFoundException("No analysis job was found for job id: " + jobId);
+        }
+
+        return job;
+    }
+
+    /*
+        Cancelling a job that is already finished has no effect.
+     */
+    public void cancelJob(String jobId) {
+        findJob(jobId).cancel();
+    }
+
+    /*
+        Every progress event of the repositories is sent as a "progress" event and the finished job as a "job" event,
+        after which the stream is completed. A client that can't be reached anymore is unsubscribed from the job.
+     */
+    public SseEmitter streamJob(String jobId) {
+        AnalysisJob job = findJob(jobId);
+        SseEmitter emitter = new SseEmitter(streamTimeout.toMillis());
+
+        AnalysisJobListener listener = new AnalysisJobListener() {
+            @Override
+            public void onProgress(AnalysisProgressEvent event) {
+                send(emitter, "progress", event);
+            }
+
+            @Override
+            public void onFinished(AnalysisJob finishedJob) {
+                send(emitter, "job", jobMapper.apply(finishedJob));
+                emitter.complete();
+            }
+        };
+        emitter.onCompletion(() -> job.unsubscribe(listener));
+        emitter.onTimeout(() -> job.unsubscribe(listener));
+        emitter.onError(throwable -> job.unsubscribe(listener));
+        job.subscribe(listener);
+
+        return emitter;
+    }
+
+    private void send(SseEmitter emitter, String name, Object data) {
+        try {
+            emitter.send(SseEmitter.event()
+                    .name(name)
+                    .data(data));
+        } catch (IOException | IllegalStateException e) {
+            emitter.completeWithError(e);
+        }
+    }
+
+    private void evictFinishedJobs() {
+        Instant threshold = Instant.now().minus(retention);
+
+        jobs.values().removeIf(job -> job.isFinished() && !job.getFinishedDate().isAfter(threshold));
+    }
+}
@@ -0,0 +1,127 @@
+package gr.aegean.service.analysis;
+
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Supplier;
+
+import org.springframework.stereotype.Service;
+
+import gr.aegean.exception.StageTimeoutException;
+import gr.aegean.model.analysis.DetectedProject;
+import gr.aegean.model.analysis.ProjectProfile;
+import gr.aegean.model.analysis.RejectionReason;
+import gr.aegean.model.analysis.TimedStage;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.Timer;
+
+
+/*
+    The timers and counters of the analysis of a repository, published under /actuator/metrics and
+    /actuator/prometheus.
+    analysis.stage.duration: every TimedStage, tagged with the stage, the main language of the repository and its
+    size bucket. The timers publish their p50 and p99, and a histogram, so Prometheus can aggregate percentiles
+    across instances.
+    analysis.cache.hits: a repository that didn't have to be cloned or analyzed again, tagged with what was reused, a
+    cached report, an analysis in flight or a pooled checkout.
+    analysis.repositories.rejected: repositories that were skipped, tagged with the RejectionReason.
+    analysis.repositories.failed: repositories whose analysis failed, tagged with timeout, cancelled or error.
+    The size bucket is based on the bytes of source code in the languages we detected, small up to 1MB, medium up to
+    10MB and large above that. The language and the size are unknown until the languages are detected, e.g. for the
+    clone.
+ */
+@Service
+public class AnalysisMetrics {
+    private final MeterRegistry meterRegistry;
+    public static final Tags UNKNOWN_PROJECT = Tags.of("language", "unknown", "size", "unknown");
+    private static final long SMALL_PROJECT_BYTES = 1024 * 1024;
+    private static final long MEDIUM_PROJECT_BYTES = 10 * 1024 * 1024;
+
+    public AnalysisMetrics(MeterRegistry meterRegistry) {
+        this.meterRegistry = meterRegistry;
+    }
+
+    public Timer.Sample start() {
+        return Timer.start(meterRegistry);
+    }
+
+    public void stop(Timer.Sample sample, TimedStage stage, Tags projectTags) {
+        sample.stop(timer(stage, projectTags));
+    }
+
+    public <T> T time(TimedStage stage, Tags projectTags, Supplier<T> task) {
+        return timer(stage, projectTags).record(task);
+    }
+
+    /*
+        The request is timed until the future completes, whether it succeeded or not.
+     */
+    public <T> CompletableFuture<T> timeAsync(TimedStage stage,
+                                              Tags projectTags,
+                                              Supplier<CompletableFuture<T>> request) {
+        Timer.Sample sample = start();
+
+        return request.get().whenComplete((result, throwable) -> stop(sample, stage, projectTags));
+    }
+
+    public void recordCacheHit(String type) {
+        counter("analysis.cache.hits", "type", type).increment();
+    }
+
+    public void recordRejection(RejectionReason reason) {
+        counter("analysis.repositories.rejected", "reason", reason.key()).increment();
+    }
+
+    public void recordFailure(Throwable cause) {
+        String type = "error";
+        if (cause instanceof StageTimeoutException) {
+            type = "timeout";
+        } else if (cause instanceof CancellationException) {
+            type = "cancelled";
+        }
+
+        counter("analysis.repositories.failed", "cause", type).increment();
+    }
+
+    public static Tags tagsOf(DetectedProject project) {
+        return tagsOf(project.profile(), project.languages());
+    }
+
+    public static Tags tagsOf(ProjectProfile profile, Map<String, Double> languages) {
+        String language = languages.entrySet().stream()
+                .max(Map.Entry.comparingByValue())
+                .map(Map.Entry::getKey)
+                .orElse("unknown");
+
+        long sourceBytes = languages.keySet().stream()
+                .mapToLong(name -> profile.bytesByLanguage().getOrDefault(name, 0L))
+                .sum();
+        String size = "large";
+        if (sourceBytes <= SMALL_PROJECT_BYTES) {
+            size = "small";
+        } else if (sourceBytes <= MEDIUM_PROJECT_BYTES) {
+            size = "medium";
+        }
+
+        return Tags.of("language", language, "size", size);
+    }
+
+    private Timer timer(TimedStage stage, Tags projectTags) {
+        return Timer.builder("analysis.stage.duration")
+                .description("Time spent in each step of the analysis of a repository")
+                .tag("stage", stage.key())
+                .tags(projectTags)
+                .publishPercentiles(0.5, 0.99)
+                .publishPercentileHistogram()
+                .register(meterRegistry);
+    }
+
+    private Counter counter(String name, String tagKey, String tagValue) {
+        return Counter.builder(name)
+                .tag(tagKey, tagValue)
+                .register(meterRegistry);
+    }
+}
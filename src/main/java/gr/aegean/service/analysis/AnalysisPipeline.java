@@ -0,0 +1,221 @@
+package gr.aegean.service.analysis;
+
+import java.time.Duration;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.convert.DurationStyle;
+import org.springframework.core.env.Environment;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.security.concurrent.DelegatingSecurityContextExecutor;
+import org.springframework.stereotype.Service;
+
+import gr.aegean.exception.StageTimeoutException;
+import gr.aegean.model.analysis.AnalysisJob;
+import gr.aegean.model.analysis.ExecutionMode;
+import gr.aegean.model.analysis.PipelineStage;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.binder.jvm.ExecutorServiceMetrics;
+import jakarta.annotation.PreDestroy;
+
+
+/*
+    Every stage of the analysis has its own pool and its own bounded queue, configured under
+    analysis.pipeline.<stage>.threads and analysis.pipeline.<stage>.queueCapacity. Clones are bound by the network,
+    detection and scoring by the cpu, fetching by the SonarQube server, so the stages of different repositories overlap
+    instead of one thread doing all of them in a row.
+    When the queue of a stage is full, the thread that submits the task waits until there is room, which slows down
+    the stages that feed it without turning their threads into workers of the full stage. The queue depth, active threads and completed tasks of each stage are published as
+    analysis.pipeline.* metrics tagged with the stage.
+    With virtual threads every stage runs on the task executor, there is no pool to size and the clones and scans
+    are limited by ConcurrencyLimits.
+    A stage with a deadline, analysis.pipeline.<stage>.deadline, is cancelled once it runs past it, and every running
+    stage of a job is cancelled when the job is. Cancelling a stage interrupts its thread and runs the hooks that were
+    registered in its CancellationScope, which kill the clone, container or process the thread is waiting on, so the
+    thread is released instead of being held by a stage that will never finish.
+ */
+@Service
+public class AnalysisPipeline {
+    private final Map<PipelineStage, Executor> executors = new EnumMap<>(PipelineStage.class);
+    private final Map<PipelineStage, ThreadPoolExecutor> pools = new EnumMap<>(PipelineStage.class);
+    private final Map<PipelineStage, Duration> deadlines = new EnumMap<>(PipelineStage.class);
+    private final ScheduledExecutorService deadlineScheduler = Executors.newSingleThreadScheduledExecutor(
+            new CustomizableThreadFactory("Deadline-"));
+
+    public AnalysisPipeline(@Qualifier("taskExecutor") Executor taskExecutor,
+                            @Value("${thread.mode}") ExecutionMode threadMode,
+                            Environment environment,
+                            MeterRegistry meterRegistry) {
+        for (PipelineStage stage : PipelineStage.values()) {
+            Executor executor = taskExecutor;
+            /*
+                The Environment has no Duration converter, so the deadline is parsed the way @Value would, e.g. 10m.
+             */
+            String deadline = environment.getProperty("analysis.pipeline." + stage.key() + ".deadline");
+            if (deadline != null) {
+                deadlines.put(stage, DurationStyle.detectAndParse(deadline));
+            }
+
+            if (threadMode.resolve() == ExecutionMode.PLATFORM) {
+                ThreadPoolExecutor pool = createPool(stage, environment);
+                new ExecutorServiceMetrics(pool, stage.key(), "analysis.pipeline", Tags.of("stage", stage.key()))
+                        .bindTo(meterRegistry);
+
+                pools.put(stage, pool);
+                executor = pool;
+            }
+
+            /*
+                The SecurityContext of the thread that submits the task is propagated to the thread of the stage,
+                like the DelegatingSecurityContextExecutor in front of the scheduler does for the first stage.
+             */
+            executors.put(stage, new DelegatingSecurityContextExecutor(executor));
+        }
+    }
+
+    public Executor getExecutor(PipelineStage stage) {
+        return executors.get(stage);
+    }
+
+    public <T> CompletableFuture<T> supplyAsync(PipelineStage stage, AnalysisJob job, Supplier<T> task) {
+        return CompletableFuture.supplyAsync(() -> runStage(stage, job, task), executors.get(stage));
+    }
+
+    /*
+        Runs the stage once the previous one is done. A skipped project, an empty optional, doesn't go through the
+        stage at all.
+     */
+    public <T, R> CompletableFuture<Optional<R>> thenAsync(CompletableFuture<Optional<T>> previous,
+                                                           PipelineStage stage,
+                                                           AnalysisJob job,
+                                                           Function<T, Optional<R>> task) {
+        return previous.thenCompose(result -> result
+                .map(value -> supplyAsync(stage, job, () -> task.apply(value)))
+                .orElseGet(() -> CompletableFuture.completedFuture(Optional.empty())));
+    }
+
+    public int getQueueDepth(PipelineStage stage) {
+        ThreadPoolExecutor pool = pools.get(stage);
+
+        return pool == null ? 0 : pool.getQueue().size();
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        pools.values().forEach(ThreadPoolExecutor::shutdown);
+        deadlineScheduler.shutdownNow();
+    }
+
+    /*
+        A task of a job that was cancelled while it was queued doesn't run at all. Whatever a cancelled stage fails
+        with, e.g. the IOException of a killed container, it fails with the reason it was cancelled for: a
+        StageTimeoutException when it ran past its deadline, a CancellationException when its job was cancelled.
+        The interrupt of a stage that was cancelled just as it finished is cleared, before the thread runs the next
+        task.
+     */
+    private <T> T runStage(PipelineStage stage, AnalysisJob job, Supplier<T> task) {
+        CancellationScope scope = new CancellationScope();
+        scope.onCancel(Thread.currentThread()::interrupt);
+
+        Runnable cancelStage = () -> scope.cancel(new CancellationException("The analysis was cancelled"));
+        job.onCancel(cancelStage);
+
+        Duration deadline = deadlines.get(stage);
+        if (deadline != null) {
+            scope.startDeadline(() -> deadlineScheduler.schedule(
+                    () -> scope.cancel(new StageTimeoutException(
+                            "The " + stage.key() + " stage did not finish within " + deadline)),
+                    deadline.toMillis(),
+                    TimeUnit.MILLISECONDS));
+        }
+
+        CancellationScope previous = scope.bind();
+        T result;
+        try {
+            scope.throwIfCancelled();
+            result = task.get();
+        } catch (RuntimeException re) {
+            scope.throwIfCancelled();
+            throw re;
+        } finally {
+            job.removeCancelHook(cancelStage);
+            scope.close();
+            CancellationScope.restore(previous);
+            Thread.interrupted();
+        }
+        scope.throwIfCancelled();
+
+        return result;
+    }
+
+    private ThreadPoolExecutor createPool(PipelineStage stage, Environment environment) {
+        String prefix = "analysis.pipeline." + stage.key();
+        int threads = environment.getRequiredProperty(prefix + ".threads", Integer.class);
+        int queueCapacity = environment.getRequiredProperty(prefix + ".queueCapacity", Integer.class);
+
+        String stageName = stage.key().substring(0, 1).toUpperCase() + stage.key().substring(1);
+        ThreadPoolExecutor pool = new ThreadPoolExecutor(
+                threads,
+                threads,
+                60,
+                TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(queueCapacity),
+                new CustomizableThreadFactory(stageName + "-"),
+                new WaitForCapacityPolicy(stage, stageName + "-"));
+        pool.allowCoreThreadTimeOut(true);
+
+        return pool;
+    }
+
+    /*
+        The queue of a stage is only drained by the workers of the stage, so a worker that submits to its own stage,
+        e.g. the persist stage of the last repository submitting the persist of the request, would wait on itself. It
+        runs the task instead, which is work of its own stage. A submitter that is interrupted while it waits, or a
+        stage that is shut down, rejects the task and fails its future.
+     */
+    private static final class WaitForCapacityPolicy implements RejectedExecutionHandler {
+        private final PipelineStage stage;
+        private final String threadNamePrefix;
+
+        private WaitForCapacityPolicy(PipelineStage stage, String threadNamePrefix) {
+            this.stage = stage;
+            this.threadNamePrefix = threadNamePrefix;
+        }
+
+        @Override
+        public void rejectedExecution(Runnable task, ThreadPoolExecutor pool) {
+            if (pool.isShutdown()) {
+                throw new RejectedExecutionException("The " + stage.key() + " stage is shut down");
+            }
+
+            if (Thread.currentThread().getName().startsWith(threadNamePrefix)) {
+                task.run();
+                return;
+            }
+
+            try {
+                pool.getQueue().put(task);
+            } catch (InterruptedException ie) {
+                Thread.currentThread().interrupt();
+                throw new RejectedExecutionException("Interrupted while waiting for the " + stage.key() + " stage");
+            }
+        }
+    }
+}
@@ -0,0 +1,157 @@
+package gr.aegean.service.analysis;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Optional;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import gr.aegean.entity.AnalysisReport;
+import gr.aegean.entity.AnalysisReportCacheEntry;
+import gr.aegean.exception.ServerErrorException;
+import gr.aegean.model.analysis.PreviousAnalysis;
+import gr.aegean.repository.AnalysisReportCacheRepository;
+
+
+/*
+    The analysis of a repository only depends on its content, so a report can be reused for as long as the commit it
+    was produced from stays the same. Postgres is the source of truth, so the cache survives restarts, and the most
+    recently used entries are also kept in memory to avoid a database round trip for popular repositories.
+ */
+@Service
+public class AnalysisReportCacheService {
+    private final AnalysisReportCacheRepository cacheRepository;
+    private final Duration ttl;
+    private final Map<String, AnalysisReportCacheEntry> entries;
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private static final String SERVER_ERROR_MSG = "The server encountered an internal error and was unable to " +
+            "complete your request. Please try again later";
+
+    public AnalysisReportCacheService(AnalysisReportCacheRepository cacheRepository,
+                                      @Value("${analysis.cache.ttl}") Duration ttl,
+                                      @Value("${analysis.cache.maxEntries}") int maxEntries) {
+        this.cacheRepository = cacheRepository;
+        this.ttl = ttl;
+
+        /*
+            An access ordered LinkedHashMap keeps the least recently used entry first, so removing the eldest entry
+            when we exceed the max size gives us an LRU cache.
+         */
+        this.entries = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, AnalysisReportCacheEntry> eldest) {
+                return size() > maxEntries;
+            }
+        };
+    }
+
+    /**
+     * @return A copy of the cached report for the given commit or an empty optional if the commit was never analyzed
+     * or the entry has expired.
+     */
+    public Optional<AnalysisReport> findReport(String projectUrl, String commitSha) {
+        LocalDateTime expiryThreshold = LocalDateTime.now().minus(ttl);
+        String key = toKey(projectUrl, commitSha);
+        AnalysisReportCacheEntry entry;
+
+        synchronized (entries) {
+            entry = entries.get(key);
+            if (entry != null && !entry.createdDate().isAfter(expiryThreshold)) {
+                entries.remove(key);
+                entry = null;
+            }
+        }
+
+        if (entry == null) {
+            entry = cacheRepository.findEntry(projectUrl, commitSha, expiryThreshold).orElse(null);
+            if (entry == null) {
+                return Optional.empty();
+            }
+
+            synchronized (entries) {
+                entries.put(key, entry);
+            }
+        }
+
+        return Optional.of(toReport(entry.report()));
+    }
+
+    /**
+     * @return A copy of the latest cached report of the repository with the measures of its files, or an empty
+     * optional if there is none that hasn't expired.
+     */
+    public Optional<PreviousAnalysis> findLatestReport(String projectUrl) {
+        LocalDateTime expiryThreshold = LocalDateTime.now().minus(ttl);
+
+        return cacheRepository.findLatestEntry(projectUrl, expiryThreshold)
+                .map(entry -> {
+                    AnalysisReport report = toReport(entry.report());
+                    report.setFileMeasures(toFileMeasures(entry.fileMeasures()));
+
+                    return new PreviousAnalysis(entry.commitSha(), report);
+                });
+    }
+
+    /*
+        Every time we store a new report we also purge the expired ones, so the table does not grow without bound.
+     */
+    public void saveReport(String projectUrl, String commitSha, AnalysisReport report) {
+        AnalysisReportCacheEntry entry = new AnalysisReportCacheEntry(
+                projectUrl,
+                commitSha,
+                toJson(report),
+                report.getFileMeasures() == null ? null : toJson(report.getFileMeasures()),
+                LocalDateTime.now());
+
+        cacheRepository.saveEntry(entry);
+        cacheRepository.deleteExpiredEntries(LocalDateTime.now().minus(ttl));
+
+        synchronized (entries) {
+            entries.put(toKey(projectUrl, commitSha), entry);
+        }
+    }
+
+    /*
+        The same round trip a cached report goes through, so a report shared between requests is never mutated by more
+        than one of them.
+     */
+    public AnalysisReport copyReport(AnalysisReport report) {
+        return toReport(toJson(report));
+    }
+
+    private String toKey(String projectUrl, String commitSha) {
+        return projectUrl + "@" + commitSha;
+    }
+
+    private String toJson(Object value) {
+        try {
+            return objectMapper.writeValueAsString(value);
+        } catch (JsonProcessingException jpe) {
+            throw new ServerErrorException(SERVER_ERROR_MSG);
+        }
+    }
+
+    private AnalysisReport toReport(String jsonReport) {
+        try {
+            return objectMapper.readValue(jsonReport, AnalysisReport.class);
+        } catch (JsonProcessingException jpe) {
+            throw new ServerErrorException(SERVER_ERROR_MSG);
+        }
+    }
+
+    private Map<String, Map<String, Double>> toFileMeasures(String jsonFileMeasures) {
+        try {
+            return objectMapper.readValue(jsonFileMeasures, new TypeReference<>() {
+            });
+        } catch (JsonProcessingException jpe) {
+            throw new ServerErrorException(SERVER_ERROR_MSG);
+        }
+    }
+}
@@ -0,0 +1,243 @@
+package gr.aegean.service.analysis;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.function.Supplier;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.security.core.context.SecurityContext;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.stereotype.Service;
+
+import gr.aegean.model.analysis.ExecutionMode;
+
+
+/*
+    Sits in front of the analysis pipeline and decides which user's repository starts next, so one user submitting many
+    repositories doesn't make everyone else wait behind the whole batch. Every user has their own queue, and whenever a
+    repository is done the next one to start belongs to the user who was served least recently and is below the per
+    user limit. A user with a single repository starts next, while a bulk submission drains in the background.
+    A repository holds its slot until its pipeline is complete, so the number of repositories in flight is bounded
+    by analysis.scheduler.maxConcurrentTasks, or thread.virtual.maxConcurrentTasks with virtual threads, and the
+    order is decided here and not by the queues of the stages.
+ */
+@Service
+public class AnalysisScheduler {
+    private final Executor taskExecutor;
+    private final int maxConcurrentTasks;
+    private final int maxConcurrentTasksPerUser;
+    private final Map<Integer, UserQueue> queues = new HashMap<>();
+    private int runningTasks;
+    private long servedCount;
+    private static final Logger LOG = LoggerFactory.getLogger(AnalysisScheduler.class);
+
+    public AnalysisScheduler(@Qualifier("taskExecutor") Executor taskExecutor,
+                             @Value("${thread.mode}") ExecutionMode threadMode,
+                             @Value("${analysis.scheduler.maxConcurrentTasks}") int maxPlatformTasks,
+                             @Value("${thread.virtual.maxConcurrentTasks}") int maxVirtualTasks,
+                             @Value("${analysis.scheduler.maxConcurrentTasksPerUser}") int maxConcurrentTasksPerUser) {
+        this.taskExecutor = taskExecutor;
+        this.maxConcurrentTasks = threadMode.resolve() == ExecutionMode.VIRTUAL ? maxVirtualTasks : maxPlatformTasks;
+        this.maxConcurrentTasksPerUser = maxConcurrentTasksPerUser;
+    }
+
+    /*
+        The pipeline is started on the task executor once it's the user's turn. The SecurityContext of the calling
+        thread is captured here, because the pipeline may be started by whichever thread frees a slot.
+     */
+    public <T> CompletableFuture<T> submit(Integer userId, Supplier<CompletableFuture<T>> pipeline) {
+        CompletableFuture<T> result = new CompletableFuture<>();
+        Supplier<CompletableFuture<?>> start = () -> {
+            CompletableFuture<T> future;
+
+            try {
+                future = pipeline.get();
+            } catch (RuntimeException re) {
+                future = CompletableFuture.failedFuture(re);
+            }
+
+            return future.whenComplete((value, throwable) -> {
+                if (throwable == null) {
+                    result.complete(value);
+                } else {
+                    result.completeExceptionally(throwable);
+                }
+            });
+        };
+
+        synchronized (this) {
+            queues.computeIfAbsent(userId, UserQueue::new).pipelines.add(
+                    new Task(new DelegatingSecurityContextSupplier(start), result));
+        }
+        dispatch();
+
+        return result;
+    }
+
+    public synchronized int getQueuedTaskCount(Integer userId) {
+        UserQueue queue = queues.get(userId);
+
+        return queue == null ? 0 : queue.pipelines.size();
+    }
+
+    private void dispatch() {
+        List<Dispatch> ready = new ArrayList<>();
+
+        synchronized (this) {
+            while (runningTasks < maxConcurrentTasks) {
+                UserQueue next = findNextQueue();
+                if (next == null) {
+                    break;
+                }
+
+                Task task = next.pipelines.poll();
+                next.runningTasks++;
+                next.lastServed = ++servedCount;
+                runningTasks++;
+                ready.add(new Dispatch(next, task));
+            }
+        }
+
+        /*
+            The executor is called outside the lock. A pipeline is never started in the calling thread, which can be
+            a request thread, if the executor rejects it.
+         */
+        List<Dispatch> rejected = new ArrayList<>();
+        for (Dispatch dispatch : ready) {
+            try {
+                taskExecutor.execute(() -> start(dispatch.queue(), dispatch.task().pipeline()));
+            } catch (RejectedExecutionException ree) {
+                rejected.add(dispatch);
+            }
+        }
+
+        if (!rejected.isEmpty()) {
+            requeue(rejected);
+        }
+    }
+
+    /*
+        The rejected pipelines go back to the head of the queues of their users, in the order they were taken, and give
+        their slots back, so they are dispatched again once a running pipeline releases its slot. If no pipeline is
+        running there is no slot to wait for, e.g. when the executor is shut down, and they fail instead.
+     */
+    private void requeue(List<Dispatch> rejected) {
+        boolean queued;
+
+        synchronized (this) {
+            for (Dispatch dispatch : rejected) {
+                dispatch.queue().runningTasks--;
+                runningTasks--;
+            }
+
+            queued = runningTasks > 0;
+            for (int i = rejected.size() - 1; i >= 0; i--) {
+                UserQueue queue = rejected.get(i).queue();
+
+                if (queued) {
+                    queue.pipelines.addFirst(rejected.get(i).task());
+                } else if (queue.pipelines.isEmpty() && queue.runningTasks == 0) {
+                    queues.remove(queue.userId);
+                }
+            }
+        }
+
+        if (queued) {
+            LOG.warn("Task executor rejected {} analysis tasks, they are queued until a slot is free",
+                    rejected.size());
+            return;
+        }
+
+        LOG.error("Task executor rejected {} analysis tasks and no analysis is running, failing them",
+                rejected.size());
+        rejected.forEach(dispatch -> dispatch.task().result().completeExceptionally(
+                new RejectedExecutionException("The analysis task was rejected by the task executor")));
+    }
+
+    private void start(UserQueue queue, Supplier<CompletableFuture<?>> pipeline) {
+        pipeline.get().whenComplete((value, throwable) -> release(queue));
+    }
+
+    private void release(UserQueue queue) {
+        synchronized (this) {
+            queue.runningTasks--;
+            runningTasks--;
+
+            if (queue.pipelines.isEmpty() && queue.runningTasks == 0) {
+                queues.remove(queue.userId);
+            }
+        }
+
+        dispatch();
+    }
+
+    /*
+        The user who was served least recently among those who have queued repositories and are below their limit. A
+        user who was never served comes first.
+     */
+    private UserQueue findNextQueue() {
+        UserQueue next = null;
+
+        for (UserQueue queue : queues.values()) {
+            if (queue.pipelines.isEmpty() || queue.runningTasks >= maxConcurrentTasksPerUser) {
+                continue;
+            }
+            if (next == null || queue.lastServed < next.lastServed) {
+                next = queue;
+            }
+        }
+
+        return next;
+    }
+
+    /*
+        Sets the SecurityContext captured when the pipeline was submitted for as long as the pipeline is being started.
+     */
+    private static final class DelegatingSecurityContextSupplier implements Supplier<CompletableFuture<?>> {
+        private final Supplier<CompletableFuture<?>> delegate;
+        private final SecurityContext securityContext = SecurityContextHolder.getContext();
+
+        private DelegatingSecurityContextSupplier(Supplier<CompletableFuture<?>> delegate) {
+            this.delegate = delegate;
+        }
+
+        @Override
+        public CompletableFuture<?> get() {
+            SecurityContext previous = SecurityContextHolder.getContext();
+
+            try {
+                SecurityContextHolder.setContext(securityContext);
+                return delegate.get();
+            } finally {
+                SecurityContextHolder.setContext(previous);
+            }
+        }
+    }
+
+    private record Task(Supplier<CompletableFuture<?>> pipeline, CompletableFuture<?> result) {
+    }
+
+    private record Dispatch(UserQueue queue, Task task) {
+    }
+
+    private static final class UserQueue {
+        private final Integer userId;
+        private final Deque<Task> pipelines = new ArrayDeque<>();
+        private int runningTasks;
+        private long lastServed;
+
+        private UserQueue(Integer userId) {
+            this.userId = userId;
+        }
+    }
+}
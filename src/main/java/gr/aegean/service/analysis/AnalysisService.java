@@ -7,6 +7,14 @@ import gr.aegean.exception.ResourceNotFoundException;
 import gr.aegean.exception.ServerErrorException;
 import gr.aegean.entity.AnalysisReport;
 import gr.aegean.mapper.dto.AnalysisReportDTOMapper;
+import gr.aegean.model.analysis.AnalysisJob;
+import gr.aegean.model.analysis.AnalysisJobStatus;
+import gr.aegean.model.analysis.DetectedProject;
+import gr.aegean.model.analysis.PreviousAnalysis;
+import gr.aegean.model.analysis.ProjectProfile;
+import gr.aegean.model.analysis.RejectionReason;
+import gr.aegean.model.analysis.ScanResult;
+import gr.aegean.model.analysis.TimedStage;
 import gr.aegean.model.analysis.quality.QualityAttribute;
 import gr.aegean.model.analysis.quality.TreeNode;
 import gr.aegean.model.analysis.sonarqube.HotspotsReport;
@@ -22,73 +30,154 @@ import gr.aegean.service.assessment.TreeService;
 import gr.aegean.service.auth.JwtService;
 
 import java.io.IOException;
-import java.nio.file.Files;
 import java.nio.file.Path;
 import java.sql.Date;
 import java.time.LocalDate;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
 import java.util.Set;
 import java.util.stream.Collectors;
-import java.util.stream.Stream;
 
 import org.springframework.hateoas.Link;
 import org.springframework.stereotype.Service;
 
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.Timer;
+
 import lombok.RequiredArgsConstructor;
 
 
 @Service
 @RequiredArgsConstructor
 public class AnalysisService {
+    private final ProjectProfileService projectProfileService;
     private final LanguageService languageService;
     private final SonarService sonarService;
     private final MetricService metricService;
     private final AssessmentService assessmentService;
     private final DockerService dockerService;
+    private final ConcurrencyLimits concurrencyLimits;
     private final JwtService jwtService;
     private final TreeService treeService;
     private final AnalysisRepository analysisRepository;
+    private final AnalysisMetrics analysisMetrics;
     private final AnalysisReportDTOMapper mapper = new AnalysisReportDTOMapper();
     private static final String SERVER_ERROR_MSG = "The server encountered an internal error and was unable to " +
             "complete your request. Please try again later";
 
 
-    public Optional<AnalysisReport> analyze(Path projectPath, String projectUrl) {
-        AnalysisReport analysisReport;
+    /*
+        detect(), scan(), fetch() and score() are the stages of the analysis of a single project, called in order by
+        the pipeline, each one on the pool of its stage. An empty optional means the project is skipped and the later
+        stages don't run for it.
+
+        For each project we downloaded and stored locally we scan the checkout once and detect the languages used from
+        what the scan found.
+     */
+    public Optional<DetectedProject> detect(Path projectPath) {
+        Timer.Sample sample = analysisMetrics.start();
+        ProjectProfile profile = projectProfileService.profileProject(projectPath);
+        Map<String, Double> detectedLanguages = languageService.detectLanguages(profile);
+        analysisMetrics.stop(
+                sample,
+                TimedStage.LANGUAGE_DETECTION,
+                AnalysisMetrics.tagsOf(profile, detectedLanguages));
 
-        /*
-            For each project we downloaded and stored locally we detect the languages used.
-         */
-        Map<String, Double> detectedLanguages = languageService.detectLanguages(projectPath.toString());
         if (!languageService.verifySupportedLanguages(detectedLanguages)) {
+            analysisMetrics.recordRejection(RejectionReason.UNSUPPORTED_LANGUAGE);
             return Optional.empty();
         }
 
         /*
-            The project key is the UUID that was assigned to the project folder. Splitting with the escape character
-            which is also the file separator in Windows.
+            The project key is the UUID that was assigned to the project folder, the last part of its path.
          */
-        String projectKey = projectPath.toString().split("\\\\")[3];
+        String projectKey = projectPath.getFileName().toString();
+
+        return Optional.of(new DetectedProject(
+                projectPath,
+                projectKey,
+                profile,
+                detectedLanguages,
+                null,
+                null,
+                null));
+    }
+
+    /*
+        For Maven projects the scanner runs inside a container. A build that failed means there is nothing to analyze,
+        so the project is skipped. An incremental analysis only scans the files that changed since the previous one.
+     */
+    public Optional<DetectedProject> scan(DetectedProject project, AnalysisJob job) {
+        Optional<String> ceTaskId;
+        String projectKey = project.projectKey();
+        String projectPath = project.projectPath().toString();
+        Tags projectTags = AnalysisMetrics.tagsOf(project);
+
+        job.advanceTo(AnalysisJobStatus.SCANNING);
+        if (project.languages().containsKey("Java")) {
+            if (!project.profile().isMavenProject()) {
+                analysisMetrics.recordRejection(RejectionReason.UNSUPPORTED_BUILD);
+                return Optional.empty();
+            }
 
-        if (detectedLanguages.containsKey("Java")) {
-            if (isMavenProject(projectPath)) {
-                analyzeMavenProject(projectKey, projectPath.toString());
-            } else {
+            ScanResult scanResult = concurrencyLimits.withScanPermit(() -> analyzeMavenProject(
+                    projectKey,
+                    projectPath,
+                    project.changedFiles(),
+                    projectTags));
+            if (!scanResult.succeeded()) {
+                analysisMetrics.recordRejection(RejectionReason.BUILD_FAILED);
                 return Optional.empty();
             }
+            ceTaskId = Optional.ofNullable(scanResult.ceTaskId());
         } else {
-            sonarService.analyzeProject(projectKey, projectPath.toString());
+            ceTaskId = concurrencyLimits.withScanPermit(() -> analysisMetrics.time(
+                    TimedStage.SCAN,
+                    projectTags,
+                    () -> sonarService.analyzeProject(projectKey, projectPath, project.changedFiles())));
+        }
+
+        return Optional.of(project.withCeTaskId(ceTaskId.orElse(null)));
+    }
+
+    /*
+        A failed compute engine task, e.g. a Maven build that did not compile, means there is no analysis to fetch for
+        the project, so it's skipped like a project with an unsupported language.
+     */
+    public Optional<AnalysisReport> fetch(DetectedProject project, AnalysisJob job) {
+        Tags projectTags = AnalysisMetrics.tagsOf(project);
+        boolean processed = analysisMetrics.time(
+                TimedStage.SONAR_WAIT,
+                projectTags,
+                () -> sonarService.waitForAnalysis(project.projectKey(), project.ceTaskId()));
+        if (!processed) {
+            analysisMetrics.recordRejection(RejectionReason.ANALYSIS_FAILED);
+            return Optional.empty();
         }
 
-        analysisReport = sonarService.fetchAnalysisReport(projectKey);
-        processAnalysisReport(analysisReport, detectedLanguages, projectUrl);
+        job.advanceTo(AnalysisJobStatus.FETCHING);
+        AnalysisReport analysisReport = sonarService.fetchAnalysisReport(project.projectKey(), projectTags);
+        analysisReport.setLanguages(project.languages());
+        toRelativeComponents(analysisReport);
+
+        if (project.isIncremental()) {
+            mergePreviousAnalysis(analysisReport, project.previousAnalysis(), project.changedFiles());
+        }
 
         return Optional.of(analysisReport);
     }
 
+    public AnalysisReport score(AnalysisReport analysisReport, String projectUrl, Tags projectTags) {
+        Timer.Sample sample = analysisMetrics.start();
+        processAnalysisReport(analysisReport, projectUrl);
+        analysisMetrics.stop(sample, TimedStage.UTF, projectTags);
+
+        return analysisReport;
+    }
+
     public Integer saveAnalysisProcess(Integer userId,
                                        List<AnalysisReport> reports,
                                        List<Constraint> constraints,
@@ -220,51 +309,72 @@ public class AnalysisService {
     }
 
 
-    private void processAnalysisReport(AnalysisReport analysisReport,
-                                       Map<String, Double> detectedLanguages,
-                                       String projectUrl) {
-        /*
-            Converting 476af562-93da-47e4-a553-08c3173be0ac:graph.py -> graph.py
-         */
+    /*
+        Converting 476af562-93da-47e4-a553-08c3173be0ac:graph.py -> graph.py
+     */
+    private void toRelativeComponents(AnalysisReport analysisReport) {
         for (IssuesReport.IssueDetails issue : analysisReport.getIssuesReport().getIssues()) {
             String component = issue.getComponent().split(":")[1];
             issue.setComponent(component);
         }
 
-        /*
-            Converting 476af562-93da-47e4-a553-08c3173be0ac:graph.py -> graph.py
-         */
         for (HotspotsReport.HotspotDetails hotspot : analysisReport.getHotspotsReport().getHotspots()) {
             String component = hotspot.getComponent().split(":")[1];
             hotspot.setComponent(component);
         }
+    }
+
+    /*
+        Only the changed files were scanned, so the issues, hotspots and measures of every other file are taken from
+        the previous report. The files that were deleted since are dropped along with the changed ones. The quality
+        metrics are computed from the measures of all the files, and the utfs are applied to them when the report is
+        scored, the same way as for a full analysis.
+     */
+    private void mergePreviousAnalysis(AnalysisReport analysisReport,
+                                       PreviousAnalysis previousAnalysis,
+                                       Set<String> changedFiles) {
+        AnalysisReport previousReport = previousAnalysis.report();
+
+        IssuesReport issuesReport = new IssuesReport();
+        previousReport.getIssuesReport().getIssues().stream()
+                .filter(issue -> !changedFiles.contains(issue.getComponent()))
+                .forEach(issuesReport::addIssue);
+        analysisReport.getIssuesReport().getIssues().forEach(issuesReport::addIssue);
+
+        HotspotsReport hotspotsReport = new HotspotsReport();
+        previousReport.getHotspotsReport().getHotspots().stream()
+                .filter(hotspot -> !changedFiles.contains(hotspot.getComponent()))
+                .forEach(hotspotsReport::addHotspot);
+        analysisReport.getHotspotsReport().getHotspots().forEach(hotspotsReport::addHotspot);
+
+        Map<String, Map<String, Double>> fileMeasures = new HashMap<>(previousReport.getFileMeasures());
+        fileMeasures.keySet().removeAll(changedFiles);
+        fileMeasures.putAll(analysisReport.getFileMeasures());
+
+        analysisReport.setIssuesReport(issuesReport);
+        analysisReport.setHotspotsReport(hotspotsReport);
+        analysisReport.setFileMeasures(fileMeasures);
+        analysisReport.setQualityMetricsReport(sonarService.aggregateFileMeasures(fileMeasures));
+    }
 
+    private void processAnalysisReport(AnalysisReport analysisReport, String projectUrl) {
         Map<QualityMetric, Double> updatedQualityMetricsReport = metricService.applyUtf(
                 analysisReport.getQualityMetricsReport(),
                 analysisReport.getIssuesReport(),
                 analysisReport.getHotspotsReport());
 
-        analysisReport.setLanguages(detectedLanguages);
         analysisReport.setQualityMetricsReport(updatedQualityMetricsReport);
         analysisReport.setProjectUrl(Link.of(projectUrl));
     }
 
-    private boolean isMavenProject(Path project) {
-        try (Stream<Path> paths = Files.walk(project)) {
-            return paths.anyMatch(p -> p.getFileName().toString().equals("pom.xml"));
-        } catch (IOException e) {
-            throw new ServerErrorException(SERVER_ERROR_MSG);
-        }
-    }
-
-    private void analyzeMavenProject(String projectKey, String projectPath) {
+    private ScanResult analyzeMavenProject(String projectKey,
+                                           String projectPath,
+                                           Set<String> inclusions,
+                                           Tags projectTags) {
         try {
-            dockerService.analyzeMavenProject(projectKey, projectPath);
+            return dockerService.analyzeMavenProject(projectKey, projectPath, inclusions, projectTags);
         } catch (IOException ioe) {
             throw new ServerErrorException(SERVER_ERROR_MSG);
-        } catch (InterruptedException ie) {
-            Thread.currentThread().interrupt();
-            throw new ServerErrorException(SERVER_ERROR_MSG);
         }
     }
 
@@ -0,0 +1,46 @@
+package gr.aegean.service.analysis;
+
+import java.time.Duration;
+import java.time.Instant;
+
+import org.eclipse.jgit.lib.EmptyProgressMonitor;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+
+/*
+    JGit asks the monitor whether to go on every time it reports progress on a clone or a fetch. The transfer is
+    aborted when the stage is cancelled or when no progress was reported for longer than the stall timeout. A
+    connection that stops sending anything at all is covered by the timeout of the transport.
+ */
+public class CancellableProgressMonitor extends EmptyProgressMonitor {
+    private final CancellationScope scope;
+    private final Duration stallTimeout;
+    private volatile Instant lastProgress = Instant.now();
+    private static final Logger LOG = LoggerFactory.getLogger(CancellableProgressMonitor.class);
+
+    public CancellableProgressMonitor(CancellationScope scope, Duration stallTimeout) {
+        this.scope = scope;
+        this.stallTimeout = stallTimeout;
+    }
+
+    @Override
+    public void beginTask(String title, int totalWork) {
+        lastProgress = Instant.now();
+    }
+
+    @Override
+    public void update(int completed) {
+        lastProgress = Instant.now();
+    }
+
+    @Override
+    public boolean isCancelled() {
+        if (Duration.between(lastProgress, Instant.now()).compareTo(stallTimeout) > 0) {
+            LOG.warn("Transfer made no progress for {}, aborting", stallTimeout);
+            return true;
+        }
+
+        return scope.isCancelled();
+    }
+}
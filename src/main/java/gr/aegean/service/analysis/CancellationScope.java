@@ -0,0 +1,147 @@
+package gr.aegean.service.analysis;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ScheduledFuture;
+import java.util.function.Supplier;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+
+/*
+    The scope of a stage that is running on a thread of the pipeline. A stage is cancelled either because it ran past
+    its deadline or because its job was cancelled. Interrupting the thread is not enough to stop a clone, a container
+    or a scanner process, so the code that waits on one of them registers a hook that stops it and removes the hook
+    once it's done waiting.
+    The scope is bound to the thread of the stage, like the SecurityContext is, so the services don't have to pass it
+    around. A thread that doesn't run a stage gets a scope that is never cancelled and ignores the hooks.
+    The hooks run while holding the lock of the scope, so once the scope is closed none of them can run anymore, e.g.
+    interrupt a pooled thread that has moved on to the next task.
+    The deadline of a stage only counts the time the stage works. It's paused while the stage waits for a clone or a
+    scan permit and starts over once the permit is acquired, so a repository that queued behind others is not timed
+    out before it ever ran.
+ */
+public final class CancellationScope {
+    private static final ThreadLocal<CancellationScope> CURRENT = new ThreadLocal<>();
+    private static final CancellationScope NONE = new CancellationScope();
+    private final List<Runnable> hooks = new ArrayList<>();
+    private volatile RuntimeException cause;
+    private boolean closed;
+    private Supplier<ScheduledFuture<?>> deadlineTimer;
+    private ScheduledFuture<?> deadline;
+    private static final Logger LOG = LoggerFactory.getLogger(CancellationScope.class);
+
+    static {
+        NONE.closed = true;
+    }
+
+    CancellationScope() {
+    }
+
+    public static CancellationScope current() {
+        CancellationScope scope = CURRENT.get();
+
+        return scope == null ? NONE : scope;
+    }
+
+    /*
+        A hook that is registered after the scope was cancelled runs right away.
+     */
+    public synchronized void onCancel(Runnable hook) {
+        if (closed) {
+            return;
+        }
+
+        if (cause != null) {
+            run(hook);
+            return;
+        }
+
+        hooks.add(hook);
+    }
+
+    public synchronized void removeHook(Runnable hook) {
+        hooks.remove(hook);
+    }
+
+    public synchronized void pauseDeadline() {
+        if (deadline != null) {
+            deadline.cancel(false);
+            deadline = null;
+        }
+    }
+
+    public synchronized void resumeDeadline() {
+        if (closed || cause != null || deadlineTimer == null) {
+            return;
+        }
+
+        pauseDeadline();
+        deadline = deadlineTimer.get();
+    }
+
+    public boolean isCancelled() {
+        return cause != null;
+    }
+
+    /*
+        The exception the stage fails with, instead of whatever the stopped clone, container or process failed with.
+     */
+    public void throwIfCancelled() {
+        if (cause != null) {
+            throw cause;
+        }
+    }
+
+    synchronized void cancel(RuntimeException cause) {
+        if (closed || this.cause != null) {
+            return;
+        }
+
+        this.cause = cause;
+        hooks.forEach(this::run);
+        hooks.clear();
+    }
+
+    /*
+        The timer schedules the cancellation of the stage and is started right away.
+     */
+    synchronized void startDeadline(Supplier<ScheduledFuture<?>> timer) {
+        deadlineTimer = timer;
+        resumeDeadline();
+    }
+
+    synchronized void close() {
+        pauseDeadline();
+        closed = true;
+        hooks.clear();
+    }
+
+    /*
+        A stage that runs on the thread of the previous one, because the queue of its pool was full, is bound on top of
+        the scope of the previous stage, which is restored once the stage is done.
+     */
+    CancellationScope bind() {
+        CancellationScope previous = CURRENT.get();
+        CURRENT.set(this);
+
+        return previous;
+    }
+
+    static void restore(CancellationScope previous) {
+        if (previous == null) {
+            CURRENT.remove();
+        } else {
+            CURRENT.set(previous);
+        }
+    }
+
+    private void run(Runnable hook) {
+        try {
+            hook.run();
+        } catch (RuntimeException re) {
+            LOG.warn("Cancellation hook failed", re);
+        }
+    }
+}
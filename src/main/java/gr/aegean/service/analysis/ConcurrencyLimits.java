@@ -0,0 +1,56 @@
+package gr.aegean.service.analysis;
+
+import java.util.concurrent.Semaphore;
+import java.util.function.Supplier;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import gr.aegean.exception.ServerErrorException;
+
+
+/*
+    The real limits of the pipeline. With virtual threads the number of threads no longer bounds how many clones or
+    scans run at the same time, so each of them has to wait for a permit. The limits apply in both execution modes.
+    The deadline of the stage is paused while it waits for a permit, see CancellationScope.
+ */
+@Service
+public class ConcurrencyLimits {
+    private final Semaphore clonePermits;
+    private final Semaphore scanPermits;
+    private static final String SERVER_ERROR_MSG = "The server encountered an internal error and was unable to " +
+            "complete your request. Please try again later.";
+
+    public ConcurrencyLimits(@Value("${analysis.limits.maxConcurrentClones}") int maxConcurrentClones,
+                             @Value("${analysis.limits.maxConcurrentScans}") int maxConcurrentScans) {
+        this.clonePermits = new Semaphore(maxConcurrentClones, true);
+        this.scanPermits = new Semaphore(maxConcurrentScans, true);
+    }
+
+    public <T> T withClonePermit(Supplier<T> clone) {
+        return withPermit(clonePermits, clone);
+    }
+
+    public <T> T withScanPermit(Supplier<T> scan) {
+        return withPermit(scanPermits, scan);
+    }
+
+    private <T> T withPermit(Semaphore permits, Supplier<T> task) {
+        CancellationScope scope = CancellationScope.current();
+        scope.pauseDeadline();
+        try {
+            permits.acquire();
+        } catch (InterruptedException ie) {
+            Thread.currentThread().interrupt();
+            throw new ServerErrorException(SERVER_ERROR_MSG);
+        } finally {
+            scope.resumeDeadline();
+        }
+
+        try {
+            return task.get();
+        } finally {
+            permits.release();
+        }
+    }
+}
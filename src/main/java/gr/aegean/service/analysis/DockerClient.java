@@ -0,0 +1,344 @@
+package gr.aegean.service.analysis;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.URI;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+
+import org.apache.commons.compress.archivers.tar.TarArchiveEntry;
+import org.apache.commons.compress.archivers.tar.TarArchiveOutputStream;
+import org.apache.commons.compress.archivers.tar.TarConstants;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.github.dockerjava.transport.DockerHttpClient;
+import com.github.dockerjava.zerodep.ZerodepDockerHttpClient;
+
+import gr.aegean.exception.ServerErrorException;
+
+import jakarta.annotation.PreDestroy;
+
+
+/*
+    A minimal client of the Docker Engine API, so we don't have to start a docker CLI process for every step, and we
+    know exactly when a container exits and with which exit code. The connection to the daemon is handled by the
+    docker-java transport, which supports the unix socket (unix:///var/run/docker.sock), the named pipe of Docker
+    Desktop on Windows (npipe:////./pipe/docker_engine) and tcp (tcp://localhost:2375).
+ */
+@Service
+public class DockerClient {
+    private final DockerHttpClient httpClient;
+    private final String apiVersion;
+    private final ObjectMapper mapper = new ObjectMapper();
+    private static final Logger LOG = LoggerFactory.getLogger(DockerClient.class);
+    /*
+        Directories that are never needed to build an image.
+     */
+    private static final Set<String> EXCLUDED_FROM_BUILD_CONTEXT = Set.of(".git", ".scannerwork");
+    private static final String SERVER_ERROR_MSG = "The server encountered an internal error and was unable to " +
+            "complete your request. Please try again later";
+
+    public DockerClient(@Value("${docker.host}") String dockerHost,
+                        @Value("${docker.apiVersion}") String apiVersion) {
+        this.apiVersion = apiVersion;
+        this.httpClient = new ZerodepDockerHttpClient.Builder()
+                .dockerHost(URI.create(dockerHost))
+                .build();
+    }
+
+    @PreDestroy
+    public void close() throws IOException {
+        httpClient.close();
+    }
+
+    /**
+     * @return The id of the created container.
+     */
+    public String createContainer(String name,
+                                  String image,
+                                  List<String> command,
+                                  List<String> binds,
+                                  String network) throws IOException {
+        Map<String, Object> hostConfig = new LinkedHashMap<>();
+        hostConfig.put("Binds", binds);
+        if (network != null) {
+            hostConfig.put("NetworkMode", network);
+        }
+
+        Map<String, Object> body = new LinkedHashMap<>();
+        body.put("Image", image);
+        body.put("Cmd", command);
+        body.put("HostConfig", hostConfig);
+
+        String path = "/containers/create" + (name == null ? "" : "?name=" + encode(name));
+        DockerHttpClient.Request request = request(DockerHttpClient.Request.Method.POST, path)
+                .putHeader("Content-Type", "application/json")
+                .bodyBytes(mapper.writeValueAsBytes(body))
+                .build();
+
+        try (DockerHttpClient.Response response = execute(request)) {
+            return mapper.readTree(response.getBody()).get("Id").asText();
+        }
+    }
+
+    public void startContainer(String containerId) throws IOException {
+        send(DockerHttpClient.Request.Method.POST, "/containers/" + containerId + "/start");
+    }
+
+    /*
+        Blocks until the container exits.
+     */
+    public int waitContainer(String containerId) throws IOException {
+        DockerHttpClient.Request request = request(
+                DockerHttpClient.Request.Method.POST,
+                "/containers/" + containerId + "/wait")
+                .build();
+
+        try (DockerHttpClient.Response response = execute(request)) {
+            return mapper.readTree(response.getBody()).get("StatusCode").asInt();
+        }
+    }
+
+    /*
+        Follows the output of the container until it exits. Containers without a tty send their stdout and stderr
+        multiplexed in frames, each one with an 8 byte header: the stream type, 3 empty bytes and the size of the
+        payload as a big endian integer. A frame can end in the middle of a line, so every stream keeps its own
+        partial line.
+     */
+    public void streamLogs(String containerId, Consumer<String> lineConsumer) throws IOException {
+        DockerHttpClient.Request request = request(
+                DockerHttpClient.Request.Method.GET,
+                "/containers/" + containerId + "/logs?follow=true&stdout=true&stderr=true")
+                .build();
+
+        try (DockerHttpClient.Response response = execute(request)) {
+            InputStream body = response.getBody();
+            byte[] header = new byte[8];
+            Map<Integer, ByteArrayOutputStream> lines = new LinkedHashMap<>();
+
+            while (readFully(body, header)) {
+                int stream = header[0];
+                int size = ((header[4] & 0xFF) << 24)
+                        | ((header[5] & 0xFF) << 16)
+                        | ((header[6] & 0xFF) << 8)
+                        | (header[7] & 0xFF);
+                byte[] payload = new byte[size];
+                if (!readFully(body, payload)) {
+                    break;
+                }
+
+                ByteArrayOutputStream line = lines.computeIfAbsent(stream, key -> new ByteArrayOutputStream());
+                for (byte b : payload) {
+                    if (b == '\n') {
+                        lineConsumer.accept(line.toString(StandardCharsets.UTF_8));
+                        line.reset();
+                    } else {
+                        line.write(b);
+                    }
+                }
+            }
+
+            lines.values().stream()
+                    .filter(line -> line.size() > 0)
+                    .forEach(line -> lineConsumer.accept(line.toString(StandardCharsets.UTF_8)));
+        }
+    }
+
+    public void killContainer(String containerId) throws IOException {
+        try {
+            send(DockerHttpClient.Request.Method.POST, "/containers/" + containerId + "/kill");
+        } catch (ServerErrorException see) {
+            LOG.warn("Failed to kill container {}", containerId);
+        }
+    }
+
+    public void removeContainer(String containerId) throws IOException {
+        send(DockerHttpClient.Request.Method.DELETE, "/containers/" + containerId + "?force=true");
+    }
+
+    /*
+        With noPrune the parent layers of the image are kept, so they can still be used as build cache.
+     */
+    public void removeImage(String image, boolean noPrune) throws IOException {
+        send(DockerHttpClient.Request.Method.DELETE, "/images/" + encode(image) + "?force=true&noprune=" + noPrune);
+    }
+
+    /*
+        The build context is sent as a tar archive of the directory, and the daemon reports the progress of the build
+        as a stream of json objects. The archive is written to a temporary file first, so a file that can't be read
+        fails the build before anything is sent to the daemon.
+     */
+    public void buildImage(String tag, Path contextDirectory, Consumer<String> outputConsumer) throws IOException {
+        Path buildContext = Files.createTempFile("build-context-", ".tar");
+
+        try {
+            try (OutputStream out = Files.newOutputStream(buildContext)) {
+                writeTar(contextDirectory, out);
+            }
+
+            DockerHttpClient.Request request = request(
+                    DockerHttpClient.Request.Method.POST,
+                    "/build?rm=true&forcerm=true&t=" + encode(tag))
+                    .putHeader("Content-Type", "application/x-tar")
+                    .body(Files.newInputStream(buildContext, StandardOpenOption.READ))
+                    .build();
+
+            try (DockerHttpClient.Response response = execute(request)) {
+                BufferedReader reader = new BufferedReader(
+                        new InputStreamReader(response.getBody(), StandardCharsets.UTF_8));
+                String line;
+
+                /*
+                    A build has no container to kill, the daemon stops it once the client disconnects.
+                 */
+                Runnable disconnect = response::close;
+                CancellationScope.current().onCancel(disconnect);
+                try {
+                    while ((line = reader.readLine()) != null) {
+                        if (line.isBlank()) {
+                            continue;
+                        }
+
+                        JsonNode message = mapper.readTree(line);
+                        if (message.hasNonNull("error")) {
+                            LOG.error("Failed to build image {}: {}", tag, message.get("error").asText());
+                            throw new ServerErrorException(SERVER_ERROR_MSG);
+                        }
+                        if (message.hasNonNull("stream")) {
+                            message.get("stream").asText().lines().forEach(outputConsumer);
+                        }
+                    }
+                } finally {
+                    CancellationScope.current().removeHook(disconnect);
+                }
+            }
+        } finally {
+            Files.deleteIfExists(buildContext);
+        }
+    }
+
+    private DockerHttpClient.Request.Builder request(DockerHttpClient.Request.Method method, String path) {
+        return DockerHttpClient.Request.builder()
+                .method(method)
+                .path("/" + apiVersion + path);
+    }
+
+    /*
+        For the requests whose response has no body we need.
+     */
+    private void send(DockerHttpClient.Request.Method method, String path) throws IOException {
+        try (DockerHttpClient.Response response = execute(request(method, path).build())) {
+            response.getBody().readAllBytes();
+        }
+    }
+
+    /*
+        The transport reports a failed connection as an unchecked exception.
+     */
+    private DockerHttpClient.Response execute(DockerHttpClient.Request request) throws IOException {
+        DockerHttpClient.Response response;
+        try {
+            response = httpClient.execute(request);
+        } catch (RuntimeException re) {
+            throw new IOException("Failed to send " + request.method() + " " + request.path() + " to docker", re);
+        }
+
+        if (response.getStatusCode() >= 400) {
+            try (response) {
+                String error = new String(response.getBody().readAllBytes(), StandardCharsets.UTF_8);
+                LOG.error("Docker responded with {} to {} {}: {}",
+                        response.getStatusCode(),
+                        request.method(),
+                        request.path(),
+                        error.trim());
+            }
+            throw new ServerErrorException(SERVER_ERROR_MSG);
+        }
+
+        return response;
+    }
+
+    private static String encode(String value) {
+        return URLEncoder.encode(value, StandardCharsets.UTF_8);
+    }
+
+    private static boolean readFully(InputStream in, byte[] buffer) throws IOException {
+        int offset = 0;
+
+        while (offset < buffer.length) {
+            int read = in.read(buffer, offset, buffer.length - offset);
+            if (read < 0) {
+                if (offset == 0) {
+                    return false;
+                }
+                throw new EOFException();
+            }
+            offset += read;
+        }
+
+        return true;
+    }
+
+    /*
+        Names and link targets longer than 100 bytes are written in a pax extended header before the entry, like GNU
+        tar does.
+     */
+    static void writeTar(Path directory, OutputStream out) throws IOException {
+        List<Path> entries;
+        try (Stream<Path> paths = Files.walk(directory)) {
+            entries = paths.filter(path -> !path.equals(directory))
+                    .filter(path -> EXCLUDED_FROM_BUILD_CONTEXT.stream()
+                            .noneMatch(excluded -> directory.relativize(path).startsWith(excluded)))
+                    .sorted()
+                    .toList();
+        }
+
+        try (TarArchiveOutputStream tar = new TarArchiveOutputStream(out, StandardCharsets.UTF_8.name())) {
+            tar.setLongFileMode(TarArchiveOutputStream.LONGFILE_POSIX);
+            tar.setBigNumberMode(TarArchiveOutputStream.BIGNUMBER_POSIX);
+
+            for (Path entry : entries) {
+                String name = directory.relativize(entry).toString().replace('\\', '/');
+
+                if (Files.isSymbolicLink(entry)) {
+                    TarArchiveEntry link = new TarArchiveEntry(name, TarConstants.LF_SYMLINK);
+                    link.setLinkName(Files.readSymbolicLink(entry).toString().replace('\\', '/'));
+                    tar.putArchiveEntry(link);
+                    tar.closeArchiveEntry();
+                } else if (Files.isDirectory(entry, LinkOption.NOFOLLOW_LINKS)
+                        || Files.isRegularFile(entry, LinkOption.NOFOLLOW_LINKS)) {
+                    TarArchiveEntry archiveEntry = new TarArchiveEntry(entry, name, LinkOption.NOFOLLOW_LINKS);
+                    if (archiveEntry.isFile()) {
+                        archiveEntry.setMode(Files.isExecutable(entry) ? 0100755 : 0100644);
+                    }
+
+                    tar.putArchiveEntry(archiveEntry);
+                    if (archiveEntry.isFile()) {
+                        Files.copy(entry, tar);
+                    }
+                    tar.closeArchiveEntry();
+                }
+            }
+        }
+    }
+}
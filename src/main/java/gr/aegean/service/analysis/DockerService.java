@@ -1,124 +1,220 @@
 package gr.aegean.service.analysis;
 
-import java.io.BufferedReader;
-import java.io.File;
 import java.io.IOException;
-import java.io.InputStreamReader;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
-
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
 import gr.aegean.exception.ServerErrorException;
+import gr.aegean.model.analysis.ScanResult;
+import gr.aegean.model.analysis.TimedStage;
+
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.Timer;
+
+import lombok.RequiredArgsConstructor;
 
 
 @Service
+@RequiredArgsConstructor
 public class DockerService {
+    private final DockerClient dockerClient;
+    private final AnalysisMetrics analysisMetrics;
     /*
         This is the access token for SonarQube
      */
     @Value("${sonar.token}")
     private String authToken;
+    @Value("${docker.maven.image}")
+    private String mavenImage;
+    @Value("${docker.maven.repositoryVolume}")
+    private String mavenRepositoryVolume;
+    @Value("${docker.maven.dependencyLayer}")
+    private boolean dependencyLayer;
+    /*
+        The shared local repository is mounted in every Maven container, so artifacts that were downloaded once are
+        reused by every later scan.
+     */
+    private static final String MAVEN_REPOSITORY = "/root/.m2";
+    /*
+        The local repository of the dependency layer. It's chained after the shared repository, so Maven only looks
+        there for artifacts the shared repository doesn't have.
+     */
+    private static final String DEPENDENCY_LAYER_REPOSITORY = "/deps";
+    /*
+        The scanner logs "More about the report processing at http://sonarqube:9000/api/ce/task?id=<id>"
+     */
+    private static final Pattern CE_TASK_PATTERN = Pattern.compile("/api/ce/task\\?id=([\\w-]+)");
+    /*
+        Printed by the dependency layer when dependency:go-offline fails, e.g. for a plugin it can't resolve on its own.
+        The echoed RUN instruction contains the literal $?, so only the output matches.
+     */
+    private static final Pattern GO_OFFLINE_FAILURE_PATTERN = Pattern.compile("GO_OFFLINE_EXIT_CODE=(\\d+)");
+    private static final Logger LOG = LoggerFactory.getLogger(DockerService.class);
+    private static final String SERVER_ERROR_MSG = "The server encountered an internal error and was unable to " +
+            "complete your request. Please try again later";
 
     public String createLinguistContainer(String path) {
-        ProcessBuilder processBuilder = new ProcessBuilder();
-        processBuilder.command(
-                "docker",
-                "run",
-                "--rm",
-                "-v",
-                path + ":/code",
-                "linguist",
-                "github-linguist",
-                "/code"
-        );
-
         StringBuilder reportBuilder = new StringBuilder();
 
         try {
-            Process process = processBuilder.start();
-            BufferedReader reader = new BufferedReader(new InputStreamReader(process.getInputStream()));
-            String line;
-
-            while ((line = reader.readLine()) != null) {
-                reportBuilder.append(line).append("\n");
-            }
+            runContainer(
+                    null,
+                    "linguist",
+                    List.of("github-linguist", "/code"),
+                    List.of(path + ":/code"),
+                    null,
+                    line -> reportBuilder.append(line).append("\n"));
         } catch (IOException ioe) {
-            throw new ServerErrorException("The server encountered an internal error and was unable to complete your " +
-                    "request. Please try again later");
+            throw new ServerErrorException(SERVER_ERROR_MSG);
         }
 
         return reportBuilder.toString();
     }
 
-    public void analyzeMavenProject(String projectKey, String projectPath) throws
-            IOException,
-            InterruptedException {
-        ProcessBuilder processBuilder = new ProcessBuilder();
-
-        createDockerFile(projectKey, projectPath);
-        String dockerImage = buildDockerImage(projectPath, processBuilder);
-        runDockerContainer(dockerImage, projectPath, processBuilder);
-    }
+    /*
+        The image is built and the container runs through the Docker Engine API, so we know when the scan is over and
+        whether the build succeeded. The scanner prints the url of the compute engine task it submitted, which gives
+        us the task id to wait for. The inclusions are null unless the project is analyzed incrementally.
+        Building the image, which resolves the dependencies with the dependency layer enabled, is timed as the build and
+        the container, which compiles the project and runs the scanner, as the scan.
+     */
+    public ScanResult analyzeMavenProject(String projectKey,
+                                          String projectPath,
+                                          Set<String> inclusions,
+                                          Tags projectTags) throws IOException {
+        Timer.Sample buildSample = analysisMetrics.start();
+        createDockerFile(projectKey, projectPath, inclusions);
 
-    private String buildDockerImage(String projectPath, ProcessBuilder processBuilder) throws
-            IOException,
-            InterruptedException {
         /*
-            The project key is the UUID that was assigned to the project folder. Splitting with the escape character
-            which is also the file separator in Windows.
-         */
-        String dockerImage = projectPath.split("\\\\")[3];
-
-        processBuilder.command(
-                "docker",
-                "build",
-                "-t",
-                dockerImage,
-                "."
-        );
-
-         /*
-            Setting the directory of the command execution to be the projects directory, so we can use .
+            The image is named after the UUID that was assigned to the project folder, the last part of its path.
          */
-        processBuilder.directory(new File(projectPath));
-        Process process = processBuilder.start();
-        process.waitFor();
+        String dockerImage = Paths.get(projectPath).getFileName().toString();
+        dockerClient.buildImage(dockerImage, Paths.get(projectPath), line -> {
+            Matcher matcher = GO_OFFLINE_FAILURE_PATTERN.matcher(line);
+            if (matcher.find()) {
+                LOG.warn("Failed to resolve the dependencies of project {} in the dependency layer, exit code {}. " +
+                        "They will be resolved by the scan", projectKey, matcher.group(1));
+            } else {
+                LOG.debug(line);
+            }
+        });
+        analysisMetrics.stop(buildSample, TimedStage.BUILD, projectTags);
 
-        return dockerImage;
+        AtomicReference<String> ceTaskId = new AtomicReference<>();
+        Timer.Sample scanSample = analysisMetrics.start();
+        try {
+            int exitCode = runContainer(
+                    dockerImage,
+                    dockerImage,
+                    null,
+                    List.of(mavenRepositoryVolume + ":" + MAVEN_REPOSITORY),
+                    "code-assessment-net",
+                    line -> {
+                        LOG.info(line);
+                        Matcher matcher = CE_TASK_PATTERN.matcher(line);
+                        if (matcher.find()) {
+                            ceTaskId.set(matcher.group(1));
+                        }
+                    });
+
+            analysisMetrics.stop(scanSample, TimedStage.SCAN, projectTags);
+
+            return new ScanResult(exitCode, ceTaskId.get());
+        } finally {
+            /*
+                With the dependency layer the parent layers are kept, so they can be used as build cache by the next
+                scan of a project with the same pom.
+             */
+            dockerClient.removeImage(dockerImage, dependencyLayer);
+        }
     }
 
-    private void runDockerContainer(String dockerImage, String projectPath, ProcessBuilder processBuilder) throws
-            IOException {
-        String containerName = projectPath.split("\\\\")[3];
-
-        processBuilder.command(
-                "docker",
-                "run",
-                "--rm",
-                "--name",
-                containerName,
-                "--network",
-                "code-assessment-net",
-                dockerImage
-        );
-        processBuilder.start();
+    /*
+        Streaming the logs returns when the container exits, so waiting for it afterwards only reads its exit code. The
+        container is always removed, even if we stopped following it halfway.
+        When the stage is cancelled the container is killed, which ends the logs and the wait.
+     */
+    private int runContainer(String name,
+                             String image,
+                             List<String> command,
+                             List<String> binds,
+                             String network,
+                             Consumer<String> lineConsumer) throws IOException {
+        String containerId = dockerClient.createContainer(name, image, command, binds, network);
+        Runnable killContainer = () -> {
+            try {
+                dockerClient.killContainer(containerId);
+            } catch (IOException ioe) {
+                LOG.warn("Failed to kill container {}", containerId, ioe);
+            }
+        };
+
+        try {
+            CancellationScope.current().onCancel(killContainer);
+            dockerClient.startContainer(containerId);
+            dockerClient.streamLogs(containerId, lineConsumer);
+
+            return dockerClient.waitContainer(containerId);
+        } finally {
+            CancellationScope.current().removeHook(killContainer);
+            dockerClient.removeContainer(containerId);
+        }
     }
 
-    private void createDockerFile(String projectKey, String projectPath) throws IOException {
+    /*
+        Multiple containers write to the shared local repository at the same time, so Maven is configured to use
+        named file locks per artifact instead of its default in-process locking.
+        With the dependency layer enabled, the dependencies are resolved in a layer built from the pom.xml alone.
+        Docker caches layers by the checksum of the copied files, so the layer is rebuilt only when the pom changes. A
+        multi-module pom can't be resolved without the poms of its modules, so those projects only use the shared
+        repository. The layer is an optimization, so a failed go-offline doesn't fail the build. Its exit code is
+        printed instead and logged as a warning, and the scan resolves whatever is missing.
+        An incremental analysis still builds the whole project, since the changed files need the rest of it to compile,
+        but only the changed files are scanned.
+     */
+    private void createDockerFile(String projectKey, String projectPath, Set<String> inclusions) throws IOException {
         Path dockerfilePath = Paths.get(projectPath, "Dockerfile");
+        boolean useDependencyLayer = dependencyLayer && !isMultiModuleProject(projectPath);
+        String dependencies = "";
+        String repositoryTail = "";
+        String sonarInclusions = "";
+
+        if (useDependencyLayer) {
+            dependencies = String.format("""
+                    COPY pom.xml .
+                    RUN mvn -B -q -Dmaven.repo.local=%s dependency:go-offline || echo "GO_OFFLINE_EXIT_CODE=$?"
+                    """, DEPENDENCY_LAYER_REPOSITORY);
+            repositoryTail = " -Dmaven.repo.local.tail=" + DEPENDENCY_LAYER_REPOSITORY;
+        }
+
+        if (inclusions != null) {
+            sonarInclusions = " -Dsonar.inclusions=" + ScanInclusions.toArgument(inclusions);
+        }
+
         String dockerfileContent = String.format("""
-                    FROM maven:3.8.7-openjdk-18-slim
+                    FROM %s
                     WORKDIR /app
-                    COPY . .
-                    CMD sh -c 'mvn clean verify sonar:sonar \
+                    %sCOPY . .
+                    CMD sh -c 'mvn -B clean verify sonar:sonar \
+                    -Daether.syncContext.named.factory=file-lock \
+                    -Daether.syncContext.named.nameMapper=file-gav%s \
                     -Dmaven.test.skip=true \
                     -Dsonar.host.url=http://sonarqube:9000 \
-                    -Dsonar.projectKey=%s \
+                    -Dsonar.projectKey=%s%s \
                     -Dsonar.token=%s;'
-                """, projectKey, authToken);
+                """, mavenImage, dependencies, repositoryTail, projectKey, sonarInclusions, authToken);
 
         /*
             1st argument: the path to write the docker file. The root directory of the project.
@@ -127,4 +223,10 @@ public class DockerService {
          */
         Files.write(dockerfilePath, dockerfileContent.getBytes());
     }
+
+    private boolean isMultiModuleProject(String projectPath) throws IOException {
+        Path pom = Paths.get(projectPath, "pom.xml");
+
+        return !Files.exists(pom) || Files.readString(pom).contains("<modules>");
+    }
 }
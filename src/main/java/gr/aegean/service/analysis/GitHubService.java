@@ -1,21 +1,63 @@
 package gr.aegean.service.analysis;
 
 import java.io.File;
+import java.io.IOException;
 import java.net.URI;
 import java.net.URISyntaxException;
 import java.nio.file.Path;
+import java.time.Duration;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
 import java.util.UUID;
 
+import org.eclipse.jgit.api.CloneCommand;
 import org.eclipse.jgit.api.Git;
 import org.eclipse.jgit.api.errors.GitAPIException;
+import org.eclipse.jgit.diff.DiffEntry;
+import org.eclipse.jgit.diff.DiffFormatter;
+import org.eclipse.jgit.lib.Constants;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.Ref;
+import org.eclipse.jgit.lib.Repository;
+import org.eclipse.jgit.revwalk.RevWalk;
+import org.eclipse.jgit.transport.RefSpec;
+import org.eclipse.jgit.util.io.DisabledOutputStream;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
+import gr.aegean.model.analysis.RemoteHead;
+import gr.aegean.model.dto.analysis.CloneOptions;
+
+import lombok.RequiredArgsConstructor;
+
 
 @Service
+@RequiredArgsConstructor
 public class GitHubService {
+    private final MirrorService mirrorService;
+    @Value("${analysis.mirror.enabled}")
+    private boolean useMirrors;
+    /*
+        How long a clone can go without making progress before it's aborted, also the read timeout of the transport.
+     */
+    @Value("${analysis.clone.stallTimeout}")
+    private Duration stallTimeout;
 
-    public Optional<Path> cloneProject(File requestFolder, String projectUrl) {
+    /*
+        The branch is the default branch of the remote, when we know it. In shallow mode only that branch is fetched.
+        The checkout is cloned from the local mirror of the repository, so only what was pushed since the last clone
+        is downloaded. A repository without a mirror yet is cloned from the remote, while its mirror is filled in the
+        background. Submodules with relative urls are resolved against the url we clone from, so those clones go
+        to the remote directly.
+     */
+    public Optional<Path> cloneProject(File requestFolder,
+                                       String projectUrl,
+                                       String branch,
+                                       CloneOptions cloneOptions) {
         if (!isValidGitHubUrl(projectUrl)) {
             return Optional.empty();
         }
@@ -26,22 +68,170 @@ public class GitHubService {
             Projects folder(UUID1) that will contain all the repositories for that request(UUID2, UUID3).
         */
         File projectFile = new File(requestFolder, UUID.randomUUID().toString());
-        try (Git git = cloneRepository(projectUrl, projectFile)) {
+        String normalizedUrl = normalizeProjectUrl(projectUrl);
+        Optional<Path> mirror = useMirrors && !Boolean.TRUE.equals(cloneOptions.submodules())
+                ? mirrorService.acquireMirror(normalizedUrl, projectUrl)
+                : Optional.empty();
+        String uri = mirror.map(path -> path.toFile().getAbsolutePath()).orElse(projectUrl);
+
+        try (Git git = cloneRepository(uri, projectFile, branch, cloneOptions)) {
         /*
             Exception will be thrown when repository is private.
          */
         } catch (GitAPIException gae) {
             return Optional.empty();
+        } finally {
+            mirror.ifPresent(path -> mirrorService.releaseMirror(normalizedUrl));
         }
 
         return Optional.of(projectFile.toPath());
     }
 
-    private Git cloneRepository(String uri, File directory) throws GitAPIException {
-        return Git.cloneRepository()
+    /*
+        Asks the remote for its default branch and the commit it points to, without downloading anything. An empty
+        optional means that the url is invalid or the repository is private.
+     */
+    public Optional<RemoteHead> findRemoteHead(String projectUrl) {
+        if (!isValidGitHubUrl(projectUrl)) {
+            return Optional.empty();
+        }
+
+        try {
+            Map<String, Ref> refs = Git.lsRemoteRepository()
+                    .setRemote(projectUrl)
+                    .setTimeout((int) stallTimeout.toSeconds())
+                    .callAsMap();
+            Ref head = refs.get(Constants.HEAD);
+            if (head == null || head.getObjectId() == null) {
+                return Optional.empty();
+            }
+
+            return Optional.of(new RemoteHead(findDefaultBranch(head, refs), head.getObjectId().name()));
+        } catch (GitAPIException gae) {
+            return Optional.empty();
+        }
+    }
+
+    /*
+        The commit that was actually cloned. The remote HEAD could have moved between asking for it and cloning.
+     */
+    public Optional<String> findHeadCommit(Path projectPath) {
+        try (Git git = Git.open(projectPath.toFile())) {
+            return Optional.ofNullable(git.getRepository().resolve(Constants.HEAD))
+                    .map(ObjectId::name);
+        } catch (IOException ioe) {
+            return Optional.empty();
+        }
+    }
+
+    /*
+        The files that differ between the previous commit and the HEAD of the checkout: added, modified, deleted, and
+        both paths of a renamed file. A shallow checkout doesn't have the previous commit, so it's fetched on its own,
+        without its history. An empty optional means the previous commit can't be found, e.g. the history of the
+        repository was rewritten, and the repository has to be analyzed in full.
+     */
+    public Optional<Set<String>> findChangedFiles(Path projectPath, String previousCommitSha) {
+        try (Git git = Git.open(projectPath.toFile());
+             RevWalk revWalk = new RevWalk(git.getRepository());
+             DiffFormatter diffFormatter = new DiffFormatter(DisabledOutputStream.INSTANCE)) {
+            Repository repository = git.getRepository();
+            ObjectId previousCommit = ObjectId.fromString(previousCommitSha);
+
+            if (!repository.getObjectDatabase().has(previousCommit)) {
+                git.fetch()
+                        .setRefSpecs(new RefSpec(previousCommitSha))
+                        .setDepth(1)
+                        .call();
+            }
+
+            ObjectId headCommit = repository.resolve(Constants.HEAD);
+            if (headCommit == null) {
+                return Optional.empty();
+            }
+
+            diffFormatter.setRepository(repository);
+            Set<String> changedFiles = new HashSet<>();
+            for (DiffEntry entry : diffFormatter.scan(
+                    revWalk.parseCommit(previousCommit).getTree(),
+                    revWalk.parseCommit(headCommit).getTree())) {
+                if (!DiffEntry.DEV_NULL.equals(entry.getOldPath())) {
+                    changedFiles.add(entry.getOldPath());
+                }
+                if (!DiffEntry.DEV_NULL.equals(entry.getNewPath())) {
+                    changedFiles.add(entry.getNewPath());
+                }
+            }
+
+            return Optional.of(changedFiles);
+        } catch (IOException | GitAPIException | IllegalArgumentException e) {
+            return Optional.empty();
+        }
+    }
+
+    /*
+        GitHub treats owner and repository names case-insensitively and accepts them with or without the .git suffix
+        and a trailing slash, so all of those forms refer to the same repository.
+        https://github.com/Owner/Repo.git/ -> https://github.com/owner/repo
+     */
+    public String normalizeProjectUrl(String projectUrl) {
+        String normalized = projectUrl.trim().toLowerCase(Locale.ROOT);
+
+        while (normalized.endsWith("/")) {
+            normalized = normalized.substring(0, normalized.length() - 1);
+        }
+
+        if (normalized.endsWith(".git")) {
+            normalized = normalized.substring(0, normalized.length() - ".git".length());
+        }
+
+        return normalized;
+    }
+
+    /*
+        A shallow clone only downloads the objects of the latest commit of the default branch. Most of the time and
+        disk space of a full clone goes to history that the analysis never reads.
+        A clone that stalls, or whose stage is cancelled, is aborted and the repository is skipped.
+     */
+    private Git cloneRepository(String uri,
+                                File directory,
+                                String branch,
+                                CloneOptions cloneOptions) throws GitAPIException {
+        CloneCommand command = Git.cloneRepository()
                 .setURI(uri)
                 .setDirectory(directory)
-                .call();
+                .setCloneSubmodules(cloneOptions.submodules())
+                .setProgressMonitor(new CancellableProgressMonitor(CancellationScope.current(), stallTimeout))
+                .setTimeout((int) stallTimeout.toSeconds());
+
+        if (Boolean.TRUE.equals(cloneOptions.shallow())) {
+            command.setDepth(1)
+                    .setNoTags();
+
+            if (branch != null) {
+                command.setBranch(branch)
+                        .setBranchesToClone(List.of(branch));
+            }
+        }
+
+        return command.call();
+    }
+
+    /*
+        When the server advertises HEAD as a symbolic ref we get the branch directly. Otherwise, we pick the branch
+        that points to the same commit as HEAD.
+     */
+    private String findDefaultBranch(Ref head, Map<String, Ref> refs) {
+        if (head.isSymbolic()) {
+            return head.getTarget().getName();
+        }
+
+        return refs.values().stream()
+                .filter(ref -> ref.getName().startsWith(Constants.R_HEADS))
+                .filter(ref -> head.getObjectId().equals(ref.getObjectId()))
+                .map(Ref::getName)
+                .sorted()
+                .findFirst()
+                .orElse(null);
     }
 
     /*
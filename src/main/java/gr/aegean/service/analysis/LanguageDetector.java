@@ -0,0 +1,157 @@
+package gr.aegean.service.analysis;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Optional;
+
+import org.springframework.stereotype.Service;
+
+
+/*
+    An in-process alternative to GitHub linguist. Files are classified by their name, their extension or, for scripts
+    without an extension, their shebang line. Like linguist, the result is the share of bytes of each language rounded
+    to 2 decimals, and only programming and markup languages are counted. The bytes of each language are collected by
+    the project profile scan.
+ */
+@Service
+public class LanguageDetector {
+    private static final Map<String, String> LANGUAGES_BY_FILENAME = Map.of(
+            "Dockerfile", "Dockerfile",
+            "Makefile", "Makefile",
+            "CMakeLists.txt", "CMake",
+            "Rakefile", "Ruby",
+            "Gemfile", "Ruby",
+            "Jenkinsfile", "Groovy");
+    private static final Map<String, String> LANGUAGES_BY_EXTENSION = Map.ofEntries(
+            Map.entry("java", "Java"),
+            Map.entry("kt", "Kotlin"),
+            Map.entry("kts", "Kotlin"),
+            Map.entry("scala", "Scala"),
+            Map.entry("groovy", "Groovy"),
+            Map.entry("gradle", "Groovy"),
+            Map.entry("js", "JavaScript"),
+            Map.entry("mjs", "JavaScript"),
+            Map.entry("cjs", "JavaScript"),
+            Map.entry("jsx", "JavaScript"),
+            Map.entry("ts", "TypeScript"),
+            Map.entry("tsx", "TSX"),
+            Map.entry("py", "Python"),
+            Map.entry("pyw", "Python"),
+            Map.entry("go", "Go"),
+            Map.entry("php", "PHP"),
+            Map.entry("rb", "Ruby"),
+            Map.entry("rs", "Rust"),
+            Map.entry("c", "C"),
+            Map.entry("h", "C"),
+            Map.entry("cc", "C++"),
+            Map.entry("cpp", "C++"),
+            Map.entry("cxx", "C++"),
+            Map.entry("hpp", "C++"),
+            Map.entry("cs", "C#"),
+            Map.entry("swift", "Swift"),
+            Map.entry("m", "Objective-C"),
+            Map.entry("dart", "Dart"),
+            Map.entry("lua", "Lua"),
+            Map.entry("pl", "Perl"),
+            Map.entry("r", "R"),
+            Map.entry("sh", "Shell"),
+            Map.entry("bash", "Shell"),
+            Map.entry("zsh", "Shell"),
+            Map.entry("ps1", "PowerShell"),
+            Map.entry("bat", "Batchfile"),
+            Map.entry("html", "HTML"),
+            Map.entry("htm", "HTML"),
+            Map.entry("css", "CSS"),
+            Map.entry("scss", "SCSS"),
+            Map.entry("less", "Less"),
+            Map.entry("vue", "Vue"),
+            Map.entry("svelte", "Svelte"));
+    private static final Map<String, String> LANGUAGES_BY_INTERPRETER = Map.of(
+            "python", "Python",
+            "node", "JavaScript",
+            "sh", "Shell",
+            "bash", "Shell",
+            "zsh", "Shell",
+            "ruby", "Ruby",
+            "perl", "Perl",
+            "php", "PHP");
+    /*
+        Enough to read the shebang line of a script.
+     */
+    private static final int SHEBANG_LENGTH = 128;
+
+    /**
+     * @return The share of bytes of each detected language as a percentage, for example {Python=82.35, Shell=17.65}.
+     */
+    public Map<String, Double> detectLanguages(Map<String, Long> bytesByLanguage) {
+        long totalBytes = bytesByLanguage.values().stream()
+                .mapToLong(Long::longValue)
+                .sum();
+        Map<String, Double> languages = new HashMap<>();
+
+        if (totalBytes == 0) {
+            return languages;
+        }
+
+        bytesByLanguage.forEach((language, bytes) -> languages.put(
+                language,
+                BigDecimal.valueOf(bytes * 100.0 / totalBytes)
+                        .setScale(2, RoundingMode.HALF_UP)
+                        .doubleValue()));
+
+        return languages;
+    }
+
+    /**
+     * @return The language of the file, if it's a programming or markup language.
+     */
+    public Optional<String> classify(Path file, String fileName, long size) throws IOException {
+        if (LANGUAGES_BY_FILENAME.containsKey(fileName)) {
+            return Optional.of(LANGUAGES_BY_FILENAME.get(fileName));
+        }
+
+        int extensionIndex = fileName.lastIndexOf('.');
+        if (extensionIndex > 0) {
+            String extension = fileName.substring(extensionIndex + 1).toLowerCase();
+
+            return Optional.ofNullable(LANGUAGES_BY_EXTENSION.get(extension));
+        }
+
+        return classifyByShebang(file, size);
+    }
+
+    /*
+        Maps only the first bytes of the file. "#!/usr/bin/env python3" and "#!/usr/bin/python3" both give "python".
+     */
+    private static Optional<String> classifyByShebang(Path file, long size) throws IOException {
+        String header;
+
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, Math.min(size, SHEBANG_LENGTH));
+            byte[] bytes = new byte[buffer.remaining()];
+            buffer.get(bytes);
+            header = new String(bytes, StandardCharsets.UTF_8);
+        }
+
+        if (!header.startsWith("#!")) {
+            return Optional.empty();
+        }
+
+        String[] shebang = header.substring(2).lines().findFirst().orElse("").trim().split("\\s+");
+        String interpreter = shebang[0].substring(shebang[0].lastIndexOf('/') + 1);
+
+        if (interpreter.equals("env") && shebang.length > 1) {
+            interpreter = shebang[1];
+        }
+
+        return Optional.ofNullable(LANGUAGES_BY_INTERPRETER.get(interpreter.replaceAll("[\\d.]+$", "")));
+    }
+}
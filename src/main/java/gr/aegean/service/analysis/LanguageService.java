@@ -6,20 +6,38 @@ import java.util.Map;
 import java.util.Set;
 import java.util.stream.Collectors;
 
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
 import gr.aegean.model.analysis.Language;
-
-import lombok.RequiredArgsConstructor;
+import gr.aegean.model.analysis.LanguageDetectionMode;
+import gr.aegean.model.analysis.ProjectProfile;
 
 
 @Service
-@RequiredArgsConstructor
 public class LanguageService {
     private final DockerService dockerService;
+    private final LanguageDetector languageDetector;
+    private final LanguageDetectionMode detectionMode;
+
+    public LanguageService(DockerService dockerService,
+                           LanguageDetector languageDetector,
+                           @Value("${analysis.languageDetection}") LanguageDetectionMode detectionMode) {
+        this.dockerService = dockerService;
+        this.languageDetector = languageDetector;
+        this.detectionMode = detectionMode;
+    }
+
+    /*
+        By default, the languages are detected in process from the bytes per language the profile scan collected.
+        Running GitHub linguist in a container is kept as an alternative mode.
+     */
+    public Map<String, Double> detectLanguages(ProjectProfile profile) {
+        if (detectionMode == LanguageDetectionMode.IN_PROCESS) {
+            return languageDetector.detectLanguages(profile.bytesByLanguage());
+        }
 
-    public Map<String, Double> detectLanguages(String path) {
-        String containerOutput = dockerService.createLinguistContainer(path);
+        String containerOutput = dockerService.createLinguistContainer(profile.root().toString());
 
         return parseLinguistOutput(containerOutput);
     }
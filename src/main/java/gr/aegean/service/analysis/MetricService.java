@@ -8,10 +8,7 @@ import gr.aegean.model.analysis.sonarqube.Severity;
 import gr.aegean.model.analysis.sonarqube.VulnerabilityProbability;
 
 import java.util.EnumMap;
-import java.util.List;
 import java.util.Map;
-import java.util.function.Function;
-import java.util.stream.Collectors;
 
 import org.springframework.stereotype.Service;
 
@@ -55,13 +52,13 @@ public class MetricService {
                  */
                 case BUG_SEVERITY -> updatedMetricsReport.put(
                         metric,
-                        applyMetricsUtf(issuesReport.getIssues(), "BUG"));
+                        applyMetricsUtf(issuesReport.getSeverityCount("BUG")));
                 case VULNERABILITY_SEVERITY -> updatedMetricsReport.put(
                         metric,
-                        applyMetricsUtf(issuesReport.getIssues(), "VULNERABILITY"));
+                        applyMetricsUtf(issuesReport.getSeverityCount("VULNERABILITY")));
                 case HOTSPOT_PRIORITY -> updatedMetricsReport.put(
                         metric,
-                        applyHotSpotPriorityUtf(hotspotsReport.getHotspots()));
+                        applyHotSpotPriorityUtf(hotspotsReport.getVulnerabilityProbabilityCount()));
             }
         });
 
@@ -119,11 +116,10 @@ public class MetricService {
     }
 
     /*
-        This method will be applied for bug severity and vulnerability severity metrics.
+        This method will be applied for bug severity and vulnerability severity metrics. The severities of each issue
+        type are counted by the issues report as the issues are added.
      */
-    private double applyMetricsUtf(List<IssuesReport.IssueDetails> issuesDetails, String issueType) {
-        Map<Severity, Long> severityCount = countSeverityByType(issuesDetails, issueType);
-
+    private double applyMetricsUtf(Map<Severity, Long> severityCount) {
         /*
             Getting the count for each severity. If it's null, meaning no severity of the specific type was found we
             return 0, otherwise we would have NullPointerException.
@@ -170,32 +166,7 @@ public class MetricService {
         return 1.0;
     }
 
-    private Map<Severity, Long> countSeverityByType(List<IssuesReport.IssueDetails> issuesDetails, String issueType) {
-        /*
-            Returns a list of all the severities found.[BLOCKER, MAJOR, MINOR, MAJOR,  CRITICAL, CRITICAL]
-         */
-        List<Severity> sortedSeverities = issuesDetails.stream()
-                .filter(issue -> issue.getType().equals(issueType))
-                .map(IssuesReport.IssueDetails::getSeverity)
-                .toList();
-
-        /*
-            BLOCKER: 3,
-            CRITICAL: 1,
-            MAJOR: 1,
-            MINOR: 2,
-            INFO: 1
-
-            We know the total occurrences of each severity, so we can apply the relevant utf.
-         */
-        return sortedSeverities.stream()
-                .collect(Collectors.groupingBy(Function.identity(), Collectors.counting()));
-    }
-
-    private double applyHotSpotPriorityUtf(List<HotspotsReport.HotspotDetails> hotspotDetails) {
-        Map<VulnerabilityProbability, Long> vulnerabilityProbabilityCount = countVulnerabilityProbabilityByType(
-                hotspotDetails);
-
+    private double applyHotSpotPriorityUtf(Map<VulnerabilityProbability, Long> vulnerabilityProbabilityCount) {
         /*
             Getting the count for each vulnerability probability, if its null, meaning no vulnerability probability
             of the specific type was found we return 0, otherwise we would have NullPointerException.
@@ -225,19 +196,6 @@ public class MetricService {
         return 1.0;
     }
 
-    private Map<VulnerabilityProbability, Long> countVulnerabilityProbabilityByType(
-            List<HotspotsReport.HotspotDetails> hotspotDetails) {
-        /*
-            Returns a list of all vulnerability probability found. [HIGH, LOW, MEDIUM, MEDIUM,]
-         */
-        List<VulnerabilityProbability> vulnerabilityProbabilities = hotspotDetails.stream()
-                .map(HotspotsReport.HotspotDetails::getVulnerabilityProbability)
-                .toList();
-
-        return vulnerabilityProbabilities.stream()
-                .collect(Collectors.groupingBy(Function.identity(), Collectors.counting()));
-    }
-
     private double utf(long count) {
         return count == 0 ? 0 : 1.0 / (1.0 + 1.0 / (1.0 + count));
     }
@@ -0,0 +1,341 @@
+package gr.aegean.service.analysis;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.eclipse.jgit.api.Git;
+import org.eclipse.jgit.api.errors.GitAPIException;
+import org.eclipse.jgit.lib.Constants;
+import org.eclipse.jgit.lib.Ref;
+import org.eclipse.jgit.lib.Repository;
+import org.eclipse.jgit.transport.FetchResult;
+import org.eclipse.jgit.transport.RefSpec;
+import org.eclipse.jgit.transport.TagOpt;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Service;
+import org.springframework.util.DigestUtils;
+import org.springframework.util.unit.DataSize;
+
+import gr.aegean.utility.FileUtils;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+
+import jakarta.annotation.PreDestroy;
+
+
+/*
+    Keeps a bare mirror of the branches of every repository we cloned, F:\Projects\mirrors\<hash of the url>.git, so
+    cloning the repository again only fetches what was pushed since the last time and the checkout is cloned from the
+    local mirror. Only refs/heads/* is mirrored, tags and the refs/pull/* of GitHub are never downloaded.
+    A repository without a mirror is cloned shallow from the remote, so the first analysis doesn't wait for its
+    history. Its mirror is filled in the background, one repository at a time, and used from the next clone on.
+    The mirrors are evicted least recently used first, whenever they take more bytes than the quota. A mirror that is in
+    use is never evicted, and only one request at a time fetches into it. The mirrors that are on disk when the
+    application starts are picked up again.
+ */
+@Service
+public class MirrorService {
+    private final File mirrorDirectory;
+    private final long quotaBytes;
+    private final Duration stallTimeout;
+    /*
+        Access ordered, the eldest entry is the least recently used mirror.
+     */
+    private final LinkedHashMap<String, Mirror> mirrors = new LinkedHashMap<>(16, 0.75f, true);
+    private final ExecutorService fillExecutor = Executors.newSingleThreadExecutor(
+            new CustomizableThreadFactory("MirrorFill-"));
+    private static final RefSpec BRANCHES = new RefSpec("+refs/heads/*:refs/heads/*");
+    private static final String MIRROR_SUFFIX = ".git";
+    private static final String DELETED_SUFFIX = ".deleted";
+    private static final Logger LOG = LoggerFactory.getLogger(MirrorService.class);
+
+    public MirrorService(@Value("${projects.base-directory}") String baseDirectoryPath,
+                         @Value("${analysis.mirror.quota}") DataSize quota,
+                         @Value("${analysis.clone.stallTimeout}") Duration stallTimeout,
+                         MeterRegistry meterRegistry) {
+        this.mirrorDirectory = new File(baseDirectoryPath, "mirrors");
+        this.quotaBytes = quota.toBytes();
+        this.stallTimeout = stallTimeout;
+        loadMirrors();
+
+        Gauge.builder("analysis.mirrors.usage", this, MirrorService::getUsedBytes)
+                .baseUnit("bytes")
+                .description("Bytes taken by the repository mirrors on disk")
+                .register(meterRegistry);
+        Gauge.builder("analysis.mirrors.count", this, MirrorService::getMirrorCount)
+                .register(meterRegistry);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        fillExecutor.shutdownNow();
+    }
+
+    /**
+     * @return The mirror of the repository, up to date with the remote, or an empty optional if the repository has no
+     * mirror yet, its mirror is still being filled or the remote can't be fetched. The mirror is in use until it's
+     * released.
+     */
+    public Optional<Path> acquireMirror(String normalizedUrl, String remoteUrl) {
+        String key = toKey(normalizedUrl);
+        Mirror mirror;
+
+        synchronized (this) {
+            mirror = mirrors.get(key);
+            if (mirror == null) {
+                Mirror created = new Mirror(new File(mirrorDirectory, key).toPath());
+                created.users++;
+                mirrors.put(key, created);
+                fillExecutor.execute(() -> fill(key, created, remoteUrl));
+
+                return Optional.empty();
+            }
+            if (!mirror.filled) {
+                return Optional.empty();
+            }
+
+            mirror.users++;
+        }
+
+        boolean updated;
+        mirror.lock.lock();
+        try {
+            updated = update(mirror.path, remoteUrl);
+        } finally {
+            mirror.lock.unlock();
+        }
+
+        if (!updated) {
+            releaseMirror(normalizedUrl);
+            return Optional.empty();
+        }
+
+        long size = FileUtils.measure(mirror.path);
+        synchronized (this) {
+            mirror.size = size;
+        }
+        evict();
+
+        return Optional.of(mirror.path);
+    }
+
+    /*
+        A mirror that could not be created, e.g. for a private repository, is dropped once nobody uses it.
+     */
+    public void releaseMirror(String normalizedUrl) {
+        String key = toKey(normalizedUrl);
+
+        synchronized (this) {
+            Mirror mirror = mirrors.get(key);
+            if (mirror == null) {
+                return;
+            }
+
+            mirror.users--;
+            if (mirror.users == 0 && !Files.exists(mirror.path)) {
+                mirrors.remove(key);
+            }
+        }
+
+        evict();
+    }
+
+    public synchronized long getUsedBytes() {
+        return mirrors.values().stream()
+                .mapToLong(mirror -> mirror.size)
+                .sum();
+    }
+
+    public synchronized int getMirrorCount() {
+        return mirrors.size();
+    }
+
+    /*
+        The first fetch into the mirror, in the background. The fill counts as a user, so the mirror can't be evicted
+        while it's filled. A mirror that failed halfway is deleted and dropped, e.g. for a private repository, so the
+        next request starts over.
+     */
+    private void fill(String key, Mirror mirror, String remoteUrl) {
+        boolean filled = false;
+
+        mirror.lock.lock();
+        try {
+            try (Git git = Git.init().setBare(true).setDirectory(mirror.path.toFile()).call()) {
+                fetch(git, remoteUrl);
+            }
+            filled = true;
+        } catch (IOException | GitAPIException e) {
+            LOG.debug("Failed to fill the mirror of {}", remoteUrl, e);
+            FileUtils.deleteRecursively(mirror.path);
+        } finally {
+            mirror.lock.unlock();
+        }
+
+        long size = filled ? FileUtils.measure(mirror.path) : 0;
+        synchronized (this) {
+            mirror.size = size;
+            mirror.filled = filled;
+            mirror.users--;
+            if (!filled && mirror.users == 0) {
+                mirrors.remove(key);
+            }
+        }
+
+        evict();
+    }
+
+    /*
+        Fetches the branches that changed and prunes the ones deleted on the remote. A transfer that stalls, or whose
+        stage is cancelled, is aborted like a clone of the checkout.
+     */
+    private boolean update(Path path, String remoteUrl) {
+        try (Git git = Git.open(path.toFile())) {
+            fetch(git, remoteUrl);
+
+            return true;
+        } catch (IOException | GitAPIException e) {
+            LOG.debug("Failed to update the mirror of {}", remoteUrl, e);
+
+            return false;
+        }
+    }
+
+    /*
+        The refspec is passed on every fetch, so mirrors that were created with every ref of the remote only fetch
+        branches from now on.
+     */
+    private void fetch(Git git, String remoteUrl) throws GitAPIException, IOException {
+        FetchResult result = git.fetch()
+                .setRemote(remoteUrl)
+                .setRefSpecs(BRANCHES)
+                .setTagOpt(TagOpt.NO_TAGS)
+                .setRemoveDeletedRefs(true)
+                .setProgressMonitor(new CancellableProgressMonitor(CancellationScope.current(), stallTimeout))
+                .setTimeout((int) stallTimeout.toSeconds())
+                .call();
+
+        linkHead(git.getRepository(), result);
+    }
+
+    /*
+        A checkout cloned from the mirror without a branch checks out the HEAD of the mirror, so it follows the default
+        branch of the remote. Without the symbolic ref, the branch that points to the same commit as HEAD is picked.
+     */
+    private void linkHead(Repository repository, FetchResult result) throws IOException {
+        Ref head = result.getAdvertisedRef(Constants.HEAD);
+        if (head == null) {
+            return;
+        }
+
+        Optional<String> branch = head.isSymbolic()
+                ? Optional.of(head.getTarget().getName())
+                : result.getAdvertisedRefs().stream()
+                        .filter(ref -> ref.getName().startsWith(Constants.R_HEADS))
+                        .filter(ref -> head.getObjectId() != null && head.getObjectId().equals(ref.getObjectId()))
+                        .map(Ref::getName)
+                        .sorted()
+                        .findFirst();
+        if (branch.isPresent()) {
+            repository.updateRef(Constants.HEAD).link(branch.get());
+        }
+    }
+
+    /*
+        The evicted mirrors are renamed while holding the lock, so a request for the same repository creates a new
+        mirror instead of reading one that is being deleted. Deleting them happens outside the lock, deleting a large
+        mirror can take a while.
+     */
+    private void evict() {
+        List<Path> evicted = new ArrayList<>();
+
+        synchronized (this) {
+            Iterator<Mirror> iterator = mirrors.values().iterator();
+
+            while (iterator.hasNext() && getUsedBytes() > quotaBytes) {
+                Mirror mirror = iterator.next();
+                if (mirror.users > 0) {
+                    continue;
+                }
+
+                iterator.remove();
+                Path deleted = mirror.path.resolveSibling(
+                        mirror.path.getFileName() + "." + UUID.randomUUID() + DELETED_SUFFIX);
+                try {
+                    Files.move(mirror.path, deleted, StandardCopyOption.ATOMIC_MOVE);
+                    evicted.add(deleted);
+                } catch (IOException ioe) {
+                    LOG.warn("Failed to evict mirror {}", mirror.path, ioe);
+                }
+            }
+        }
+
+        evicted.forEach(FileUtils::deleteRecursively);
+    }
+
+    /*
+        The mirrors that were used most recently are the ones whose files were modified last. Mirrors whose deletion
+        was interrupted by a restart are deleted now.
+     */
+    private void loadMirrors() {
+        File[] files = mirrorDirectory.listFiles(File::isDirectory);
+        if (files == null) {
+            return;
+        }
+
+        Arrays.stream(files)
+                .filter(file -> file.getName().endsWith(DELETED_SUFFIX))
+                .forEach(file -> FileUtils.deleteRecursively(file.toPath()));
+
+        Arrays.stream(files)
+                .filter(file -> file.getName().endsWith(MIRROR_SUFFIX))
+                .sorted(Comparator.comparingLong(File::lastModified))
+                .forEach(file -> {
+                    Mirror mirror = new Mirror(file.toPath());
+                    mirror.filled = true;
+                    mirror.size = FileUtils.measure(mirror.path);
+                    mirrors.put(file.getName(), mirror);
+                });
+    }
+
+    /*
+        The url is hashed, so it can be used as a folder name on every platform.
+     */
+    private String toKey(String normalizedUrl) {
+        return DigestUtils.md5DigestAsHex(normalizedUrl.getBytes(StandardCharsets.UTF_8)) + MIRROR_SUFFIX;
+    }
+
+    /*
+        The size and the number of users are guarded by the service, the lock only serializes fetches into the mirror.
+     */
+    private static final class Mirror {
+        private final Path path;
+        private final ReentrantLock lock = new ReentrantLock();
+        private long size;
+        private int users;
+        private boolean filled;
+
+        private Mirror(Path path) {
+            this.path = path;
+        }
+    }
+}
@@ -1,53 +1,91 @@
 package gr.aegean.service.analysis;
 
 import java.io.File;
+import java.nio.file.Path;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
-import java.util.UUID;
+import java.util.Set;
+import java.util.concurrent.CancellationException;
 import java.util.concurrent.CompletableFuture;
-import java.util.concurrent.Executor;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Function;
 
-import org.springframework.beans.factory.annotation.Qualifier;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Value;
-import org.springframework.security.concurrent.DelegatingSecurityContextExecutor;
+import org.springframework.hateoas.Link;
 import org.springframework.stereotype.Service;
 
 import gr.aegean.exception.ServerErrorException;
+import gr.aegean.exception.StageTimeoutException;
 import gr.aegean.model.dto.analysis.AnalysisRequest;
 import gr.aegean.entity.AnalysisReport;
+import gr.aegean.model.analysis.AnalysisJob;
+import gr.aegean.model.analysis.AnalysisJobStatus;
+import gr.aegean.model.analysis.AnalysisProgressStage;
+import gr.aegean.model.analysis.DetectedProject;
+import gr.aegean.model.analysis.PipelineStage;
+import gr.aegean.model.analysis.PreviousAnalysis;
+import gr.aegean.model.analysis.RejectionReason;
+import gr.aegean.model.analysis.RemoteHead;
+import gr.aegean.model.analysis.TimedStage;
+import gr.aegean.model.dto.analysis.CloneOptions;
 import gr.aegean.service.auth.JwtService;
 
+import io.micrometer.core.instrument.Tags;
+
 
 @Service
 public class ProcessProjectService {
     private final GitHubService gitHubService;
     private final AnalysisService analysisService;
     private final JwtService jwtService;
-    private final Executor taskExecutor;
-    private final File baseDirectory;
+    private final AnalysisJobService analysisJobService;
+    private final AnalysisReportCacheService cacheService;
+    private final WorkspaceService workspaceService;
+    private final AnalysisScheduler analysisScheduler;
+    private final ConcurrencyLimits concurrencyLimits;
+    private final AnalysisPipeline analysisPipeline;
+    private final AnalysisMetrics analysisMetrics;
+    private final SonarProjectService sonarProjectService;
+    /*
+        The analyses that are running, keyed by the normalized url and the commit of the repository.
+     */
+    private final Map<String, CompletableFuture<Optional<AnalysisReport>>> inFlightAnalyses =
+            new ConcurrentHashMap<>();
+    @Value("${analysis.incremental.enabled}")
+    private boolean incrementalAnalysis;
+    @Value("${analysis.incremental.maxChangedFiles}")
+    private int maxChangedFiles;
+    private static final Logger LOG = LoggerFactory.getLogger(ProcessProjectService.class);
     private static final String SERVER_ERROR_MSG = "The server encountered an internal error and was unable to " +
             "complete your request. Please try again later.";
 
-    /*
-        We have to use a DelegatingSecurityContextExecutor() because the separate threads that will run for the
-        analysis of each project needs to know the SecurityContextHolder authentication object from the original request
-        containing the jwt otherwise the SecurityContextHolder is null for each child thread.
-        By using DelegatingSecurityContextExecutor() we automatically propagate the SecurityContext from the parent
-        thread to the child thread
-     */
     public ProcessProjectService(GitHubService gitHubService,
                                  AnalysisService analysisService,
                                  JwtService jwtService,
-                                 /*
-                                    The default one and the one we configured, so we have to use @Qualifier
-                                  */
-                                 @Qualifier("taskExecutor") Executor taskExecutor,
-                                 @Value("${projects.base-directory}") String baseDirectoryPath) {
+                                 AnalysisJobService analysisJobService,
+                                 AnalysisReportCacheService cacheService,
+                                 WorkspaceService workspaceService,
+                                 AnalysisScheduler analysisScheduler,
+                                 ConcurrencyLimits concurrencyLimits,
+                                 AnalysisPipeline analysisPipeline,
+                                 AnalysisMetrics analysisMetrics,
+                                 SonarProjectService sonarProjectService) {
         this.gitHubService = gitHubService;
         this.analysisService = analysisService;
         this.jwtService = jwtService;
-        this.taskExecutor = new DelegatingSecurityContextExecutor(taskExecutor);
-        baseDirectory = new File(baseDirectoryPath);
+        this.analysisJobService = analysisJobService;
+        this.cacheService = cacheService;
+        this.workspaceService = workspaceService;
+        this.analysisScheduler = analysisScheduler;
+        this.concurrencyLimits = concurrencyLimits;
+        this.analysisPipeline = analysisPipeline;
+        this.analysisMetrics = analysisMetrics;
+        this.sonarProjectService = sonarProjectService;
     }
 
     /*
@@ -57,56 +95,381 @@ public class ProcessProjectService {
         repos which also means that the analysis will not happen. Checking if the request is null and throwing a
         relative error won't work, we will get a warning request body is missing.
         We allow duplication in constrains for the following case: complexity >= 0.2 && complexity <=0.5
+
+        The analysis runs in the background and the job is returned immediately, so the request thread is not blocked
+        for the entire clone, scan and fetch process. The outcome of the analysis is recorded in the job.
      */
-    public CompletableFuture<Integer> processProject(AnalysisRequest analysisRequest) {
+    public AnalysisJob processProject(AnalysisRequest analysisRequest) {
         analysisService.validatePreferences(analysisRequest.preferences());
 
-        File requestFolder = new File(baseDirectory + File.separator + UUID.randomUUID());
-        if (!requestFolder.mkdir()) {
-            throw new ServerErrorException(SERVER_ERROR_MSG);
-        }
+        File requestFolder = workspaceService.createRequestFolder();
 
+        /*
+            The user id is resolved in the request thread, where the SecurityContext is guaranteed to be set.
+         */
+        Integer userId = Integer.parseInt(jwtService.getSubject());
+        AnalysisJob job = analysisJobService.createJob(userId);
+
+        /*
+            The separate threads that will run for the analysis of each project need to know the SecurityContextHolder
+            authentication object from the original request containing the jwt, otherwise the SecurityContextHolder is
+            null for each child thread. The scheduler captures the SecurityContext of the request thread and every
+            stage of the pipeline propagates it from the parent thread to the child thread, like a
+            DelegatingSecurityContextExecutor. The repositories are queued under the user, so the scheduler can share
+            the pipeline fairly between users.
+         */
         List<CompletableFuture<Optional<AnalysisReport>>> futures = analysisRequest.projectUrls().stream()
-                .map(projectUrl -> cloneAndAnalyzeProjectAsync(requestFolder, projectUrl))
+                .map(projectUrl -> analysisScheduler.submit(userId, () -> cloneAndAnalyzeProjectAsync(
+                        requestFolder,
+                        projectUrl,
+                        analysisRequest.cloneOptions(),
+                        job)))
                 .toList();
 
         /*
-            Wait for all the threads to finish to collect the results, remove empty optionals and return the analysis
-            report. Empty optionals would have null values in the list.
+            Wait for all the threads to finish to collect the results, remove empty optionals and save the analysis
+            reports. Empty optionals would have null values in the list.
          */
-        CompletableFuture<List<AnalysisReport>> allFutures = CompletableFuture.allOf(futures.toArray(
-                        new CompletableFuture[0]))
+        CompletableFuture.allOf(futures.toArray(new CompletableFuture[0]))
                 .thenApply(v -> futures.stream()
                         .map(CompletableFuture::join)
                         .filter(Optional::isPresent)
                         .map(Optional::get)
-                        .toList());
+                        .toList())
+                .thenApplyAsync(reports -> {
+                    /*
+                        The user submitted repositories that either were all private, only unsupported languages were
+                        detected or a combination of both.
+                     */
+                    if (reports.isEmpty()) {
+                        throw new IllegalArgumentException("We could not run the analysis. Please ensure that at " +
+                                "least one repository is public and uses a supported language");
+                    }
+
+                    return saveAnalysisProcess(userId, reports, analysisRequest);
+                }, analysisPipeline.getExecutor(PipelineStage.PERSIST))
+                .whenComplete((analysisId, throwable) -> {
+                    workspaceService.deleteRequestFolder(requestFolder);
+
+                    if (throwable == null) {
+                        job.complete(analysisId);
+                    } else {
+                        job.fail(toFailureMessage(throwable));
+                    }
+                });
+
+        return job;
+    }
+
+    /*
+        This is the async part, where we first download a project url, then we analyze it. We do that for every project
+        url. The clone stage either finds a cached report, or hands the checkout to the rest of the stages. Every stage
+        a repository goes through is recorded in the job, so the client can follow the progress of each repository.
+     */
+    private CompletableFuture<Optional<AnalysisReport>> cloneAndAnalyzeProjectAsync(File requestFolder,
+                                                                                    String projectUrl,
+                                                                                    CloneOptions cloneOptions,
+                                                                                    AnalysisJob job) {
+        return startAnalysisAsync(requestFolder, projectUrl, cloneOptions, job)
+                .whenComplete((report, throwable) -> {
+                    if (throwable != null) {
+                        analysisMetrics.recordFailure(unwrap(throwable));
+                        job.record(projectUrl, AnalysisProgressStage.FAILED);
+                    }
+                })
+                .exceptionally(throwable -> skipTimedOutProject(projectUrl, throwable));
+    }
+
+    private CompletableFuture<Optional<AnalysisReport>> startAnalysisAsync(File requestFolder,
+                                                                           String projectUrl,
+                                                                           CloneOptions cloneOptions,
+                                                                           AnalysisJob job) {
+        return analysisPipeline.supplyAsync(PipelineStage.CLONE, job, () -> {
+            job.advanceTo(AnalysisJobStatus.CLONING);
 
-        return allFutures.thenCompose(reports -> {
             /*
-                The user submitted repositories that either were all private, only unsupported languages were
-                detected or a combination of both.
+                If we can't resolve the remote HEAD the url is invalid or the repository is private and cloning would
+                fail as well.
              */
-            if (reports.isEmpty()) {
-                throw new IllegalArgumentException("We could not run the analysis. Please ensure that at least one " +
-                        "repository is public and uses a supported language");
+            Optional<RemoteHead> remoteHead = gitHubService.findRemoteHead(projectUrl);
+            if (remoteHead.isEmpty()) {
+                analysisMetrics.recordRejection(RejectionReason.PRIVATE);
+                job.record(projectUrl, AnalysisProgressStage.SKIPPED);
+                return CompletableFuture.completedFuture(Optional.<AnalysisReport>empty());
+            }
+
+            String normalizedUrl = gitHubService.normalizeProjectUrl(projectUrl);
+            Optional<AnalysisReport> cachedReport = cacheService.findReport(
+                    normalizedUrl,
+                    remoteHead.get().commitSha());
+            if (cachedReport.isPresent()) {
+                cachedReport.get().setProjectUrl(Link.of(projectUrl));
+                analysisMetrics.recordCacheHit("report");
+                job.record(projectUrl, AnalysisProgressStage.CACHED);
+
+                return CompletableFuture.completedFuture(cachedReport);
             }
 
-            Integer userId = Integer.parseInt(jwtService.getSubject());
-            Integer analysisId = saveAnalysisProcess(userId, reports, analysisRequest);
+            /*
+                If the same commit is already being analyzed, for another request or because the url is listed twice
+                in this one, we wait for that analysis instead of cloning and scanning the repository again. Every
+                requester gets its own copy of the report, since the report is updated when it's saved.
+             */
+            String commitSha = remoteHead.get().commitSha();
+            String key = normalizedUrl + "@" + commitSha;
+            CompletableFuture<Optional<AnalysisReport>> analysis = new CompletableFuture<>();
+            CompletableFuture<Optional<AnalysisReport>> inFlightAnalysis = inFlightAnalyses.putIfAbsent(key, analysis);
+            if (inFlightAnalysis != null) {
+                analysisMetrics.recordCacheHit("in_flight");
+                job.record(projectUrl, AnalysisProgressStage.SHARED);
+                return inFlightAnalysis
+                        .thenApply(report -> record(
+                                job,
+                                projectUrl,
+                                AnalysisProgressStage.SCORED,
+                                copyReport(report, projectUrl)))
+                        .exceptionallyCompose(throwable -> restartCancelledAnalysis(
+                                requestFolder,
+                                projectUrl,
+                                cloneOptions,
+                                job,
+                                throwable));
+            }
+
+            try {
+                analyzeProjectAsync(requestFolder, projectUrl, normalizedUrl, remoteHead.get(), cloneOptions, job)
+                        .whenComplete((report, throwable) -> {
+                            inFlightAnalyses.remove(key, analysis);
+
+                            if (throwable == null) {
+                                analysis.complete(report);
+                            } else {
+                                analysis.completeExceptionally(throwable);
+                            }
+                        });
+            } catch (RuntimeException re) {
+                inFlightAnalyses.remove(key, analysis);
+                analysis.completeExceptionally(re);
+            }
+
+            return analysis.thenApply(report -> copyReport(report, projectUrl));
+        }).thenCompose(Function.identity());
+    }
+
+    /*
+        The analysis we shared is cancelled along with the job that started it, but the jobs that share it are not.
+        Unless this job was cancelled as well, it analyzes the repository itself, or shares the analysis another job
+        started meanwhile, since the cancelled one is no longer in flight.
+     */
+    private CompletableFuture<Optional<AnalysisReport>> restartCancelledAnalysis(File requestFolder,
+                                                                                 String projectUrl,
+                                                                                 CloneOptions cloneOptions,
+                                                                                 AnalysisJob job,
+                                                                                 Throwable throwable) {
+        if (!(unwrap(throwable) instanceof CancellationException) || job.isCancelled()) {
+            return CompletableFuture.failedFuture(throwable);
+        }
+
+        LOG.info("The shared analysis of {} was cancelled, analyzing it again", projectUrl);
+
+        return startAnalysisAsync(requestFolder, projectUrl, cloneOptions, job);
+    }
+
+    /*
+        A repository that ran past the deadline of a stage is skipped, like a private one, and the rest of the request
+        goes on. Any other failure fails the entire request.
+     */
+    private Optional<AnalysisReport> skipTimedOutProject(String projectUrl, Throwable throwable) {
+        Throwable cause = unwrap(throwable);
+        if (cause instanceof StageTimeoutException) {
+            LOG.warn("Skipped {}: {}", projectUrl, cause.getMessage());
+            return Optional.empty();
+        }
+
+        throw throwable instanceof CompletionException completionException
+                ? completionException
+                : new CompletionException(throwable);
+    }
+
+    /*
+        A pooled checkout of the same commit saves us the clone.
+     */
+    private CompletableFuture<Optional<AnalysisReport>> analyzeProjectAsync(File requestFolder,
+                                                                            String projectUrl,
+                                                                            String normalizedUrl,
+                                                                            RemoteHead remoteHead,
+                                                                            CloneOptions cloneOptions,
+                                                                            AnalysisJob job) {
+        String commitSha = remoteHead.commitSha();
+        Optional<Path> checkout = workspaceService.acquireCheckout(normalizedUrl, commitSha);
+        if (checkout.isPresent()) {
+            analysisMetrics.recordCacheHit("checkout");
+        } else {
+            checkout = cloneProject(requestFolder, projectUrl, remoteHead.branch(), cloneOptions);
+        }
+
+        if (checkout.isEmpty()) {
+            analysisMetrics.recordRejection(RejectionReason.PRIVATE);
+            job.record(projectUrl, AnalysisProgressStage.SKIPPED);
+            return CompletableFuture.completedFuture(Optional.empty());
+        }
+        job.record(projectUrl, AnalysisProgressStage.CLONED);
 
-            return CompletableFuture.completedFuture(analysisId);
+        return analyzeCheckoutAsync(checkout.get(), projectUrl, normalizedUrl, commitSha, job);
+    }
+
+    private Optional<AnalysisReport> copyReport(Optional<AnalysisReport> report, String projectUrl) {
+        return report.map(analysisReport -> {
+            AnalysisReport copy = cacheService.copyReport(analysisReport);
+            copy.setProjectUrl(Link.of(projectUrl));
+
+            return copy;
         });
     }
 
-    private CompletableFuture<Optional<AnalysisReport>> cloneAndAnalyzeProjectAsync(File requestFolder,
-                                                                                    String projectUrl) {
-        /*
-            This is the async part, where we first download a project url, then we analyze it. We do that for every
-            project url
-         */
-        return CompletableFuture.supplyAsync(() -> gitHubService.cloneProject(requestFolder, projectUrl)
-                .flatMap(projectPath -> analysisService.analyze(projectPath, projectUrl)), taskExecutor);
+    /*
+        The checkout is released once the last stage is done with it, whether the project was analyzed, skipped or
+        failed.
+        The stages after the fetch only get the report, so the tags of the metrics of the project are kept from its
+        detection, and so is the key of its SonarQube project, which is released once the fetch is over.
+     */
+    private CompletableFuture<Optional<AnalysisReport>> analyzeCheckoutAsync(Path checkout,
+                                                                             String projectUrl,
+                                                                             String normalizedUrl,
+                                                                             String commitSha,
+                                                                             AnalysisJob job) {
+        AtomicReference<Tags> projectTags = new AtomicReference<>(AnalysisMetrics.UNKNOWN_PROJECT);
+        AtomicReference<String> projectKey = new AtomicReference<>();
+        CompletableFuture<Optional<DetectedProject>> detected = analysisPipeline.supplyAsync(
+                PipelineStage.DETECT,
+                job,
+                () -> record(
+                        job,
+                        projectUrl,
+                        AnalysisProgressStage.LANGUAGES_DETECTED,
+                        analysisService.detect(checkout)
+                                .map(project -> {
+                                    projectTags.set(AnalysisMetrics.tagsOf(project));
+                                    projectKey.set(project.projectKey());
+                                    sonarProjectService.acquireProject(project.projectKey());
+                                    return withPreviousAnalysis(project, normalizedUrl, commitSha);
+                                })));
+        CompletableFuture<Optional<DetectedProject>> scanned = analysisPipeline.thenAsync(
+                detected,
+                PipelineStage.SCAN,
+                job,
+                project -> {
+                    job.record(projectUrl, AnalysisProgressStage.SCAN_STARTED);
+                    Optional<DetectedProject> scannedProject = analysisService.scan(project, job);
+                    if (scannedProject.isEmpty()) {
+                        job.record(projectUrl, AnalysisProgressStage.SKIPPED);
+                    }
+
+                    return scannedProject;
+                });
+        CompletableFuture<Optional<AnalysisReport>> fetched = analysisPipeline.thenAsync(
+                scanned,
+                PipelineStage.FETCH,
+                job,
+                project -> record(
+                        job,
+                        projectUrl,
+                        AnalysisProgressStage.SONAR_PROCESSED,
+                        analysisService.fetch(project, job)));
+        fetched.whenComplete((report, throwable) -> {
+            if (projectKey.get() != null) {
+                sonarProjectService.releaseProject(projectKey.get());
+            }
+        });
+        CompletableFuture<Optional<AnalysisReport>> scored = analysisPipeline.thenAsync(
+                fetched,
+                PipelineStage.SCORE,
+                job,
+                report -> record(
+                        job,
+                        projectUrl,
+                        AnalysisProgressStage.SCORED,
+                        Optional.of(analysisService.score(report, projectUrl, projectTags.get()))));
+        CompletableFuture<Optional<AnalysisReport>> persisted = analysisPipeline.thenAsync(
+                scored,
+                PipelineStage.PERSIST,
+                job,
+                report -> Optional.of(analysisMetrics.time(
+                        TimedStage.PERSIST,
+                        projectTags.get(),
+                        () -> cacheReport(checkout, normalizedUrl, report))));
+
+        return persisted.whenComplete((report, throwable) -> workspaceService.releaseCheckout(
+                checkout,
+                normalizedUrl,
+                commitSha,
+                throwable == null && report.isPresent()));
+    }
+
+    /*
+        A repository we analyzed before is analyzed incrementally, by scanning only the files that changed since the
+        commit of its latest cached report. If that commit can't be found, nothing changed, or too many files changed
+        for an incremental analysis to pay off, the project is analyzed in full.
+     */
+    private DetectedProject withPreviousAnalysis(DetectedProject project, String normalizedUrl, String commitSha) {
+        if (!incrementalAnalysis) {
+            return project;
+        }
+
+        Optional<PreviousAnalysis> previousAnalysis = cacheService.findLatestReport(normalizedUrl)
+                .filter(previous -> !previous.commitSha().equals(commitSha));
+        if (previousAnalysis.isEmpty()) {
+            return project;
+        }
+
+        Optional<Set<String>> changedFiles = gitHubService.findChangedFiles(
+                        project.projectPath(),
+                        previousAnalysis.get().commitSha())
+                .filter(files -> !files.isEmpty() && files.size() <= maxChangedFiles)
+                .filter(ScanInclusions::areSafe);
+
+        return changedFiles
+                .map(files -> project.withPreviousAnalysis(previousAnalysis.get(), files))
+                .orElse(project);
+    }
+
+    /*
+        A stage that produced nothing means the repository was skipped.
+     */
+    private <T> Optional<T> record(AnalysisJob job,
+                                   String projectUrl,
+                                   AnalysisProgressStage stage,
+                                   Optional<T> result) {
+        job.record(projectUrl, result.isPresent() ? stage : AnalysisProgressStage.SKIPPED);
+
+        return result;
+    }
+
+    /*
+        The languages and the size of the project are not known before it's cloned.
+     */
+    private Optional<Path> cloneProject(File requestFolder,
+                                        String projectUrl,
+                                        String branch,
+                                        CloneOptions cloneOptions) {
+        Optional<Path> projectPath = concurrencyLimits.withClonePermit(() -> analysisMetrics.time(
+                TimedStage.CLONE,
+                AnalysisMetrics.UNKNOWN_PROJECT,
+                () -> gitHubService.cloneProject(requestFolder, projectUrl, branch, cloneOptions)));
+        projectPath.ifPresent(workspaceService::registerCheckout);
+
+        return projectPath;
+    }
+
+    /*
+        Only successful analyses are cached. A repository that was skipped because of an unsupported language will be
+        cloned again the next time, which is fine since it never reaches the expensive scanning part.
+     */
+    private AnalysisReport cacheReport(Path projectPath, String normalizedUrl, AnalysisReport report) {
+        gitHubService.findHeadCommit(projectPath)
+                .ifPresent(commitSha -> cacheService.saveReport(normalizedUrl, commitSha, report));
+
+        return report;
     }
 
     /*
@@ -119,4 +482,29 @@ public class ProcessProjectService {
                 analysisRequest.constraints(),
                 analysisRequest.preferences());
     }
-}
\ No newline at end of file
+
+    /*
+        IllegalArgumentException, ServerErrorException and the CancellationException of a cancelled job already carry a
+        message that is meant for the user. Anything else is unexpected, so we log it and respond with the generic
+        server error message.
+     */
+    private String toFailureMessage(Throwable throwable) {
+        Throwable cause = unwrap(throwable);
+
+        if (cause instanceof IllegalArgumentException
+                || cause instanceof ServerErrorException
+                || cause instanceof CancellationException) {
+            return cause.getMessage();
+        }
+
+        LOG.error("Analysis failed unexpectedly", cause);
+
+        return SERVER_ERROR_MSG;
+    }
+
+    private Throwable unwrap(Throwable throwable) {
+        return throwable instanceof CompletionException && throwable.getCause() != null
+                ? throwable.getCause()
+                : throwable;
+    }
+}
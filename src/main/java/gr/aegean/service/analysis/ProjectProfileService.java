@@ -0,0 +1,229 @@
+package gr.aegean.service.analysis;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.DirectoryIteratorException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.RecursiveTask;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import gr.aegean.exception.ServerErrorException;
+import gr.aegean.model.analysis.ProjectProfile;
+
+import jakarta.annotation.PreDestroy;
+
+
+/*
+    Walks a checkout once and collects everything the later stages need to know about it. Every directory is scanned
+    as a separate fork join task, so sibling directories are scanned in parallel. Version control, dependency and build
+    output directories are skipped without being walked, and links are not followed.
+    The scans run on a pool of their own, sized by analysis.profile.parallelism, so a large checkout doesn't occupy
+    the common pool that parallel streams and CompletableFuture default to. A file or a subdirectory that can't be read
+    is logged and left out of the profile, only a checkout that can't be read at all fails it.
+ */
+@Service
+public class ProjectProfileService {
+    private final LanguageDetector languageDetector;
+    private final ForkJoinPool scanPool;
+    private static final Logger LOG = LoggerFactory.getLogger(ProjectProfileService.class);
+    private static final Set<String> SKIPPED_DIRECTORIES = Set.of(
+            ".git",
+            ".scannerwork",
+            ".idea",
+            ".vscode",
+            ".venv",
+            "venv",
+            "node_modules",
+            "bower_components",
+            "vendor",
+            "third_party",
+            "__pycache__",
+            "target",
+            "build",
+            "dist");
+    private static final Set<String> BUILD_MARKERS = Set.of(
+            "pom.xml",
+            "build.gradle",
+            "build.gradle.kts",
+            "settings.gradle",
+            "package.json",
+            "go.mod",
+            "composer.json",
+            "requirements.txt",
+            "pyproject.toml",
+            "setup.py",
+            "Cargo.toml");
+    private static final String SERVER_ERROR_MSG = "The server encountered an internal error and was unable to " +
+            "complete your request. Please try again later";
+
+    public ProjectProfileService(LanguageDetector languageDetector,
+                                 @Value("${analysis.profile.parallelism}") int parallelism) {
+        this.languageDetector = languageDetector;
+        this.scanPool = new ForkJoinPool(parallelism, pool -> {
+            ForkJoinWorkerThread thread = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(pool);
+            thread.setName("Profile-" + thread.getPoolIndex());
+
+            return thread;
+        }, null, false);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        scanPool.shutdownNow();
+    }
+
+    public ProjectProfile profileProject(Path projectPath) {
+        Profile profile;
+
+        try {
+            profile = scanPool.invoke(new DirectoryScan(projectPath, projectPath));
+        } catch (UncheckedIOException uioe) {
+            LOG.error("Failed to read project {}", projectPath, uioe);
+            throw new ServerErrorException(SERVER_ERROR_MSG);
+        }
+
+        return new ProjectProfile(
+                projectPath,
+                Set.copyOf(profile.buildMarkers),
+                Set.copyOf(profile.modules),
+                profile.fileCount,
+                profile.totalBytes,
+                Map.copyOf(profile.bytesByExtension),
+                Map.copyOf(profile.bytesByLanguage));
+    }
+
+    /*
+        The partial profile of a directory and everything under it.
+     */
+    private static final class Profile {
+        private final Set<String> buildMarkers = new HashSet<>();
+        private final Set<String> modules = new HashSet<>();
+        private final Map<String, Long> bytesByExtension = new HashMap<>();
+        private final Map<String, Long> bytesByLanguage = new HashMap<>();
+        private long fileCount;
+        private long totalBytes;
+
+        private void merge(Profile other) {
+            buildMarkers.addAll(other.buildMarkers);
+            modules.addAll(other.modules);
+            other.bytesByExtension.forEach((extension, bytes) -> bytesByExtension.merge(extension, bytes, Long::sum));
+            other.bytesByLanguage.forEach((language, bytes) -> bytesByLanguage.merge(language, bytes, Long::sum));
+            fileCount += other.fileCount;
+            totalBytes += other.totalBytes;
+        }
+    }
+
+    private final class DirectoryScan extends RecursiveTask<Profile> {
+        private final Path root;
+        private final Path directory;
+
+        private DirectoryScan(Path root, Path directory) {
+            this.root = root;
+            this.directory = directory;
+        }
+
+        @Override
+        protected Profile compute() {
+            Profile profile = new Profile();
+            List<DirectoryScan> subdirectories = new ArrayList<>();
+
+            try (DirectoryStream<Path> entries = Files.newDirectoryStream(directory)) {
+                for (Path entry : entries) {
+                    try {
+                        addEntry(profile, subdirectories, entry);
+                    } catch (IOException ioe) {
+                        LOG.warn("Failed to read {}, it's left out of the profile", entry, ioe);
+                    }
+                }
+            } catch (IOException ioe) {
+                skipDirectory(ioe);
+            } catch (DirectoryIteratorException die) {
+                skipDirectory(die.getCause());
+            }
+
+            for (DirectoryScan subdirectory : subdirectories) {
+                profile.merge(subdirectory.join());
+            }
+
+            return profile;
+        }
+
+        /*
+            The entries that were read before the failure are kept.
+         */
+        private void skipDirectory(IOException ioe) {
+            if (directory.equals(root)) {
+                throw new UncheckedIOException(ioe);
+            }
+
+            LOG.warn("Failed to read directory {}, it's left out of the profile", directory, ioe);
+        }
+
+        private void addEntry(Profile profile, List<DirectoryScan> subdirectories, Path entry) throws IOException {
+            BasicFileAttributes attributes = Files.readAttributes(
+                    entry,
+                    BasicFileAttributes.class,
+                    LinkOption.NOFOLLOW_LINKS);
+            String fileName = entry.getFileName().toString();
+
+            if (attributes.isDirectory()) {
+                if (!SKIPPED_DIRECTORIES.contains(fileName)) {
+                    DirectoryScan subdirectory = new DirectoryScan(root, entry);
+                    subdirectory.fork();
+                    subdirectories.add(subdirectory);
+                }
+            } else if (attributes.isRegularFile()) {
+                addFile(profile, entry, fileName, attributes.size());
+            }
+        }
+
+        /*
+            A file whose content can't be read for its language is still counted.
+         */
+        private void addFile(Profile profile, Path file, String fileName, long size) {
+            profile.fileCount++;
+            profile.totalBytes += size;
+
+            int extensionIndex = fileName.lastIndexOf('.');
+            String extension = extensionIndex > 0 ? fileName.substring(extensionIndex + 1).toLowerCase() : "";
+            profile.bytesByExtension.merge(extension, size, Long::sum);
+
+            if (BUILD_MARKERS.contains(fileName)) {
+                profile.buildMarkers.add(fileName);
+
+                /*
+                    A build file in a top level directory, e.g. backend/pom.xml, makes that directory a module.
+                 */
+                Path relativeDirectory = root.relativize(directory);
+                if (relativeDirectory.getNameCount() == 1 && !relativeDirectory.toString().isEmpty()) {
+                    profile.modules.add(relativeDirectory.toString());
+                }
+            }
+
+            if (size > 0) {
+                try {
+                    languageDetector.classify(file, fileName, size)
+                            .ifPresent(language -> profile.bytesByLanguage.merge(language, size, Long::sum));
+                } catch (IOException ioe) {
+                    LOG.warn("Failed to detect the language of {}", file, ioe);
+                }
+            }
+        }
+    }
+}
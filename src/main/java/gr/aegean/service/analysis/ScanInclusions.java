@@ -0,0 +1,33 @@
+package gr.aegean.service.analysis;
+
+import java.util.Set;
+import java.util.regex.Pattern;
+
+
+/*
+    The changed files of an incremental analysis are passed to the scanner as -Dsonar.inclusions, on the command line
+    of sonar-scanner.bat, which cmd.exe parses again, or inside the sh -c command of the Maven container. The paths
+    come from the repository, so only letters, digits, dots, underscores, dashes and slashes are allowed, nothing a
+    shell would interpret. A project with any other changed file is analyzed in full instead.
+ */
+final class ScanInclusions {
+    private static final Pattern SAFE_PATH = Pattern.compile("[A-Za-z0-9._/-]+");
+
+    private ScanInclusions() {
+    }
+
+    static boolean areSafe(Set<String> paths) {
+        return paths.stream().allMatch(path -> SAFE_PATH.matcher(path).matches());
+    }
+
+    /*
+        Checked again where the command is built, so an unsafe path can never reach a shell.
+     */
+    static String toArgument(Set<String> paths) {
+        if (!areSafe(paths)) {
+            throw new IllegalArgumentException("Inclusions must only contain safe paths");
+        }
+
+        return String.join(",", paths);
+    }
+}
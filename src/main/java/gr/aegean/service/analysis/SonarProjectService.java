@@ -0,0 +1,175 @@
+package gr.aegean.service.analysis;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.time.OffsetDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Pattern;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Service;
+import org.springframework.web.client.RestClientException;
+
+import gr.aegean.exception.ServerErrorException;
+import gr.aegean.model.analysis.sonarqube.ProjectsReport;
+
+import jakarta.annotation.PreDestroy;
+
+
+/*
+    Every analysis creates a SonarQube project under the UUID of its checkout, and the project is only needed until its
+    report is fetched. A project is in use from the detection of the checkout until the fetch is over. Once it's
+    released it's deleted in the background, unless sonar.projects.retention keeps the projects around for a while,
+    e.g. to look into an analysis on the SonarQube UI.
+    Projects that are never released, because the application stopped in the middle of an analysis or the deletion
+    failed, are purged every sonar.projects.reconcileInterval. Every UUID project that is not in use and wasn't analyzed
+    within the retention is deleted. Projects whose key is not a UUID were not created by us and are never touched.
+    The projects in use are only known to this instance, so the reconciler assumes a single instance runs analyses
+    against the SonarQube server.
+ */
+@Service
+public class SonarProjectService {
+    private final SonarService sonarService;
+    private final Executor sonarExecutor;
+    private final Duration retention;
+    /*
+        A pooled checkout is analyzed again under the same key, so a project is counted once for every analysis that
+        uses it. A project that is being deleted is marked as DELETING, so an analysis that acquires it waits for the
+        deletion to finish instead of scanning into a project that is about to be deleted. The deletion itself runs
+        outside the map, a blocking request inside compute() would also block the other keys of its bin.
+     */
+    private final Map<String, Integer> activeProjects = new ConcurrentHashMap<>();
+    private final Map<String, CompletableFuture<Void>> deletions = new ConcurrentHashMap<>();
+    private final ScheduledExecutorService reconciler = Executors.newSingleThreadScheduledExecutor(
+            new CustomizableThreadFactory("SonarReconciler-"));
+    private static final Pattern PROJECT_KEY_PATTERN = Pattern.compile(
+            "[0-9a-f]{8}-[0-9a-f]{4}-[0-9a-f]{4}-[0-9a-f]{4}-[0-9a-f]{12}");
+    /*
+        SonarQube reports dates with an offset without a colon, e.g. 2023-07-14T10:15:30+0300.
+     */
+    private static final DateTimeFormatter ANALYSIS_DATE_FORMAT = DateTimeFormatter.ofPattern(
+            "yyyy-MM-dd'T'HH:mm:ssZ");
+    private static final int DELETING = -1;
+    private static final Logger LOG = LoggerFactory.getLogger(SonarProjectService.class);
+
+    public SonarProjectService(SonarService sonarService,
+                               @Qualifier("sonarExecutor") Executor sonarExecutor,
+                               @Value("${sonar.projects.retention}") Duration retention,
+                               @Value("${sonar.projects.reconcileInterval}") Duration reconcileInterval) {
+        this.sonarService = sonarService;
+        this.sonarExecutor = sonarExecutor;
+        this.retention = retention;
+
+        reconciler.scheduleWithFixedDelay(
+                this::purgeOrphanedProjects,
+                reconcileInterval.toMillis(),
+                reconcileInterval.toMillis(),
+                TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        reconciler.shutdownNow();
+    }
+
+    /*
+        A deletion that finished between reading the mark and looking up the deletion leaves nothing to wait for, so
+        the project is acquired on the next attempt.
+     */
+    public void acquireProject(String projectKey) {
+        while (activeProjects.merge(projectKey, 1, (count, one) -> count == DELETING ? DELETING : count + one)
+                == DELETING) {
+            CompletableFuture<Void> deletion = deletions.get(projectKey);
+            if (deletion != null) {
+                deletion.join();
+            }
+        }
+    }
+
+    /*
+        With a retention, the project is left for the reconciler.
+     */
+    public void releaseProject(String projectKey) {
+        activeProjects.computeIfPresent(projectKey, (key, count) -> count == 1 ? null : count - 1);
+
+        if (retention.isZero()) {
+            CompletableFuture.runAsync(() -> deleteIfInactive(projectKey), sonarExecutor);
+        }
+    }
+
+    /*
+        A project that was never analyzed, e.g. because the scan failed before the report was uploaded, is purged as
+        soon as it's not in use.
+     */
+    public void purgeOrphanedProjects() {
+        List<ProjectsReport.Project> projects;
+        try {
+            projects = sonarService.findProjects();
+        } catch (RestClientException | ServerErrorException e) {
+            LOG.warn("Failed to list the projects of the SonarQube server", e);
+            return;
+        }
+
+        Instant cutoff = Instant.now().minus(retention);
+        projects.stream()
+                .filter(project -> PROJECT_KEY_PATTERN.matcher(project.getKey()).matches())
+                .filter(project -> !activeProjects.containsKey(project.getKey()))
+                .filter(project -> isAnalyzedBefore(project, cutoff))
+                .forEach(project -> deleteIfInactive(project.getKey()));
+    }
+
+    private boolean isAnalyzedBefore(ProjectsReport.Project project, Instant cutoff) {
+        if (project.getLastAnalysisDate() == null) {
+            return true;
+        }
+
+        try {
+            return OffsetDateTime.parse(project.getLastAnalysisDate(), ANALYSIS_DATE_FORMAT)
+                    .toInstant()
+                    .isBefore(cutoff);
+        } catch (DateTimeParseException dtpe) {
+            LOG.warn("Unexpected analysis date {} of project {}", project.getLastAnalysisDate(), project.getKey());
+            return false;
+        }
+    }
+
+    /*
+        The deletion is registered before the project is marked, so an analysis that finds the mark always finds the
+        deletion to wait for. A project that is already being deleted is left to that deletion. A failed deletion is
+        retried by the next reconciliation.
+     */
+    private void deleteIfInactive(String projectKey) {
+        CompletableFuture<Void> deletion = new CompletableFuture<>();
+        if (deletions.putIfAbsent(projectKey, deletion) != null) {
+            return;
+        }
+        if (activeProjects.putIfAbsent(projectKey, DELETING) != null) {
+            deletions.remove(projectKey, deletion);
+            deletion.complete(null);
+            return;
+        }
+
+        try {
+            sonarService.deleteProject(projectKey);
+        } catch (RestClientException rce) {
+            LOG.warn("Failed to delete project {}", projectKey, rce);
+        } finally {
+            activeProjects.remove(projectKey, DELETING);
+            deletions.remove(projectKey, deletion);
+            deletion.complete(null);
+        }
+    }
+}
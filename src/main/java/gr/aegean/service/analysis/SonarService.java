@@ -1,15 +1,13 @@
 package gr.aegean.service.analysis;
 
+import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.beans.factory.annotation.Value;
-import org.springframework.boot.configurationprocessor.json.JSONArray;
-import org.springframework.boot.configurationprocessor.json.JSONException;
-import org.springframework.boot.configurationprocessor.json.JSONObject;
 import org.springframework.http.HttpEntity;
 import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpMethod;
-import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.stereotype.Service;
+import org.springframework.web.client.HttpClientErrorException;
 import org.springframework.web.client.RestTemplate;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -18,52 +16,160 @@ import java.io.BufferedReader;
 import java.io.File;
 import java.io.IOException;
 import java.io.InputStreamReader;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.EnumMap;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.Optional;
+import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Function;
 
 import gr.aegean.exception.ServerErrorException;
 import gr.aegean.entity.AnalysisReport;
+import gr.aegean.model.analysis.TimedStage;
 import gr.aegean.model.analysis.quality.QualityMetric;
+import gr.aegean.model.analysis.sonarqube.ComponentTreeReport;
+import gr.aegean.model.analysis.sonarqube.ComputeEngineReport;
 import gr.aegean.model.analysis.sonarqube.HotspotsReport;
 import gr.aegean.model.analysis.sonarqube.IssuesReport;
+import gr.aegean.model.analysis.sonarqube.Paging;
+import gr.aegean.model.analysis.sonarqube.ProjectsReport;
 import gr.aegean.model.analysis.sonarqube.QualityMetricReport;
+import gr.aegean.model.analysis.sonarqube.Severity;
 
-import lombok.RequiredArgsConstructor;
-
-import static org.awaitility.Awaitility.await;
+import io.micrometer.core.instrument.Tags;
 
 
 @Service
-@RequiredArgsConstructor
 public class SonarService {
+    private final SonarWebhookService sonarWebhookService;
+    private final Executor sonarExecutor;
+    private final RestTemplate restTemplate;
+    private final AnalysisMetrics analysisMetrics;
     @Value("${sonar.token}")
     private String authToken;
     @Value("${sonar.baseUrl}")
     private String baseUrl;
+    @Value("${sonar.pollInitialDelay}")
+    private Duration pollInitialDelay;
+    @Value("${sonar.pollMaxDelay}")
+    private Duration pollMaxDelay;
+    @Value("${sonar.taskTimeout}")
+    private Duration taskTimeout;
+    @Value("${analysis.incremental.enabled}")
+    private boolean incrementalAnalysis;
     private static final Logger LOG = LoggerFactory.getLogger(SonarService.class);
+    /*
+        500 is the max page size SonarQube allows. SonarQube also refuses to return anything past the first 10000
+        results of a query, no matter the page.
+     */
+    private static final int PAGE_SIZE = 500;
+    private static final int MAX_RESULT_WINDOW = 10_000;
+    private static final List<String> ISSUE_TYPES = List.of("BUG", "VULNERABILITY", "CODE_SMELL");
+    private static final List<String> ISSUE_SEVERITIES = Arrays.stream(Severity.values())
+            .map(Severity::name)
+            .toList();
+    private static final List<String> HOTSPOT_STATUSES = List.of("TO_REVIEW", "REVIEWED");
+    private static final LocalDate MIN_CREATION_DATE = LocalDate.of(1970, 1, 1);
+    /*
+        Metric values based on SonarQube's documentation
+     */
+    private static final List<String> METRICS = List.of(
+            "comment_lines_density",
+            "functions",
+            "duplicated_lines_density",
+            "sqale_debt_ratio",
+            "reliability_remediation_effort",
+            "cognitive_complexity",
+            "complexity",
+            "security_remediation_effort",
+            "ncloc");
+    /*
+        The densities and the debt ratio can't be added up across files, so for every file we fetch what they are
+        computed from instead.
+     */
+    private static final List<String> FILE_METRICS = List.of(
+            "comment_lines",
+            "functions",
+            "duplicated_lines",
+            "lines",
+            "sqale_index",
+            "development_cost",
+            "reliability_remediation_effort",
+            "cognitive_complexity",
+            "complexity",
+            "security_remediation_effort",
+            "ncloc");
     private static final String SERVER_ERROR_MSG = "The server encountered an internal error and was unable to " +
             "complete your request. Please try again later";
 
-    public void analyzeProject(String projectKey, String projectDirectory) {
-        ProcessBuilder processBuilder = new ProcessBuilder();
-        processBuilder.command(
+    public SonarService(SonarWebhookService sonarWebhookService,
+                        @Qualifier("sonarExecutor") Executor sonarExecutor,
+                        @Qualifier("sonarRestTemplate") RestTemplate sonarRestTemplate,
+                        AnalysisMetrics analysisMetrics) {
+        this.sonarWebhookService = sonarWebhookService;
+        this.sonarExecutor = sonarExecutor;
+        this.restTemplate = sonarRestTemplate;
+        this.analysisMetrics = analysisMetrics;
+    }
+
+    /**
+     * @return The id of the compute engine task the scanner submitted, if the scanner reported it.
+     */
+    public Optional<String> analyzeProject(String projectKey, String projectDirectory, Set<String> inclusions) {
+        List<String> command = new ArrayList<>(List.of(
                 "sonar-scanner.bat",
                 "-Dsonar.projectKey=" + projectKey,
                 "-Dsonar.sources=.",
                 "-Dsonar.host.url=http://localhost:9000",
                 "-Dsonar.token=" + authToken
-        );
+        ));
+
+        /*
+            An incremental analysis only scans the files that changed since the previous analysis.
+         */
+        if (inclusions != null) {
+            command.add("-Dsonar.inclusions=" + ScanInclusions.toArgument(inclusions));
+        }
+
+        ProcessBuilder processBuilder = new ProcessBuilder();
+        processBuilder.command(command);
 
         /*
             Setting the directory of the command execution to be the projects directory, so we can use
             sources=.
          */
+        Runnable destroyProcess = null;
         try {
             processBuilder.directory(new File(projectDirectory));
             Process process = processBuilder.start();
 
+            /*
+                The scanner starts a JVM of its own, so its child processes are killed along with it when the stage is
+                cancelled. Killing it closes its output, which ends the loop below.
+             */
+            destroyProcess = () -> {
+                process.descendants().forEach(ProcessHandle::destroyForcibly);
+                process.destroyForcibly();
+            };
+            CancellationScope.current().onCancel(destroyProcess);
+
             /*
                 Each process builder has an associated output buffer. We have to keep reading from those buffers, as
                 the process writes enough data to them, the buffers can fill up, and the process will block, waiting for
@@ -83,151 +189,481 @@ public class SonarService {
         } catch (InterruptedException ie) {
             Thread.currentThread().interrupt();
             throw new ServerErrorException(SERVER_ERROR_MSG);
+        } finally {
+            if (destroyProcess != null) {
+                CancellationScope.current().removeHook(destroyProcess);
+            }
         }
+
+        return findComputeEngineTaskId(projectDirectory);
     }
 
-    public AnalysisReport fetchAnalysisReport(String projectKey) {
-        RestTemplate restTemplate = new RestTemplate();
+    /*
+        After the scanner uploads the report, SonarQube processes it in the background. We poll the compute engine task
+        until it is finished, starting with a short delay that grows up to the max delay, so small projects are picked up
+        right after SonarQube is done and large ones don't cause a request flood. If SonarQube notifies our webhook
+        first, we stop waiting immediately.
+        When we don't know the task id, for example when the output of a Maven scan didn't include it, we look up the
+        task through the project key.
+
+        @return True if the task finished successfully, false if it failed or was canceled.
+     */
+    public boolean waitForAnalysis(String projectKey, String ceTaskId) {
         HttpHeaders headers = new HttpHeaders();
         headers.set("Authorization", "Bearer " + authToken);
         HttpEntity<String> entity = new HttpEntity<>("parameters", headers);
 
-        /*
-            Wait for the key to be created on the server.
-         */
-        while (!projectExists(restTemplate, entity, projectKey)) {
-            await().pollDelay(Duration.ofSeconds(8)).until(() -> true);
+        CompletableFuture<String> webhookStatus = sonarWebhookService.getTask(projectKey);
+        Instant deadline = Instant.now().plus(taskTimeout);
+        Duration delay = pollInitialDelay;
+
+        try {
+            while (true) {
+                String status = ceTaskId != null
+                        ? fetchTaskStatus(restTemplate, entity, ceTaskId)
+                        : fetchProjectTaskStatus(restTemplate, entity, projectKey);
+
+                if (status != null && isFinished(status)) {
+                    return status.equals("SUCCESS");
+                }
+
+                if (Instant.now().plus(delay).isAfter(deadline)) {
+                    LOG.warn("Compute engine task for project {} did not finish within {}", projectKey, taskTimeout);
+                    return false;
+                }
+
+                /*
+                    Waiting on the webhook notification is our sleep between two polls. A notification with a status
+                    that is not final is read once, after that we sleep between the polls instead.
+                 */
+                if (webhookStatus.isDone()) {
+                    Thread.sleep(delay.toMillis());
+                } else {
+                    try {
+                        status = webhookStatus.get(delay.toMillis(), TimeUnit.MILLISECONDS);
+                        if (isFinished(status)) {
+                            return status.equals("SUCCESS");
+                        }
+                    } catch (TimeoutException te) {
+                        // No notification yet, poll again
+                    }
+                }
+
+                Duration nextDelay = delay.multipliedBy(2);
+                delay = nextDelay.compareTo(pollMaxDelay) > 0 ? pollMaxDelay : nextDelay;
+            }
+        } catch (InterruptedException ie) {
+            Thread.currentThread().interrupt();
+            throw new ServerErrorException(SERVER_ERROR_MSG);
+        } catch (ExecutionException ee) {
+            throw new ServerErrorException(SERVER_ERROR_MSG);
+        } finally {
+            sonarWebhookService.removeTask(projectKey);
         }
+    }
+
+    /*
+        Issues, hotspots and measures are independent of each other, so they are fetched concurrently. Every request to
+        the server runs on the sonar executor, which bounds the number of concurrent requests to the server.
+        With incremental analysis enabled, the measures of every file are fetched as well, so the next commit of the
+        project can be analyzed incrementally.
+        Each request is timed on its own, tagged like the rest of the analysis of the project.
+     */
+    public AnalysisReport fetchAnalysisReport(String projectKey, Tags projectTags) {
+        HttpHeaders headers = new HttpHeaders();
+        headers.set("Authorization", "Bearer " + authToken);
+        HttpEntity<String> entity = new HttpEntity<>("parameters", headers);
+
+        CompletableFuture<IssuesReport> issuesReport = analysisMetrics.timeAsync(
+                TimedStage.SONAR_FETCH_ISSUES,
+                projectTags,
+                () -> fetchIssues(restTemplate, entity, projectKey));
+        CompletableFuture<HotspotsReport> hotspotsReport = analysisMetrics.timeAsync(
+                TimedStage.SONAR_FETCH_HOTSPOTS,
+                projectTags,
+                () -> fetchHotspots(restTemplate, entity, projectKey));
+        CompletableFuture<Map<QualityMetric, Double>> qualityMetricReport = analysisMetrics.timeAsync(
+                TimedStage.SONAR_FETCH_MEASURES,
+                projectTags,
+                () -> CompletableFuture.supplyAsync(
+                        () -> getQualityMetrics(restTemplate, entity, projectKey), sonarExecutor));
+        CompletableFuture<Map<String, Map<String, Double>>> fileMeasures = incrementalAnalysis
+                ? analysisMetrics.timeAsync(
+                        TimedStage.SONAR_FETCH_FILE_MEASURES,
+                        projectTags,
+                        () -> fetchFileMeasures(restTemplate, entity, projectKey))
+                : CompletableFuture.completedFuture(null);
 
         /*
-            Wait for the project to be uploaded.
+            Joining is not interrupted when the stage is cancelled, the futures are cancelled instead.
          */
-        await().pollDelay(Duration.ofSeconds(8)).until(() -> true);
+        Runnable cancelFetch = () -> List.of(issuesReport, hotspotsReport, qualityMetricReport, fileMeasures)
+                .forEach(future -> future.cancel(true));
+        CancellationScope.current().onCancel(cancelFetch);
 
-        IssuesReport issuesReport = fetchIssues(restTemplate, entity, projectKey);
-        HotspotsReport hotspotsReport = fetchHotspots(restTemplate, entity, projectKey);
-        Map<QualityMetric, Double> qualityMetricReport = getQualityMetrics(
-                restTemplate,
+        try {
+            AnalysisReport report = new AnalysisReport(
+                    issuesReport.join(),
+                    hotspotsReport.join(),
+                    qualityMetricReport.join());
+            report.setFileMeasures(fileMeasures.join());
+
+            return report;
+        } catch (CompletionException ce) {
+            if (ce.getCause() instanceof RuntimeException re) {
+                throw re;
+            }
+            throw new ServerErrorException(SERVER_ERROR_MSG);
+        } finally {
+            CancellationScope.current().removeHook(cancelFetch);
+        }
+    }
+
+    /*
+        Deleting a project deletes its analyses, issues and measures along with it. A project that doesn't exist
+        anymore, e.g. because it was already purged, is not an error.
+     */
+    public void deleteProject(String projectKey) {
+        HttpHeaders headers = new HttpHeaders();
+        headers.set("Authorization", "Bearer " + authToken);
+        HttpEntity<String> entity = new HttpEntity<>(headers);
+        String deleteUrl = String.format("%s/projects/delete?project=%s", baseUrl, projectKey);
+
+        try {
+            restTemplate.exchange(deleteUrl, HttpMethod.POST, entity, Void.class);
+        } catch (HttpClientErrorException.NotFound nf) {
+            LOG.debug("Project {} was already deleted", projectKey);
+        }
+    }
+
+    /*
+        Only the first 10000 projects can be listed, the rest are listed once some of them are deleted.
+     */
+    public List<ProjectsReport.Project> findProjects() {
+        HttpHeaders headers = new HttpHeaders();
+        headers.set("Authorization", "Bearer " + authToken);
+        HttpEntity<String> entity = new HttpEntity<>("parameters", headers);
+        String projectsUrl = String.format("%s/projects/search?qualifiers=TRK&ps=%d", baseUrl, PAGE_SIZE);
+        PagedQuery<ProjectsReport> query = new PagedQuery<>(
+                ProjectsReport.class,
+                ProjectsReport::getComponents,
+                ProjectsReport::getPaging,
+                List.of(),
+                false);
+
+        try {
+            return fetchAllPages(restTemplate, entity, projectsUrl, query, 0)
+                    .thenApply(pages -> pages.stream()
+                            .flatMap(page -> page.getComponents().stream())
+                            .toList())
+                    .join();
+        } catch (CompletionException ce) {
+            if (ce.getCause() instanceof RuntimeException re) {
+                throw re;
+            }
+            throw new ServerErrorException(SERVER_ERROR_MSG);
+        }
+    }
+
+    private String fetchTaskStatus(RestTemplate restTemplate, HttpEntity<String> entity, String ceTaskId) {
+        String taskUrl = String.format("%s/ce/task?id=%s", baseUrl, ceTaskId);
+
+        ResponseEntity<ComputeEngineReport> response = restTemplate.exchange(
+                taskUrl,
+                HttpMethod.GET,
                 entity,
-                projectKey);
+                ComputeEngineReport.class);
+        ComputeEngineReport report = response.getBody();
+
+        if (report == null || report.getTask() == null) {
+            throw new ServerErrorException(SERVER_ERROR_MSG);
+        }
 
-        return new AnalysisReport(issuesReport, hotspotsReport, qualityMetricReport);
+        return report.getTask().getStatus();
     }
 
-    private boolean projectExists(RestTemplate restTemplate, HttpEntity<String> entity, String projectKey) {
-        String projectUrl = String.format("%s/projects/search?projects=%s", baseUrl, projectKey);
+    /*
+        Before the scanner uploads its report, the project does not exist on the server, and we get a 404. After the
+        upload, the task is in the queue until it's processed and then becomes the current task of the project.
+     */
+    private String fetchProjectTaskStatus(RestTemplate restTemplate, HttpEntity<String> entity, String projectKey) {
+        String componentUrl = String.format("%s/ce/component?component=%s", baseUrl, projectKey);
 
-        /*
-            The request to check if a project is on the server does not return 404 but an empty components array if the
-             project is not on the sonarqube server.
-         */
         try {
-            ResponseEntity<String> response = restTemplate.exchange(
-                    projectUrl,
+            ResponseEntity<ComputeEngineReport> response = restTemplate.exchange(
+                    componentUrl,
                     HttpMethod.GET,
                     entity,
-                    String.class);
+                    ComputeEngineReport.class);
+            ComputeEngineReport report = response.getBody();
 
-            if (response.getStatusCode() != HttpStatus.OK) {
-                throw new ServerErrorException(SERVER_ERROR_MSG);
+            if (report == null || (report.getQueue() != null && !report.getQueue().isEmpty())) {
+                return null;
             }
 
-            JSONObject responseObject = new JSONObject(response.getBody());
-            JSONArray components = responseObject.getJSONArray("components");
+            return report.getCurrent() != null ? report.getCurrent().getStatus() : null;
+        } catch (HttpClientErrorException.NotFound nf) {
+            return null;
+        }
+    }
 
-            return components.length() != 0;
-        } catch (JSONException e) {
-            throw new ServerErrorException(SERVER_ERROR_MSG);
+    private boolean isFinished(String status) {
+        return status.equals("SUCCESS") || status.equals("FAILED") || status.equals("CANCELED");
+    }
+
+    /*
+        The scanner writes the id of the task it submitted in .scannerwork/report-task.txt as ceTaskId=<id>.
+     */
+    private Optional<String> findComputeEngineTaskId(String projectDirectory) {
+        Path reportTask = Paths.get(projectDirectory, ".scannerwork", "report-task.txt");
+        if (!Files.exists(reportTask)) {
+            return Optional.empty();
+        }
+
+        try (BufferedReader reader = Files.newBufferedReader(reportTask)) {
+            Properties properties = new Properties();
+            properties.load(reader);
+
+            return Optional.ofNullable(properties.getProperty("ceTaskId"));
+        } catch (IOException ioe) {
+            return Optional.empty();
         }
     }
 
-    private IssuesReport fetchIssues(RestTemplate restTemplate, HttpEntity<String> entity, String projectKey) {
-        int page = 1;
-        int pageSize = 100;
-        int totalNumberOfPages = Integer.MAX_VALUE;
-        IssuesReport issuesReport = null;
-        IssuesReport tmp;
+    /*
+        If a project has more issues than SonarQube can return for a single query, we narrow the query down by type,
+        then by severity and finally by creation date ranges until every part fits.
+     */
+    private CompletableFuture<IssuesReport> fetchIssues(RestTemplate restTemplate,
+                                                        HttpEntity<String> entity,
+                                                        String projectKey) {
+        String issuesUrl = String.format(
+                "%s/issues/search?componentKeys=%s&ps=%d",
+                baseUrl,
+                projectKey,
+                PAGE_SIZE);
+        PagedQuery<IssuesReport> query = new PagedQuery<>(
+                IssuesReport.class,
+                IssuesReport::getIssues,
+                IssuesReport::getPaging,
+                List.of(toFilters("types", ISSUE_TYPES), toFilters("severities", ISSUE_SEVERITIES)),
+                true);
+
+        return fetchAllPages(restTemplate, entity, issuesUrl, query, 0)
+                .thenApply(pages -> {
+                    IssuesReport issuesReport = new IssuesReport();
+                    pages.forEach(issuesReport::merge);
+
+                    return issuesReport;
+                });
+    }
 
-        /*
-            SonarQube uses pagination. It returns 100 issues per request. If we have more than a 100 we need to perform
-            more than 1 request to get all the issues from a single report.
-         */
-        while (page <= totalNumberOfPages) {
-            String issuesUrl = String.format(
-                    "%s/issues/search?componentKeys=%s&p=%d&ps=%d",
-                    baseUrl,
-                    projectKey,
-                    page,
-                    pageSize);
-            ResponseEntity<IssuesReport> response = restTemplate.exchange(
-                    issuesUrl,
-                    HttpMethod.GET,
-                    entity,
-                    IssuesReport.class);
+    /*
+        Hotspots can only be narrowed down by their review status.
+     */
+    private CompletableFuture<HotspotsReport> fetchHotspots(RestTemplate restTemplate,
+                                                            HttpEntity<String> entity,
+                                                            String projectKey) {
+        String hotspotsUrl = String.format(
+                "%s/hotspots/search?projectKey=%s&ps=%d",
+                baseUrl,
+                projectKey,
+                PAGE_SIZE);
+        PagedQuery<HotspotsReport> query = new PagedQuery<>(
+                HotspotsReport.class,
+                HotspotsReport::getHotspots,
+                HotspotsReport::getPaging,
+                List.of(toFilters("status", HOTSPOT_STATUSES)),
+                false);
+
+        return fetchAllPages(restTemplate, entity, hotspotsUrl, query, 0)
+                .thenApply(pages -> {
+                    HotspotsReport hotspotsReport = new HotspotsReport();
+                    pages.forEach(hotspotsReport::merge);
+
+                    return hotspotsReport;
+                });
+    }
 
-            tmp = response.getBody();
+    /*
+        SonarQube uses pagination, and the first page tells us the total number of items. If the total fits in the
+        result window, all the remaining pages are requested at the same time. Otherwise, the query is split with the
+        filters of the next level and each part is fetched the same way.
+     */
+    private <R> CompletableFuture<List<R>> fetchAllPages(RestTemplate restTemplate,
+                                                         HttpEntity<String> entity,
+                                                         String url,
+                                                         PagedQuery<R> query,
+                                                         int level) {
+        return fetchPage(restTemplate, entity, url, 1, query.responseType()).thenCompose(firstPage -> {
+            int total = getTotal(firstPage, query);
+
+            if (total <= MAX_RESULT_WINDOW) {
+                return fetchRemainingPages(restTemplate, entity, url, query, firstPage, total);
+            }
+
+            if (level < query.partitions().size()) {
+                return merge(query.partitions().get(level).stream()
+                        .map(filter -> fetchAllPages(restTemplate, entity, url + filter, query, level + 1))
+                        .toList());
+            }
+
+            if (query.partitionByCreationDate()) {
+                return fetchAllPagesByCreationDate(
+                        restTemplate,
+                        entity,
+                        url,
+                        query,
+                        MIN_CREATION_DATE,
+                        LocalDate.now().plusDays(1));
+            }
+
+            LOG.warn("Only {} out of {} items can be fetched for {}", MAX_RESULT_WINDOW, total, url);
+            return fetchRemainingPages(restTemplate, entity, url, query, firstPage, MAX_RESULT_WINDOW);
+        });
+    }
 
-            if (issuesReport != null && tmp != null) {
-                issuesReport.getIssues().addAll(tmp.getIssues());
-            } else {
-                issuesReport = tmp;
+    /*
+        createdAfter is inclusive and createdBefore is exclusive, so the two halves of a range never overlap. A single
+        day can't be split any further.
+     */
+    private <R> CompletableFuture<List<R>> fetchAllPagesByCreationDate(RestTemplate restTemplate,
+                                                                       HttpEntity<String> entity,
+                                                                       String url,
+                                                                       PagedQuery<R> query,
+                                                                       LocalDate from,
+                                                                       LocalDate to) {
+        String rangeUrl = url + "&createdAfter=" + from + "&createdBefore=" + to;
+
+        return fetchPage(restTemplate, entity, rangeUrl, 1, query.responseType()).thenCompose(firstPage -> {
+            int total = getTotal(firstPage, query);
+            long days = ChronoUnit.DAYS.between(from, to);
+
+            if (total <= MAX_RESULT_WINDOW) {
+                return fetchRemainingPages(restTemplate, entity, rangeUrl, query, firstPage, total);
             }
 
-            totalNumberOfPages = (issuesReport.getIssues().size() / pageSize) + 1;
-            page++;
+            if (days <= 1) {
+                LOG.warn("Only {} out of {} items can be fetched for {}", MAX_RESULT_WINDOW, total, rangeUrl);
+                return fetchRemainingPages(restTemplate, entity, rangeUrl, query, firstPage, MAX_RESULT_WINDOW);
+            }
+
+            LocalDate middle = from.plusDays(days / 2);
+
+            return merge(List.of(
+                    fetchAllPagesByCreationDate(restTemplate, entity, url, query, from, middle),
+                    fetchAllPagesByCreationDate(restTemplate, entity, url, query, middle, to)));
+        });
+    }
+
+    private <R> CompletableFuture<List<R>> fetchRemainingPages(RestTemplate restTemplate,
+                                                               HttpEntity<String> entity,
+                                                               String url,
+                                                               PagedQuery<R> query,
+                                                               R firstPage,
+                                                               int total) {
+        int totalNumberOfPages = (int) Math.ceil((double) total / PAGE_SIZE);
+        List<CompletableFuture<List<R>>> pages = new ArrayList<>();
+        pages.add(CompletableFuture.completedFuture(List.of(firstPage)));
+
+        for (int page = 2; page <= totalNumberOfPages; page++) {
+            pages.add(fetchPage(restTemplate, entity, url, page, query.responseType()).thenApply(List::of));
         }
 
-        return issuesReport;
+        return merge(pages);
     }
 
-    private HotspotsReport fetchHotspots(RestTemplate restTemplate, HttpEntity<String> entity, String projectKey) {
-        int page = 1;
-        int pageSize = 100;
-        int totalNumberOfPages = Integer.MAX_VALUE;
-        HotspotsReport hotspotsReport = null;
-        HotspotsReport tmp;
+    /*
+        Merges the pages of every part in the order the parts were requested.
+     */
+    private <T> CompletableFuture<List<T>> merge(List<CompletableFuture<List<T>>> parts) {
+        return CompletableFuture.allOf(parts.toArray(new CompletableFuture[0]))
+                .thenApply(v -> {
+                    List<T> result = new ArrayList<>();
+                    parts.forEach(part -> result.addAll(part.join()));
+
+                    return result;
+                });
+    }
 
-        /*
-            SonarQube uses pagination. It returns 100 issues per request. If we have more than a 100 we need to perform
-            more than 1 request to get all the issues from a single report.
-         */
-        while (page <= totalNumberOfPages) {
-            String hotspotUrl = String.format(
-                    "%s/hotspots/search?projectKey=%s&p=%d&ps=%d",
-                    baseUrl,
-                    projectKey,
-                    page,
-                    pageSize);
-            ResponseEntity<HotspotsReport> response = restTemplate.exchange(
-                    hotspotUrl,
+    /*
+        A response without paging information is a single page.
+     */
+    private <R> int getTotal(R page, PagedQuery<R> query) {
+        Paging paging = query.paging().apply(page);
+
+        return paging == null ? query.items().apply(page).size() : paging.getTotal();
+    }
+
+    private List<String> toFilters(String parameter, List<String> values) {
+        return values.stream()
+                .map(value -> "&" + parameter + "=" + value)
+                .toList();
+    }
+
+    private <R> CompletableFuture<R> fetchPage(RestTemplate restTemplate,
+                                               HttpEntity<String> entity,
+                                               String url,
+                                               int page,
+                                               Class<R> responseType) {
+        return CompletableFuture.supplyAsync(() -> {
+            ResponseEntity<R> response = restTemplate.exchange(
+                    url + "&p=" + page,
                     HttpMethod.GET,
                     entity,
-                    HotspotsReport.class
-            );
-
-            tmp = response.getBody();
+                    responseType);
 
-            if (hotspotsReport != null && tmp != null) {
-                hotspotsReport.getHotspots().addAll(tmp.getHotspots());
-            } else {
-                hotspotsReport = tmp;
+            if (response.getBody() == null) {
+                throw new ServerErrorException(SERVER_ERROR_MSG);
             }
 
-            totalNumberOfPages = (hotspotsReport.getHotspots().size() / pageSize) + 1;
-            page++;
+            return response.getBody();
+        }, sonarExecutor);
+    }
+
+    private Map<QualityMetric, Double> getQualityMetrics(RestTemplate restTemplate,
+                                                         HttpEntity<String> entity,
+                                                         String projectKey) {
+        return toQualityMetrics(fetchQualityMetricValues(restTemplate, entity, projectKey));
+    }
+
+    /*
+        The project measures SonarQube would report if it had analyzed all the files at once. The measures that are
+        ratios are computed from their totals, the same way SonarQube computes them. Duplications are counted per file,
+        so a block duplicated between a changed and an unchanged file is counted from the latest scan of each file.
+     */
+    public Map<QualityMetric, Double> aggregateFileMeasures(Map<String, Map<String, Double>> fileMeasures) {
+        Map<String, Double> totals = new HashMap<>();
+        fileMeasures.values().forEach(measures -> measures.forEach((metric, value) -> totals.merge(
+                metric,
+                value,
+                Double::sum)));
+
+        double ncloc = totals.getOrDefault("ncloc", 0.0);
+        double commentLines = totals.getOrDefault("comment_lines", 0.0);
+        double lines = totals.getOrDefault("lines", 0.0);
+        double developmentCost = totals.getOrDefault("development_cost", 0.0);
+
+        Map<String, Double> metrics = new HashMap<>();
+        for (String metric : METRICS) {
+            metrics.put(metric, totals.getOrDefault(metric, 0.0));
         }
+        metrics.put("comment_lines_density", ratio(commentLines, ncloc + commentLines));
+        metrics.put("duplicated_lines_density", ratio(totals.getOrDefault("duplicated_lines", 0.0), lines));
+        metrics.put("sqale_debt_ratio", ratio(totals.getOrDefault("sqale_index", 0.0), developmentCost));
 
-        return hotspotsReport;
+        return toQualityMetrics(metrics);
+    }
+
+    private double ratio(double value, double total) {
+        return total == 0 ? 0.0 : value * 100 / total;
     }
 
     /*
         For BUG_SEVERITY, VULNERABILITY_SEVERITY, HOTSPOT_PRIORITY the initial value will be 0 because we don't fetch
         any value from Sonarqube and will get the actual value when we apply the relevant utf.
      */
-    private Map<QualityMetric, Double> getQualityMetrics(RestTemplate restTemplate,
-                                                         HttpEntity<String> entity,
-                                                         String projectKey) {
-        Map<String, Double> metrics = fetchQualityMetricValues(restTemplate, entity, projectKey);
+    private Map<QualityMetric, Double> toQualityMetrics(Map<String, Double> metrics) {
         Map<QualityMetric, Double> metricsReport = new EnumMap<>(QualityMetric.class);
 
         metricsReport.put(QualityMetric.COMMENT_RATE, metrics.get("comment_lines_density"));
@@ -249,20 +685,6 @@ public class SonarService {
     private Map<String, Double> fetchQualityMetricValues(RestTemplate restTemplate,
                                                          HttpEntity<String> entity,
                                                          String projectKey) {
-        /*
-            Metric values based on SonarQube's documentation
-         */
-        final String[] METRICS = new String[]{
-                "comment_lines_density",
-                "functions",
-                "duplicated_lines_density",
-                "sqale_debt_ratio",
-                "reliability_remediation_effort",
-                "cognitive_complexity",
-                "complexity",
-                "security_remediation_effort",
-                "ncloc"
-        };
         String metricKeys = String.join(",", METRICS);
         String metricsUrl = String.format(
                 "%s/measures/search?projectKeys=%s&metricKeys=%s",
@@ -284,5 +706,52 @@ public class SonarService {
 
         return metrics;
     }
-}
 
+    /*
+        Only files are requested, directories would count every measure twice.
+     */
+    private CompletableFuture<Map<String, Map<String, Double>>> fetchFileMeasures(RestTemplate restTemplate,
+                                                                                  HttpEntity<String> entity,
+                                                                                  String projectKey) {
+        String componentTreeUrl = String.format(
+                "%s/measures/component_tree?component=%s&qualifiers=FIL&metricKeys=%s&ps=%d",
+                baseUrl,
+                projectKey,
+                String.join(",", FILE_METRICS),
+                PAGE_SIZE);
+        PagedQuery<ComponentTreeReport> query = new PagedQuery<>(
+                ComponentTreeReport.class,
+                ComponentTreeReport::getComponents,
+                ComponentTreeReport::getPaging,
+                List.of(),
+                false);
+
+        return fetchAllPages(restTemplate, entity, componentTreeUrl, query, 0)
+                .thenApply(pages -> {
+                    Map<String, Map<String, Double>> fileMeasures = new HashMap<>();
+
+                    for (ComponentTreeReport page : pages) {
+                        for (ComponentTreeReport.Component component : page.getComponents()) {
+                            Map<String, Double> measures = new HashMap<>();
+                            component.getMeasures().forEach(measure -> measures.put(
+                                    measure.getMetric(),
+                                    measure.getValue()));
+                            fileMeasures.put(component.getPath(), measures);
+                        }
+                    }
+
+                    return fileMeasures;
+                });
+    }
+
+    /*
+        The parts of a paginated SonarQube resource we need to fetch all of its items. The partitions are the filters
+        used to split the query, one list per level.
+     */
+    private record PagedQuery<R>(Class<R> responseType,
+                                 Function<R, List<?>> items,
+                                 Function<R, Paging> paging,
+                                 List<List<String>> partitions,
+                                 boolean partitionByCreationDate) {
+    }
+}
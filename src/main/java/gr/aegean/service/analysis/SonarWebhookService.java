@@ -0,0 +1,116 @@
+package gr.aegean.service.analysis;
+
+import java.nio.charset.StandardCharsets;
+import java.security.InvalidKeyException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+
+import org.bouncycastle.util.encoders.Hex;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import gr.aegean.exception.ServerErrorException;
+import gr.aegean.exception.UnauthorizedException;
+import gr.aegean.model.analysis.sonarqube.SonarWebhookPayload;
+
+
+/*
+    SonarQube calls our webhook as soon as the compute engine task of a project has finished. The analysis thread that
+    waits for that project is woken up immediately instead of waiting for its next poll.
+    The webhook can arrive before the analysis thread starts waiting, so the status is kept until it is either claimed
+    or expires.
+ */
+@Service
+public class SonarWebhookService {
+    private final String webhookSecret;
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final Map<String, PendingTask> tasks = new ConcurrentHashMap<>();
+    private static final Duration UNCLAIMED_TASK_RETENTION = Duration.ofHours(1);
+    private static final String SERVER_ERROR_MSG = "The server encountered an internal error and was unable to " +
+            "complete your request. Please try again later";
+
+    public SonarWebhookService(@Value("${sonar.webhookSecret}") String webhookSecret) {
+        this.webhookSecret = webhookSecret;
+    }
+
+    /*
+        SonarQube signs the payload with the secret configured for the webhook and sends the signature as a hex encoded
+        HMAC-SHA256 in the X-Sonar-Webhook-HMAC-SHA256 header. Without a configured secret we can not tell a real
+        notification from a forged one, so the webhook is rejected.
+     */
+    public void handleWebhook(String payload, String signature) {
+        if (webhookSecret == null || webhookSecret.isBlank() || signature == null || !isValidSignature(payload,
+                signature)) {
+            throw new UnauthorizedException("Invalid webhook signature");
+        }
+
+        SonarWebhookPayload webhookPayload;
+        try {
+            webhookPayload = objectMapper.readValue(payload, SonarWebhookPayload.class);
+        } catch (JsonProcessingException jpe) {
+            throw new IllegalArgumentException("Invalid webhook payload");
+        }
+
+        /*
+            The analysis thread decides whether the task is finished from the status, so a notification without one is
+            of no use to it.
+         */
+        if (webhookPayload.status() == null
+                || webhookPayload.project() == null
+                || webhookPayload.project().key() == null) {
+            throw new IllegalArgumentException("Invalid webhook payload");
+        }
+
+        evictUnclaimedTasks();
+        getTask(webhookPayload.project().key()).complete(webhookPayload.status());
+    }
+
+    /**
+     * @return A future that completes with the status of the compute engine task of the project, once SonarQube
+     * notifies us about it.
+     */
+    public CompletableFuture<String> getTask(String projectKey) {
+        return tasks.computeIfAbsent(projectKey, key -> new PendingTask(new CompletableFuture<>(), Instant.now()))
+                .status();
+    }
+
+    public void removeTask(String projectKey) {
+        tasks.remove(projectKey);
+    }
+
+    private boolean isValidSignature(String payload, String signature) {
+        try {
+            Mac mac = Mac.getInstance("HmacSHA256");
+            mac.init(new SecretKeySpec(webhookSecret.getBytes(StandardCharsets.UTF_8), "HmacSHA256"));
+            byte[] expected = Hex.encode(mac.doFinal(payload.getBytes(StandardCharsets.UTF_8)));
+
+            return MessageDigest.isEqual(expected, signature.getBytes(StandardCharsets.UTF_8));
+        } catch (NoSuchAlgorithmException | InvalidKeyException e) {
+            throw new ServerErrorException(SERVER_ERROR_MSG);
+        }
+    }
+
+    /*
+        Notifications for projects nobody waits for, for example projects analyzed outside our service, would stay in
+        the map forever otherwise.
+     */
+    private void evictUnclaimedTasks() {
+        Instant threshold = Instant.now().minus(UNCLAIMED_TASK_RETENTION);
+
+        tasks.values().removeIf(task -> task.createdDate().isBefore(threshold));
+    }
+
+    private record PendingTask(CompletableFuture<String> status, Instant createdDate) {
+    }
+}
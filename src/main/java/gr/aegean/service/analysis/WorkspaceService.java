@@ -0,0 +1,230 @@
+package gr.aegean.service.analysis;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.util.unit.DataSize;
+
+import gr.aegean.exception.ServerErrorException;
+import gr.aegean.utility.FileUtils;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+
+
+/*
+    Keeps track of every checkout on disk. A checkout is active while its pipeline runs. When the pipeline is over, the
+    checkout is either deleted or, if it was analyzed successfully, kept in a pool, so the same commit of the same
+    repository can be analyzed again without cloning it. The pool is evicted least recently used first, whenever it has
+    more checkouts than its size or the checkouts on disk take more bytes than the quota.
+    Pooled checkouts live in their own folder, F:\Projects\pool\UUID, so deleting the folder of a request doesn't delete
+    them, and the project key is still the last part of the path.
+ */
+@Service
+public class WorkspaceService {
+    private final File baseDirectory;
+    private final File poolDirectory;
+    private final long quotaBytes;
+    private final int poolSize;
+    private final Map<Path, Long> activeCheckouts = new HashMap<>();
+    /*
+        Access ordered, the eldest entry is the least recently used checkout.
+     */
+    private final LinkedHashMap<String, PooledCheckout> pooledCheckouts = new LinkedHashMap<>(16, 0.75f, true);
+    private static final String SCANNER_WORK_DIRECTORY = ".scannerwork";
+    private static final String DOCKERFILE = "Dockerfile";
+    private static final Logger LOG = LoggerFactory.getLogger(WorkspaceService.class);
+    private static final String SERVER_ERROR_MSG = "The server encountered an internal error and was unable to " +
+            "complete your request. Please try again later.";
+
+    public WorkspaceService(@Value("${projects.base-directory}") String baseDirectoryPath,
+                            @Value("${analysis.workspace.quota}") DataSize quota,
+                            @Value("${analysis.workspace.poolSize}") int poolSize,
+                            MeterRegistry meterRegistry) {
+        this.baseDirectory = new File(baseDirectoryPath);
+        this.poolDirectory = new File(baseDirectory, "pool");
+        this.quotaBytes = quota.toBytes();
+        this.poolSize = poolSize;
+
+        Gauge.builder("analysis.workspace.usage", this, WorkspaceService::getUsedBytes)
+                .baseUnit("bytes")
+                .description("Bytes taken by the checkouts on disk")
+                .register(meterRegistry);
+        Gauge.builder("analysis.workspace.quota", this, workspaceService -> workspaceService.quotaBytes)
+                .baseUnit("bytes")
+                .register(meterRegistry);
+        Gauge.builder("analysis.workspace.checkouts", this, WorkspaceService::getActiveCheckoutCount)
+                .tag("state", "active")
+                .register(meterRegistry);
+        Gauge.builder("analysis.workspace.checkouts", this, WorkspaceService::getPooledCheckoutCount)
+                .tag("state", "pooled")
+                .register(meterRegistry);
+    }
+
+    /*
+        Pooled checkouts are evicted to make room for the new request. If the active checkouts alone take the entire
+        quota, the request is rejected until some of them are done.
+     */
+    public File createRequestFolder() {
+        evict();
+
+        if (getUsedBytes() >= quotaBytes) {
+            LOG.warn("Workspace quota of {} bytes is exhausted by active checkouts", quotaBytes);
+            throw new ServerErrorException(SERVER_ERROR_MSG);
+        }
+
+        File requestFolder = new File(baseDirectory, UUID.randomUUID().toString());
+        if (!requestFolder.mkdirs()) {
+            throw new ServerErrorException(SERVER_ERROR_MSG);
+        }
+
+        return requestFolder;
+    }
+
+    public void registerCheckout(Path checkout) {
+        long size = FileUtils.measure(checkout);
+
+        synchronized (this) {
+            activeCheckouts.put(checkout, size);
+        }
+    }
+
+    /**
+     * @return A pooled checkout of the commit, which is active until it's released.
+     */
+    public Optional<Path> acquireCheckout(String projectUrl, String commitSha) {
+        PooledCheckout pooledCheckout;
+
+        synchronized (this) {
+            pooledCheckout = pooledCheckouts.remove(toKey(projectUrl, commitSha));
+            if (pooledCheckout == null) {
+                return Optional.empty();
+            }
+            activeCheckouts.put(pooledCheckout.path(), pooledCheckout.size());
+        }
+
+        return Optional.of(pooledCheckout.path());
+    }
+
+    /*
+        A checkout is kept only if the pool can hold it. The output of the scan is removed before it's pooled, so the
+        checkout taken from the pool is the commit as it was cloned, and it takes the bytes it was registered with.
+     */
+    public void releaseCheckout(Path checkout, String projectUrl, String commitSha, boolean keep) {
+        Long registeredSize;
+        synchronized (this) {
+            registeredSize = activeCheckouts.remove(checkout);
+        }
+
+        if (!keep || poolSize <= 0) {
+            FileUtils.deleteRecursively(checkout);
+            return;
+        }
+
+        Path pooledPath = poolDirectory.toPath().resolve(checkout.getFileName());
+        try {
+            removeScanOutput(checkout);
+            Files.createDirectories(poolDirectory.toPath());
+            if (!checkout.equals(pooledPath)) {
+                Files.move(checkout, pooledPath, StandardCopyOption.ATOMIC_MOVE);
+            }
+        } catch (IOException ioe) {
+            LOG.warn("Failed to move checkout {} to the pool", checkout, ioe);
+            FileUtils.deleteRecursively(checkout);
+            return;
+        }
+
+        long size = registeredSize != null ? registeredSize : FileUtils.measure(pooledPath);
+        PooledCheckout replaced;
+        synchronized (this) {
+            replaced = pooledCheckouts.put(toKey(projectUrl, commitSha), new PooledCheckout(pooledPath, size));
+        }
+
+        if (replaced != null && !replaced.path().equals(pooledPath)) {
+            FileUtils.deleteRecursively(replaced.path());
+        }
+        evict();
+    }
+
+    /*
+        Whatever is left in the folder of a request, e.g. a partial clone, is deleted with it.
+     */
+    public void deleteRequestFolder(File requestFolder) {
+        FileUtils.deleteRecursively(requestFolder.toPath());
+    }
+
+    public synchronized long getUsedBytes() {
+        long activeBytes = activeCheckouts.values().stream()
+                .mapToLong(Long::longValue)
+                .sum();
+        long pooledBytes = pooledCheckouts.values().stream()
+                .mapToLong(PooledCheckout::size)
+                .sum();
+
+        return activeBytes + pooledBytes;
+    }
+
+    public synchronized int getActiveCheckoutCount() {
+        return activeCheckouts.size();
+    }
+
+    public synchronized int getPooledCheckoutCount() {
+        return pooledCheckouts.size();
+    }
+
+    /*
+        The evicted checkouts are deleted outside the lock, deleting a large checkout can take a while.
+     */
+    private void evict() {
+        List<Path> evicted = new ArrayList<>();
+
+        synchronized (this) {
+            Iterator<PooledCheckout> iterator = pooledCheckouts.values().iterator();
+
+            while (iterator.hasNext()
+                    && (pooledCheckouts.size() > poolSize || getUsedBytes() > quotaBytes)) {
+                evicted.add(iterator.next().path());
+                iterator.remove();
+            }
+        }
+
+        evicted.forEach(FileUtils::deleteRecursively);
+    }
+
+    /*
+        The scan writes the id of its compute engine task to .scannerwork/report-task.txt, and the scan of a Java
+        project writes our Dockerfile over the one of the repository. A reused checkout would otherwise hand the task
+        id of the previous scan to the next one.
+     */
+    private void removeScanOutput(Path checkout) throws IOException {
+        Path scannerWork = checkout.resolve(SCANNER_WORK_DIRECTORY);
+
+        FileUtils.deleteRecursively(scannerWork);
+        if (Files.exists(scannerWork)) {
+            throw new IOException("Failed to delete " + scannerWork);
+        }
+        Files.deleteIfExists(checkout.resolve(DOCKERFILE));
+    }
+
+    private String toKey(String projectUrl, String commitSha) {
+        return projectUrl + "@" + commitSha;
+    }
+
+    private record PooledCheckout(Path path, long size) {
+    }
+}
@@ -0,0 +1,85 @@
+package gr.aegean.utility;
+
+import java.io.IOException;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+
+public final class FileUtils {
+    private static final Logger LOG = LoggerFactory.getLogger(FileUtils.class);
+
+    private FileUtils() {
+
+        // prevent instantiation
+        throw new UnsupportedOperationException("FileUtils is a utility class and cannot be instantiated");
+    }
+
+    /**
+     * @return The total size of the files under the path in bytes, or 0 if the path can't be read. Files can disappear
+     * while they are walked, e.g. the lock files of a git gc that runs in the background, so a file that can't be read
+     * is left out instead of failing the walk.
+     */
+    public static long measure(Path path) {
+        AtomicLong size = new AtomicLong();
+
+        try {
+            Files.walkFileTree(path, new SimpleFileVisitor<>() {
+                @Override
+                public FileVisitResult visitFile(Path file, BasicFileAttributes attributes) {
+                    if (attributes.isRegularFile()) {
+                        size.addAndGet(attributes.size());
+                    }
+
+                    return FileVisitResult.CONTINUE;
+                }
+
+                @Override
+                public FileVisitResult visitFileFailed(Path file, IOException ioe) {
+                    return FileVisitResult.CONTINUE;
+                }
+            });
+        } catch (IOException ioe) {
+            return 0;
+        }
+
+        return size.get();
+    }
+
+    /*
+        Git marks its object files as read only, which prevents deleting them on Windows. A failed deletion is only
+        logged.
+     */
+    public static void deleteRecursively(Path path) {
+        if (!Files.exists(path)) {
+            return;
+        }
+
+        try {
+            Files.walkFileTree(path, new SimpleFileVisitor<>() {
+                @Override
+                public FileVisitResult visitFile(Path file, BasicFileAttributes attributes) throws IOException {
+                    file.toFile().setWritable(true);
+                    Files.delete(file);
+
+                    return FileVisitResult.CONTINUE;
+                }
+
+                @Override
+                public FileVisitResult postVisitDirectory(Path directory, IOException ioe) throws IOException {
+                    Files.delete(directory);
+
+                    return FileVisitResult.CONTINUE;
+                }
+            });
+        } catch (IOException ioe) {
+            LOG.warn("Failed to delete {}", path, ioe);
+        }
+    }
+}
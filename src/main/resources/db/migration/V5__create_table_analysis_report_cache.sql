@@ -0,0 +1,9 @@
+CREATE TABLE IF NOT EXISTS analysis_report_cache (
+    project_url TEXT NOT NULL,
+    commit_sha VARCHAR(40) NOT NULL,
+    report jsonb NOT NULL,
+    created_date TIMESTAMP NOT NULL,
+    CONSTRAINT pk_analysis_report_cache PRIMARY KEY (project_url, commit_sha)
+);
+
+CREATE INDEX IF NOT EXISTS idx_analysis_report_cache_created_date ON analysis_report_cache(created_date);
@@ -0,0 +1,5 @@
+ALTER TABLE analysis_report_cache
+ADD COLUMN IF NOT EXISTS file_measures jsonb;
+
+CREATE INDEX IF NOT EXISTS idx_analysis_report_cache_project_url_created_date
+ON analysis_report_cache(project_url, created_date);
@@ -11,19 +11,30 @@ import org.springframework.http.HttpHeaders;
 import org.springframework.http.MediaType;
 import org.springframework.security.test.context.support.WithMockUser;
 import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.verifyNoInteractions;
+import static org.mockito.Mockito.when;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.delete;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.put;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.request;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
 
 import gr.aegean.config.security.AuthConfig;
 import gr.aegean.config.security.SecurityConfig;
 import gr.aegean.config.security.JwtConfig;
+import gr.aegean.exception.ResourceNotFoundException;
+import gr.aegean.model.analysis.AnalysisJob;
+import gr.aegean.model.dto.analysis.AnalysisRequest;
 import gr.aegean.repository.UserRepository;
+import gr.aegean.service.analysis.AnalysisJobService;
 import gr.aegean.service.analysis.AnalysisService;
 import gr.aegean.service.analysis.ProcessProjectService;
 import gr.aegean.config.DeserializerConfig;
@@ -49,6 +60,8 @@ class AnalysisControllerTest {
     @MockBean
     private AnalysisService analysisService;
     @MockBean
+    private AnalysisJobService analysisJobService;
+    @MockBean
     private UserRepository userRepository;
     private static final String ANALYSIS_PATH = "/api/v1/analysis";
 
@@ -79,6 +92,114 @@ class AnalysisControllerTest {
         verifyNoInteractions(processProjectService);
     }
 
+    @Test
+    @WithMockUser(username = "1")
+    void shouldReturnHTTP202WithJobLocationWhenAnalysisIsSubmitted() throws Exception {
+        String requestBody = """
+                {
+                    "projectUrls": [
+                        "https://github.com/user/test"
+                    ]
+                }
+                """;
+        AnalysisJob job = new AnalysisJob(1);
+
+        when(processProjectService.processProject(any(AnalysisRequest.class))).thenReturn(job);
+
+        mockMvc.perform(post(ANALYSIS_PATH)
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(requestBody)
+                        .header(HttpHeaders.ACCEPT, MediaType.APPLICATION_JSON))
+                .andExpectAll(
+                        status().isAccepted(),
+                        header().string("Location", "http://localhost" + ANALYSIS_PATH + "/jobs/" + job.getId()),
+                        jsonPath("$.jobId").value(job.getId()),
+                        jsonPath("$.status").value("QUEUED")
+                );
+    }
+
+    @Test
+    @WithMockUser(username = "1")
+    void shouldReturnAnalysisLocationWhenJobIsDone() throws Exception {
+        AnalysisJob job = new AnalysisJob(1);
+        job.complete(5);
+
+        when(analysisJobService.findJob(job.getId())).thenReturn(job);
+
+        mockMvc.perform(get(ANALYSIS_PATH + "/jobs/{jobId}", job.getId()))
+                .andExpectAll(
+                        status().isOk(),
+                        header().string("Location", "http://localhost" + ANALYSIS_PATH + "/5"),
+                        jsonPath("$.status").value("DONE"),
+                        jsonPath("$.analysisId").value(5)
+                );
+    }
+
+    @Test
+    @WithMockUser(username = "1")
+    void shouldNotReturnLocationWhenJobIsNotDone() throws Exception {
+        AnalysisJob job = new AnalysisJob(1);
+
+        when(analysisJobService.findJob(job.getId())).thenReturn(job);
+
+        mockMvc.perform(get(ANALYSIS_PATH + "/jobs/{jobId}", job.getId()))
+                .andExpectAll(
+                        status().isOk(),
+                        header().doesNotExist("Location"),
+                        jsonPath("$.status").value("QUEUED")
+                );
+    }
+
+    @Test
+    @WithMockUser(username = "1")
+    void shouldReturnHTTP404WhenJobIsNotFound() throws Exception {
+        String responseBody = """
+                {
+                    "message": "No analysis job was found for job id: unknown",
+                    "statusCode": 404
+                }
+                """;
+
+        when(analysisJobService.findJob("unknown")).thenThrow(
+                new ResourceNotFoundException("No analysis job was found for job id: unknown"));
+
+        mockMvc.perform(get(ANALYSIS_PATH + "/jobs/{jobId}", "unknown"))
+                .andExpectAll(
+                        status().isNotFound(),
+                        content().json(responseBody)
+                );
+    }
+
+    @Test
+    @WithMockUser(username = "1")
+    void shouldStreamAnalysisJobEvents() throws Exception {
+        when(analysisJobService.streamJob("jobId")).thenReturn(new SseEmitter());
+
+        mockMvc.perform(get(ANALYSIS_PATH + "/jobs/{jobId}/events", "jobId")
+                        .accept(MediaType.TEXT_EVENT_STREAM))
+                .andExpectAll(
+                        status().isOk(),
+                        request().asyncStarted()
+                );
+    }
+
+    @Test
+    @WithMockUser(username = "1")
+    void shouldCancelAnalysisJob() throws Exception {
+        mockMvc.perform(delete(ANALYSIS_PATH + "/jobs/{jobId}", "jobId"))
+                .andExpect(status().isNoContent());
+
+        verify(analysisJobService).cancelJob("jobId");
+    }
+
+    @Test
+    void shouldReturnHTTP401WhenGetAnalysisJobIsCalledByUnauthenticatedUser() throws Exception {
+        mockMvc.perform(get(ANALYSIS_PATH + "/jobs/{jobId}", "jobId"))
+                .andExpect(status().isUnauthorized());
+
+        verifyNoInteractions(analysisJobService);
+    }
+
     /*
         @NullAndEmptySource only works for Strings, not for a List<String>
      */
@@ -0,0 +1,85 @@
+package gr.aegean.controller;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.WebMvcTest;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.context.annotation.Import;
+import org.springframework.http.MediaType;
+import org.springframework.test.web.servlet.MockMvc;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.verify;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+import gr.aegean.config.security.AuthConfig;
+import gr.aegean.config.security.JwtConfig;
+import gr.aegean.config.security.SecurityConfig;
+import gr.aegean.exception.UnauthorizedException;
+import gr.aegean.repository.UserRepository;
+import gr.aegean.service.analysis.SonarWebhookService;
+import gr.aegean.service.auth.AppUserDetailsService;
+
+
+@WebMvcTest(SonarWebhookController.class)
+@Import({
+        SecurityConfig.class,
+        AuthConfig.class,
+        JwtConfig.class,
+        AppUserDetailsService.class})
+class SonarWebhookControllerTest {
+    @Autowired
+    private MockMvc mockMvc;
+    @MockBean
+    private SonarWebhookService sonarWebhookService;
+    @MockBean
+    private UserRepository userRepository;
+    private static final String WEBHOOK_PATH = "/api/v1/sonar/webhook";
+    private static final String PAYLOAD = """
+            {
+                "taskId": "AVh21JS2JepAEhwQ-b3u",
+                "status": "SUCCESS",
+                "project": {
+                    "key": "projectKey"
+                }
+            }
+            """;
+
+    /*
+        The webhook is called by SonarQube without a jwt.
+     */
+    @Test
+    void shouldReturnHTTP204WhenWebhookIsHandled() throws Exception {
+        mockMvc.perform(post(WEBHOOK_PATH)
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(PAYLOAD)
+                        .header("X-Sonar-Webhook-HMAC-SHA256", "signature"))
+                .andExpect(status().isNoContent());
+
+        verify(sonarWebhookService).handleWebhook(PAYLOAD, "signature");
+    }
+
+    @Test
+    void shouldReturnHTTP401WhenSignatureIsInvalid() throws Exception {
+        String responseBody = """
+                {
+                    "message": "Invalid webhook signature",
+                    "statusCode": 401
+                }
+                """;
+
+        doThrow(new UnauthorizedException("Invalid webhook signature"))
+                .when(sonarWebhookService).handleWebhook(any(), any());
+
+        mockMvc.perform(post(WEBHOOK_PATH)
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(PAYLOAD))
+                .andExpectAll(
+                        status().isUnauthorized(),
+                        content().json(responseBody)
+                );
+    }
+}
@@ -0,0 +1,52 @@
+package gr.aegean.deserializer;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.io.IOException;
+import java.util.Map;
+
+import gr.aegean.model.analysis.sonarqube.HotspotsReport;
+import gr.aegean.model.analysis.sonarqube.VulnerabilityProbability;
+
+
+class HotspotsReportDeserializerTest {
+    private ObjectMapper mapper;
+
+    @BeforeEach
+    void setup() {
+        mapper = new ObjectMapper();
+    }
+
+    @Test
+    void shouldDeserializeHotspotsAndCountVulnerabilityProbabilities() throws IOException {
+        //Arrange
+        String json = """
+                {
+                    "paging": { "pageIndex": 1, "pageSize": 500, "total": 3 },
+                    "hotspots": [
+                        { "key": "1", "ruleKey": "java:S1", "vulnerabilityProbability": "HIGH", "status": "TO_REVIEW" },
+                        { "key": "2", "ruleKey": "java:S2", "vulnerabilityProbability": "LOW" },
+                        { "key": "3", "ruleKey": "java:S3", "vulnerabilityProbability": "LOW" }
+                    ],
+                    "components": [ { "key": "projectKey", "qualifier": "TRK" } ]
+                }
+                """;
+
+        //Act
+        HotspotsReport actual = mapper.readValue(json, HotspotsReport.class);
+
+        //Assert
+        assertThat(actual.getHotspots())
+                .extracting(HotspotsReport.HotspotDetails::getRuleKey)
+                .containsExactly("java:S1", "java:S2", "java:S3");
+        assertThat(actual.getPaging().getTotal()).isEqualTo(3);
+        assertThat(actual.getVulnerabilityProbabilityCount()).isEqualTo(Map.of(
+                VulnerabilityProbability.HIGH, 1L,
+                VulnerabilityProbability.LOW, 2L));
+    }
+}
@@ -0,0 +1,78 @@
+package gr.aegean.deserializer;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.io.IOException;
+import java.util.Map;
+
+import gr.aegean.model.analysis.sonarqube.IssuesReport;
+import gr.aegean.model.analysis.sonarqube.Severity;
+
+
+class IssuesReportDeserializerTest {
+    private ObjectMapper mapper;
+
+    @BeforeEach
+    void setup() {
+        mapper = new ObjectMapper();
+    }
+
+    @Test
+    void shouldDeserializeIssuesAndCountSeveritiesByType() throws IOException {
+        //Arrange
+        String json = """
+                {
+                    "total": 3,
+                    "paging": { "pageIndex": 1, "pageSize": 500, "total": 3 },
+                    "issues": [
+                        { "key": "1", "rule": "java:S1", "severity": "MAJOR", "type": "BUG", "tags": ["cwe"] },
+                        { "key": "2", "rule": "java:S2", "severity": "MAJOR", "type": "BUG" },
+                        { "key": "3", "rule": "java:S3", "severity": "BLOCKER", "type": "VULNERABILITY" }
+                    ],
+                    "components": [ { "key": "projectKey", "qualifier": "TRK" } ],
+                    "facets": []
+                }
+                """;
+
+        //Act
+        IssuesReport actual = mapper.readValue(json, IssuesReport.class);
+
+        //Assert
+        assertThat(actual.getIssues())
+                .extracting(IssuesReport.IssueDetails::getRule)
+                .containsExactly("java:S1", "java:S2", "java:S3");
+        assertThat(actual.getPaging().getTotal()).isEqualTo(3);
+        assertThat(actual.getSeverityCount("BUG")).isEqualTo(Map.of(Severity.MAJOR, 2L));
+        assertThat(actual.getSeverityCount("VULNERABILITY")).isEqualTo(Map.of(Severity.BLOCKER, 1L));
+        assertThat(actual.getSeverityCount("CODE_SMELL")).isEmpty();
+    }
+
+    /*
+        The paging is only read from the SonarQube response and is not part of the report we store.
+     */
+    @Test
+    void shouldNotSerializePagingOrCounts() throws IOException {
+        //Arrange
+        String json = """
+                {
+                    "paging": { "pageIndex": 1, "pageSize": 500, "total": 1 },
+                    "issues": [ { "rule": "java:S1", "severity": "MINOR", "type": "CODE_SMELL" } ]
+                }
+                """;
+        IssuesReport issuesReport = mapper.readValue(json, IssuesReport.class);
+
+        //Act
+        String actual = mapper.writeValueAsString(issuesReport);
+
+        //Assert
+        assertThat(actual)
+                .contains("java:S1")
+                .doesNotContain("paging")
+                .doesNotContain("severityCount");
+    }
+}
@@ -0,0 +1,212 @@
+package gr.aegean.load;
+
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.test.web.server.LocalServerPort;
+import org.springframework.context.annotation.Import;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import gr.aegean.AbstractIntegrationTest;
+import gr.aegean.model.analysis.AnalysisJobStatus;
+import gr.aegean.model.dto.analysis.AnalysisJobDTO;
+import gr.aegean.model.dto.auth.AuthResponse;
+
+import io.micrometer.core.instrument.MeterRegistry;
+
+
+/*
+    Drives concurrent analysis requests through the real controller, scheduler, pipeline, Sonar client and database,
+    with GitHub, the Maven containers, sonar-scanner and the SonarQube server replaced by local stand-ins, and logs the
+    throughput, the latency percentiles and the saturation of the pools. The requests are spread over several users,
+    since the scheduler limits how many repositories of a single user run at the same time.
+    It's not part of the regular build. Every load.* property can be overridden on the command line:
+    ./mvnw -P load-test test -Dload.requests=500 -Dload.concurrency=50 -Dload.scanner.duration=5s
+ */
+@Import(LoadTestConfig.class)
+@ActiveProfiles(profiles = "load")
+class AnalysisLoadIT extends AbstractIntegrationTest {
+    @LocalServerPort
+    private int port;
+    @Autowired
+    private LocalRepositories localRepositories;
+    @Autowired
+    private MeterRegistry meterRegistry;
+    @Autowired
+    private ObjectMapper objectMapper;
+    @Value("${load.users}")
+    private int users;
+    @Value("${load.requests}")
+    private int requests;
+    @Value("${load.concurrency}")
+    private int concurrency;
+    @Value("${load.repositoriesPerRequest}")
+    private int repositoriesPerRequest;
+    @Value("${load.filesPerRepository}")
+    private int filesPerRepository;
+    @Value("${load.pollInterval}")
+    private Duration pollInterval;
+    @Value("${load.jobTimeout}")
+    private Duration jobTimeout;
+    @Value("${load.sampleInterval}")
+    private Duration sampleInterval;
+    @Value("${load.sonar.latency}")
+    private Duration sonarLatency;
+    @Value("${load.sonar.processingTime}")
+    private Duration sonarProcessingTime;
+    @Value("${load.sonar.issuesPerProject}")
+    private int issuesPerProject;
+    @Value("${load.sonar.hotspotsPerProject}")
+    private int hotspotsPerProject;
+    private final HttpClient httpClient = HttpClient.newHttpClient();
+    private static final StubSonarServer SONAR = StubSonarServer.start();
+    private static final Set<AnalysisJobStatus> FINISHED = EnumSet.of(
+            AnalysisJobStatus.DONE,
+            AnalysisJobStatus.FAILED,
+            AnalysisJobStatus.CANCELLED);
+    private static final Logger LOG = LoggerFactory.getLogger(AnalysisLoadIT.class);
+
+    @DynamicPropertySource
+    static void registerSonarProperties(DynamicPropertyRegistry registry) {
+        registry.add("sonar.baseUrl", SONAR::baseUrl);
+    }
+
+    @AfterAll
+    static void stopSonar() {
+        SONAR.close();
+    }
+
+    @Test
+    void shouldCompleteConcurrentAnalysisRequests() throws Exception {
+        //Arrange
+        SONAR.configure(new StubSonarServer.Settings(
+                sonarLatency,
+                sonarProcessingTime,
+                issuesPerProject,
+                hotspotsPerProject,
+                filesPerRepository));
+        List<String> tokens = new ArrayList<>();
+        for (int i = 0; i < users; i++) {
+            tokens.add(signUp(i));
+        }
+        ExecutorService clients = Executors.newFixedThreadPool(concurrency);
+        SaturationSampler sampler = new SaturationSampler(meterRegistry, sampleInterval);
+
+        //Act
+        sampler.start();
+        long start = System.nanoTime();
+        List<Future<LoadReport.RequestResult>> futures = new ArrayList<>();
+        for (int i = 0; i < requests; i++) {
+            String token = tokens.get(i % users);
+            List<String> projectUrls = localRepositories.urlsOfRequest(i, repositoriesPerRequest);
+            futures.add(clients.submit(() -> analyze(token, projectUrls)));
+        }
+
+        List<LoadReport.RequestResult> results = new ArrayList<>();
+        for (Future<LoadReport.RequestResult> future : futures) {
+            results.add(future.get());
+        }
+        Duration elapsed = Duration.ofNanos(System.nanoTime() - start);
+        clients.shutdown();
+
+        LoadReport report = new LoadReport(
+                results,
+                elapsed,
+                repositoriesPerRequest,
+                sampler.stop(),
+                SONAR.requestCounts(),
+                meterRegistry);
+        LOG.info(report.format());
+
+        //Assert
+        assertThat(report.countByStatus()).containsOnlyKeys(AnalysisJobStatus.DONE);
+    }
+
+    /*
+        Submits the request and polls its job until it's finished or the job timeout has passed, in which case the
+        last status the client saw is reported.
+     */
+    private LoadReport.RequestResult analyze(String token, List<String> projectUrls)
+            throws IOException, InterruptedException {
+        long start = System.nanoTime();
+        String requestBody = objectMapper.writeValueAsString(Map.of(
+                "projectUrls", projectUrls,
+                "constraints", List.of(),
+                "preferences", List.of()));
+        HttpResponse<String> response = httpClient.send(
+                request("/api/v1/analysis", token)
+                        .POST(HttpRequest.BodyPublishers.ofString(requestBody))
+                        .build(),
+                HttpResponse.BodyHandlers.ofString());
+        Duration acceptLatency = Duration.ofNanos(System.nanoTime() - start);
+        assertThat(response.statusCode()).isEqualTo(202);
+
+        AnalysisJobDTO job = objectMapper.readValue(response.body(), AnalysisJobDTO.class);
+        long deadline = start + jobTimeout.toNanos();
+        while (!FINISHED.contains(job.status()) && System.nanoTime() < deadline) {
+            Thread.sleep(pollInterval.toMillis());
+            response = httpClient.send(
+                    request("/api/v1/analysis/jobs/" + job.jobId(), token).GET().build(),
+                    HttpResponse.BodyHandlers.ofString());
+            job = objectMapper.readValue(response.body(), AnalysisJobDTO.class);
+        }
+
+        if (job.status() == AnalysisJobStatus.FAILED) {
+            LOG.warn("Job {} failed: {}", job.jobId(), job.message());
+        }
+
+        return new LoadReport.RequestResult(job.status(), acceptLatency, Duration.ofNanos(System.nanoTime() - start));
+    }
+
+    private String signUp(int user) throws IOException, InterruptedException {
+        String requestBody = objectMapper.writeValueAsString(Map.of(
+                "firstname", "Load",
+                "lastname", "Test",
+                "username", "LoadUser" + user,
+                "email", "load" + user + "@example.com",
+                "password", "Igw4UQAlfX$E"));
+        HttpResponse<String> response = httpClient.send(
+                request("/api/v1/auth/signup", null)
+                        .POST(HttpRequest.BodyPublishers.ofString(requestBody))
+                        .build(),
+                HttpResponse.BodyHandlers.ofString());
+        assertThat(response.statusCode()).isEqualTo(201);
+
+        return objectMapper.readValue(response.body(), AuthResponse.class).token();
+    }
+
+    private HttpRequest.Builder request(String path, String token) {
+        HttpRequest.Builder builder = HttpRequest.newBuilder(URI.create("http://localhost:" + port + path))
+                .header("Content-Type", "application/json")
+                .header("Accept", "application/json");
+        if (token != null) {
+            builder.header("Authorization", "Bearer " + token);
+        }
+
+        return builder;
+    }
+}
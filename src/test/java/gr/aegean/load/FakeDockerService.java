@@ -0,0 +1,51 @@
+package gr.aegean.load;
+
+import java.time.Duration;
+import java.util.Set;
+import java.util.UUID;
+
+import gr.aegean.model.analysis.ScanResult;
+import gr.aegean.model.analysis.TimedStage;
+import gr.aegean.service.analysis.AnalysisMetrics;
+import gr.aegean.service.analysis.DockerClient;
+import gr.aegean.service.analysis.DockerService;
+
+import io.micrometer.core.instrument.Tags;
+
+
+/*
+    Maven projects are built and scanned without a Docker daemon. The build and the scan take the configured durations
+    and are timed like the real ones.
+ */
+public class FakeDockerService extends DockerService {
+    private final AnalysisMetrics analysisMetrics;
+    private final Duration buildDuration;
+    private final Duration scanDuration;
+
+    public FakeDockerService(DockerClient dockerClient,
+                             AnalysisMetrics analysisMetrics,
+                             Duration buildDuration,
+                             Duration scanDuration) {
+        super(dockerClient, analysisMetrics);
+        this.analysisMetrics = analysisMetrics;
+        this.buildDuration = buildDuration;
+        this.scanDuration = scanDuration;
+    }
+
+    @Override
+    public ScanResult analyzeMavenProject(String projectKey,
+                                          String projectPath,
+                                          Set<String> inclusions,
+                                          Tags projectTags) {
+        analysisMetrics.time(TimedStage.BUILD, projectTags, () -> {
+            SimulatedLatency.pause(buildDuration);
+            return null;
+        });
+        analysisMetrics.time(TimedStage.SCAN, projectTags, () -> {
+            SimulatedLatency.pause(scanDuration);
+            return null;
+        });
+
+        return new ScanResult(0, UUID.randomUUID().toString());
+    }
+}
@@ -0,0 +1,38 @@
+package gr.aegean.load;
+
+import org.springframework.web.client.RestTemplate;
+
+import java.time.Duration;
+import java.util.Optional;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.Executor;
+
+import gr.aegean.service.analysis.AnalysisMetrics;
+import gr.aegean.service.analysis.SonarService;
+import gr.aegean.service.analysis.SonarWebhookService;
+
+
+/*
+    Instead of starting sonar-scanner, the scan takes the configured duration and submits a compute engine task to the
+    stub server. Waiting for the task and fetching the report go through the real client, against the stub.
+ */
+public class FakeScannerSonarService extends SonarService {
+    private final Duration scanDuration;
+
+    public FakeScannerSonarService(SonarWebhookService sonarWebhookService,
+                                   Executor sonarExecutor,
+                                   RestTemplate sonarRestTemplate,
+                                   AnalysisMetrics analysisMetrics,
+                                   Duration scanDuration) {
+        super(sonarWebhookService, sonarExecutor, sonarRestTemplate, analysisMetrics);
+        this.scanDuration = scanDuration;
+    }
+
+    @Override
+    public Optional<String> analyzeProject(String projectKey, String projectDirectory, Set<String> inclusions) {
+        SimulatedLatency.pause(scanDuration);
+
+        return Optional.of(UUID.randomUUID().toString());
+    }
+}
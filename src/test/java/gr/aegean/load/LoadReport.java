@@ -0,0 +1,133 @@
+package gr.aegean.load;
+
+import java.time.Duration;
+import java.util.DoubleSummaryStatistics;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+import gr.aegean.model.analysis.AnalysisJobStatus;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+
+
+/*
+    The outcome of a load run. The accept latency is the time until POST /api/v1/analysis responded with the job, the
+    completion latency the time until the job was DONE, FAILED or CANCELLED, as the client saw it by polling.
+ */
+public class LoadReport {
+    private final List<RequestResult> results;
+    private final Duration elapsed;
+    private final int repositoriesPerRequest;
+    private final Map<String, DoubleSummaryStatistics> saturation;
+    private final Map<String, Long> sonarRequests;
+    private final MeterRegistry meterRegistry;
+
+    public record RequestResult(AnalysisJobStatus status, Duration acceptLatency, Duration completionLatency) {
+    }
+
+    public LoadReport(List<RequestResult> results,
+                      Duration elapsed,
+                      int repositoriesPerRequest,
+                      Map<String, DoubleSummaryStatistics> saturation,
+                      Map<String, Long> sonarRequests,
+                      MeterRegistry meterRegistry) {
+        this.results = results;
+        this.elapsed = elapsed;
+        this.repositoriesPerRequest = repositoriesPerRequest;
+        this.saturation = saturation;
+        this.sonarRequests = sonarRequests;
+        this.meterRegistry = meterRegistry;
+    }
+
+    public Map<AnalysisJobStatus, Long> countByStatus() {
+        return results.stream()
+                .collect(Collectors.groupingBy(RequestResult::status, TreeMap::new, Collectors.counting()));
+    }
+
+    public String format() {
+        double seconds = elapsed.toMillis() / 1000.0;
+        StringBuilder report = new StringBuilder("\n=== Analysis load test ===\n");
+
+        report.append(String.format("Requests: %d in %.1fs, %s%n", results.size(), seconds, countByStatus()));
+        report.append(String.format("Throughput: %.2f jobs/s, %.2f repositories/s%n",
+                results.size() / seconds,
+                results.size() * repositoriesPerRequest / seconds));
+        report.append(latencies("Accept latency", RequestResult::acceptLatency));
+        report.append(latencies("Completion latency", RequestResult::completionLatency));
+
+        report.append("\nStages (count, mean, max)\n");
+        stageTimers().forEach((stage, timers) -> {
+            long count = timers.stream().mapToLong(Timer::count).sum();
+            double total = timers.stream().mapToDouble(timer -> timer.totalTime(TimeUnit.MILLISECONDS)).sum();
+            double max = timers.stream().mapToDouble(timer -> timer.max(TimeUnit.MILLISECONDS)).max().orElse(0);
+            report.append(String.format("  %-28s %8d %10.1fms %10.1fms%n",
+                    stage,
+                    count,
+                    count == 0 ? 0 : total / count,
+                    max));
+        });
+
+        report.append("\nCounters\n");
+        for (String name : List.of(
+                "analysis.cache.hits",
+                "analysis.repositories.rejected",
+                "analysis.repositories.failed")) {
+            for (Counter counter : meterRegistry.find(name).counters()) {
+                report.append(String.format("  %-60s %8.0f%n",
+                        name + counter.getId().getTags(),
+                        counter.count()));
+            }
+        }
+
+        report.append("\nSaturation (max, mean)\n");
+        saturation.forEach((gauge, statistics) -> report.append(String.format("  %-70s %8.1f %8.1f%n",
+                gauge,
+                statistics.getMax(),
+                statistics.getAverage())));
+
+        report.append("\nStub Sonar requests\n");
+        sonarRequests.forEach((path, count) -> report.append(String.format("  %-40s %8d%n", path, count)));
+
+        return report.toString();
+    }
+
+    private String latencies(String label, Function<RequestResult, Duration> latency) {
+        List<Long> millis = results.stream()
+                .map(latency)
+                .map(Duration::toMillis)
+                .sorted()
+                .toList();
+
+        return String.format("%s: p50 %dms, p90 %dms, p99 %dms, max %dms%n",
+                label,
+                percentile(millis, 0.5),
+                percentile(millis, 0.9),
+                percentile(millis, 0.99),
+                millis.isEmpty() ? 0 : millis.get(millis.size() - 1));
+    }
+
+    /*
+        Nearest rank, on the sorted latencies.
+     */
+    private long percentile(List<Long> sorted, double percentile) {
+        if (sorted.isEmpty()) {
+            return 0;
+        }
+
+        int rank = (int) Math.ceil(percentile * sorted.size());
+
+        return sorted.get(Math.max(0, rank - 1));
+    }
+
+    private Map<String, List<Timer>> stageTimers() {
+        return meterRegistry.find("analysis.stage.duration").timers().stream()
+                .collect(Collectors.groupingBy(timer -> timer.getId().getTag("stage"), TreeMap::new,
+                        Collectors.toList()));
+    }
+}
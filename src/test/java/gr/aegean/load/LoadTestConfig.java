@@ -0,0 +1,69 @@
+package gr.aegean.load;
+
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.test.context.TestConfiguration;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Primary;
+import org.springframework.web.client.RestTemplate;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.concurrent.Executor;
+
+import gr.aegean.service.analysis.AnalysisMetrics;
+import gr.aegean.service.analysis.DockerClient;
+import gr.aegean.service.analysis.DockerService;
+import gr.aegean.service.analysis.GitHubService;
+import gr.aegean.service.analysis.MirrorService;
+import gr.aegean.service.analysis.SonarService;
+import gr.aegean.service.analysis.SonarWebhookService;
+
+
+/*
+    Replaces GitHub, the Maven containers and sonar-scanner with the local stand-ins. Everything else, the controller,
+    the scheduler, the pipeline, the Sonar client and the database, is the real thing. The stand-ins are configured
+    under load.* in application-load.yaml.
+ */
+@TestConfiguration
+public class LoadTestConfig {
+
+    @Bean(destroyMethod = "close")
+    public LocalRepositories localRepositories(@Value("${load.repositories}") int count,
+                                               @Value("${load.filesPerRepository}") int filesPerRepository,
+                                               @Value("${load.mavenEvery}") int mavenEvery) throws IOException {
+        return new LocalRepositories(count, filesPerRepository, mavenEvery);
+    }
+
+    @Bean
+    @Primary
+    public GitHubService localGitHubService(MirrorService mirrorService,
+                                            LocalRepositories localRepositories,
+                                            @Value("${load.github.latency}") Duration latency) {
+        return new LocalGitHubService(mirrorService, localRepositories, latency);
+    }
+
+    @Bean
+    @Primary
+    public SonarService fakeScannerSonarService(SonarWebhookService sonarWebhookService,
+                                                @Qualifier("sonarExecutor") Executor sonarExecutor,
+                                                @Qualifier("sonarRestTemplate") RestTemplate sonarRestTemplate,
+                                                AnalysisMetrics analysisMetrics,
+                                                @Value("${load.scanner.duration}") Duration scanDuration) {
+        return new FakeScannerSonarService(
+                sonarWebhookService,
+                sonarExecutor,
+                sonarRestTemplate,
+                analysisMetrics,
+                scanDuration);
+    }
+
+    @Bean
+    @Primary
+    public DockerService fakeDockerService(DockerClient dockerClient,
+                                           AnalysisMetrics analysisMetrics,
+                                           @Value("${load.docker.buildDuration}") Duration buildDuration,
+                                           @Value("${load.scanner.duration}") Duration scanDuration) {
+        return new FakeDockerService(dockerClient, analysisMetrics, buildDuration, scanDuration);
+    }
+}
@@ -0,0 +1,88 @@
+package gr.aegean.load;
+
+import org.eclipse.jgit.api.CloneCommand;
+import org.eclipse.jgit.api.Git;
+import org.eclipse.jgit.api.errors.GitAPIException;
+import org.eclipse.jgit.lib.Constants;
+import org.eclipse.jgit.lib.Ref;
+
+import java.io.File;
+import java.net.URI;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+
+import gr.aegean.model.analysis.RemoteHead;
+import gr.aegean.model.dto.analysis.CloneOptions;
+import gr.aegean.service.analysis.GitHubService;
+import gr.aegean.service.analysis.MirrorService;
+
+
+/*
+    Resolves and clones the local repositories through JGit's file transport instead of GitHub, after the configured
+    round trip to the remote. The checkout ends up in the same place a real clone would, so everything after the clone
+    runs unchanged.
+ */
+public class LocalGitHubService extends GitHubService {
+    private final LocalRepositories repositories;
+    private final Duration latency;
+
+    public LocalGitHubService(MirrorService mirrorService, LocalRepositories repositories, Duration latency) {
+        super(mirrorService);
+        this.repositories = repositories;
+        this.latency = latency;
+    }
+
+    @Override
+    public Optional<Path> cloneProject(File requestFolder,
+                                       String projectUrl,
+                                       String branch,
+                                       CloneOptions cloneOptions) {
+        Optional<URI> repository = repositories.resolve(projectUrl);
+        if (repository.isEmpty()) {
+            return Optional.empty();
+        }
+
+        SimulatedLatency.pause(latency);
+        File projectFile = new File(requestFolder, UUID.randomUUID().toString());
+        CloneCommand command = Git.cloneRepository()
+                .setURI(repository.get().toString())
+                .setDirectory(projectFile);
+        if (branch != null) {
+            command.setBranch(branch);
+        }
+
+        try (Git git = command.call()) {
+            return Optional.of(projectFile.toPath());
+        } catch (GitAPIException gae) {
+            return Optional.empty();
+        }
+    }
+
+    @Override
+    public Optional<RemoteHead> findRemoteHead(String projectUrl) {
+        Optional<URI> repository = repositories.resolve(projectUrl);
+        if (repository.isEmpty()) {
+            return Optional.empty();
+        }
+
+        SimulatedLatency.pause(latency);
+        try {
+            Map<String, Ref> refs = Git.lsRemoteRepository()
+                    .setRemote(repository.get().toString())
+                    .callAsMap();
+            Ref head = refs.get(Constants.HEAD);
+            if (head == null || head.getObjectId() == null) {
+                return Optional.empty();
+            }
+
+            String branch = head.isSymbolic() ? head.getTarget().getName() : null;
+
+            return Optional.of(new RemoteHead(branch, head.getObjectId().name()));
+        } catch (GitAPIException gae) {
+            return Optional.empty();
+        }
+    }
+}
@@ -0,0 +1,160 @@
+package gr.aegean.load;
+
+import org.eclipse.jgit.api.Git;
+import org.eclipse.jgit.api.errors.GitAPIException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.util.FileSystemUtils;
+
+import java.io.IOException;
+import java.net.URI;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Optional;
+
+
+/*
+    Git repositories on the local disk that stand in for GitHub. Repository i is served as
+    https://github.com/load/repo-i and has a single commit on main. Every mavenEvery-th repository is a Maven project,
+    so it goes through the build in a container, the rest are Python projects that go straight to the scanner.
+ */
+public class LocalRepositories implements AutoCloseable {
+    private final Path root;
+    private final Map<String, Path> repositories = new LinkedHashMap<>();
+    private static final String URL_PREFIX = "https://github.com/load/";
+    private static final Logger LOG = LoggerFactory.getLogger(LocalRepositories.class);
+
+    public LocalRepositories(int count, int filesPerRepository, int mavenEvery) throws IOException {
+        root = Files.createTempDirectory("load-repositories");
+
+        for (int i = 0; i < count; i++) {
+            String name = "repo-" + i;
+            Path directory = root.resolve(name);
+            boolean maven = mavenEvery > 0 && i % mavenEvery == 0;
+
+            if (maven) {
+                writeMavenProject(directory, filesPerRepository);
+            } else {
+                writePythonProject(directory, filesPerRepository);
+            }
+            commit(directory);
+            repositories.put(name, directory);
+        }
+    }
+
+    public List<String> urls() {
+        return repositories.keySet().stream()
+                .map(name -> URL_PREFIX + name)
+                .toList();
+    }
+
+    /*
+        The repositories of consecutive requests overlap once every repository was requested, so later requests also
+        exercise the report cache and the sharing of analyses in flight.
+     */
+    public List<String> urlsOfRequest(int request, int count) {
+        List<String> urls = urls();
+        List<String> picked = new ArrayList<>();
+
+        for (int i = 0; i < Math.min(count, urls.size()); i++) {
+            picked.add(urls.get((request * count + i) % urls.size()));
+        }
+
+        return picked;
+    }
+
+    /**
+     * @return The file uri of the repository, if the url is one of ours.
+     */
+    public Optional<URI> resolve(String projectUrl) {
+        String normalized = projectUrl.trim().toLowerCase(Locale.ROOT);
+        if (!normalized.startsWith(URL_PREFIX)) {
+            return Optional.empty();
+        }
+
+        String name = normalized.substring(URL_PREFIX.length()).replaceAll("(\\.git)?/*$", "");
+
+        return Optional.ofNullable(repositories.get(name)).map(Path::toUri);
+    }
+
+    @Override
+    public void close() {
+        try {
+            FileSystemUtils.deleteRecursively(root);
+        } catch (IOException ioe) {
+            LOG.warn("Failed to delete {}", root, ioe);
+        }
+    }
+
+    private void writePythonProject(Path directory, int files) throws IOException {
+        for (int i = 0; i < files; i++) {
+            StringBuilder module = new StringBuilder();
+            for (int j = 0; j < 20; j++) {
+                module.append(String.format("""
+                        def function_%d(value):
+                            \"\"\"Returns the value moved towards %d.\"\"\"
+                            if value > %d:
+                                return value - %d
+                            return value + %d
+
+
+                        """, j, j, j, j, j));
+            }
+
+            write(directory.resolve("module_" + i + ".py"), module.toString());
+        }
+    }
+
+    private void writeMavenProject(Path directory, int files) throws IOException {
+        write(directory.resolve("pom.xml"), """
+                <project xmlns="http://maven.apache.org/POM/4.0.0">
+                    <modelVersion>4.0.0</modelVersion>
+                    <groupId>gr.load</groupId>
+                    <artifactId>load</artifactId>
+                    <version>1.0.0</version>
+                </project>
+                """);
+
+        for (int i = 0; i < files; i++) {
+            StringBuilder type = new StringBuilder(String.format("package gr.load;%n%npublic class Module%d {%n", i));
+            for (int j = 0; j < 20; j++) {
+                type.append(String.format("""
+                            public int method%d(int value) {
+                                if (value > %d) {
+                                    return value - %d;
+                                }
+                                return value + %d;
+                            }
+
+                        """, j, j, j, j));
+            }
+            type.append("}\n");
+
+            write(directory.resolve("src/main/java/gr/load/Module" + i + ".java"), type.toString());
+        }
+    }
+
+    private void write(Path file, String content) throws IOException {
+        Files.createDirectories(file.getParent());
+        Files.writeString(file, content);
+    }
+
+    private void commit(Path directory) throws IOException {
+        try (Git git = Git.init().setDirectory(directory.toFile()).setInitialBranch("main").call()) {
+            git.add().addFilepattern(".").call();
+            git.commit()
+                    .setMessage("Initial commit")
+                    .setAuthor("load", "load@example.com")
+                    .setCommitter("load", "load@example.com")
+                    .setSign(false)
+                    .call();
+        } catch (GitAPIException gae) {
+            throw new IOException(gae);
+        }
+    }
+}
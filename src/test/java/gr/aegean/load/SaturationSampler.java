@@ -0,0 +1,80 @@
+package gr.aegean.load;
+
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+
+import java.time.Duration;
+import java.util.DoubleSummaryStatistics;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+
+
+/*
+    Samples the gauges of the pools the analysis runs on while the load runs: the threads and the queue of every stage
+    of the pipeline, the database connections and the connections to the Sonar server. The max of an active gauge
+    next to the max of the pool tells whether the pool was saturated, a queue or pending count above zero how long the
+    work waited for it.
+ */
+public class SaturationSampler {
+    private final MeterRegistry meterRegistry;
+    private final Duration interval;
+    private final Map<String, DoubleSummaryStatistics> samples = new TreeMap<>();
+    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(
+            new CustomizableThreadFactory("LoadSampler-"));
+    private static final List<String> GAUGES = List.of(
+            "analysis.pipeline.executor.active",
+            "analysis.pipeline.executor.queued",
+            "analysis.pipeline.executor.pool.max",
+            "hikaricp.connections.active",
+            "hikaricp.connections.pending",
+            "hikaricp.connections.max",
+            "httpcomponents.httpclient.pool.total.connections",
+            "httpcomponents.httpclient.pool.total.pending",
+            "httpcomponents.httpclient.pool.total.max",
+            "jvm.threads.live");
+
+    public SaturationSampler(MeterRegistry meterRegistry, Duration interval) {
+        this.meterRegistry = meterRegistry;
+        this.interval = interval;
+    }
+
+    public void start() {
+        scheduler.scheduleAtFixedRate(this::sample, 0, interval.toMillis(), TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * @return The statistics of every gauge that was sampled, keyed by its name and tags.
+     */
+    public synchronized Map<String, DoubleSummaryStatistics> stop() {
+        scheduler.shutdownNow();
+
+        return new TreeMap<>(samples);
+    }
+
+    private synchronized void sample() {
+        for (String name : GAUGES) {
+            for (Gauge gauge : meterRegistry.find(name).gauges()) {
+                double value = gauge.value();
+                if (!Double.isNaN(value)) {
+                    samples.computeIfAbsent(key(gauge), key -> new DoubleSummaryStatistics()).accept(value);
+                }
+            }
+        }
+    }
+
+    private String key(Gauge gauge) {
+        String tags = gauge.getId().getTags().stream()
+                .filter(tag -> !tag.getKey().equals("name"))
+                .map(tag -> tag.getKey() + "=" + tag.getValue())
+                .collect(Collectors.joining(","));
+
+        return tags.isEmpty() ? gauge.getId().getName() : gauge.getId().getName() + "{" + tags + "}";
+    }
+}
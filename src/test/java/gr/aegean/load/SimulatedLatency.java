@@ -0,0 +1,31 @@
+package gr.aegean.load;
+
+import java.time.Duration;
+
+import gr.aegean.exception.ServerErrorException;
+import gr.aegean.service.analysis.CancellationScope;
+
+
+/*
+    The stand-ins wait the way the real clone, scan and server would, so a stage that is cancelled or runs past its
+    deadline is interrupted in the middle of the wait, like a killed process.
+ */
+final class SimulatedLatency {
+
+    private SimulatedLatency() {
+    }
+
+    static void pause(Duration duration) {
+        if (duration.isZero()) {
+            return;
+        }
+
+        try {
+            Thread.sleep(duration.toMillis());
+        } catch (InterruptedException ie) {
+            Thread.currentThread().interrupt();
+            CancellationScope.current().throwIfCancelled();
+            throw new ServerErrorException("Interrupted while simulating latency");
+        }
+    }
+}
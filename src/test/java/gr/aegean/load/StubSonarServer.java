@@ -0,0 +1,258 @@
+package gr.aegean.load;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.LongAdder;
+
+import gr.aegean.model.analysis.sonarqube.Severity;
+import gr.aegean.model.analysis.sonarqube.VulnerabilityProbability;
+
+
+/*
+    Answers the part of the SonarQube Web API the analysis uses with canned JSON, paginated the same way, so the client
+    fetches every page like it would from a real server. A compute engine task is IN_PROGRESS until processingTime has
+    passed since it was first polled. Every response is delayed by the configured latency.
+    The server is started before the application context, like the database container, and configured by the test.
+ */
+public class StubSonarServer implements AutoCloseable {
+    private final HttpServer server;
+    private final ExecutorService executor = Executors.newCachedThreadPool();
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final Map<String, Instant> tasks = new ConcurrentHashMap<>();
+    private final Map<String, LongAdder> requestCounts = new ConcurrentHashMap<>();
+    private volatile Settings settings = new Settings(Duration.ZERO, Duration.ZERO, 100, 10, 10);
+    private static final List<String> ISSUE_TYPES = List.of("BUG", "VULNERABILITY", "CODE_SMELL");
+    private static final List<String> METRICS = List.of(
+            "comment_lines_density",
+            "functions",
+            "duplicated_lines_density",
+            "sqale_debt_ratio",
+            "reliability_remediation_effort",
+            "cognitive_complexity",
+            "complexity",
+            "security_remediation_effort",
+            "ncloc");
+    private static final List<String> FILE_METRICS = List.of(
+            "comment_lines",
+            "functions",
+            "duplicated_lines",
+            "lines",
+            "sqale_index",
+            "development_cost",
+            "reliability_remediation_effort",
+            "cognitive_complexity",
+            "complexity",
+            "security_remediation_effort",
+            "ncloc");
+
+    /*
+        The number of issues, hotspots and files every project reports.
+     */
+    public record Settings(Duration latency,
+                           Duration processingTime,
+                           int issuesPerProject,
+                           int hotspotsPerProject,
+                           int filesPerProject) {
+    }
+
+    private StubSonarServer(HttpServer server) {
+        this.server = server;
+        server.createContext("/api", this::handle);
+        server.setExecutor(executor);
+        server.start();
+    }
+
+    public static StubSonarServer start() {
+        try {
+            return new StubSonarServer(HttpServer.create(
+                    new InetSocketAddress(InetAddress.getLoopbackAddress(), 0),
+                    0));
+        } catch (IOException ioe) {
+            throw new UncheckedIOException(ioe);
+        }
+    }
+
+    public String baseUrl() {
+        return "http://localhost:" + server.getAddress().getPort() + "/api";
+    }
+
+    public void configure(Settings settings) {
+        this.settings = settings;
+    }
+
+    /**
+     * @return The number of requests served for every endpoint, ordered by path.
+     */
+    public Map<String, Long> requestCounts() {
+        Map<String, Long> counts = new TreeMap<>();
+        requestCounts.forEach((path, count) -> counts.put(path, count.sum()));
+
+        return counts;
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+        executor.shutdownNow();
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        String path = exchange.getRequestURI().getPath();
+        Map<String, String> parameters = parseQuery(exchange.getRequestURI().getRawQuery());
+        Settings current = settings;
+        requestCounts.computeIfAbsent(path, key -> new LongAdder()).increment();
+
+        try {
+            SimulatedLatency.pause(current.latency());
+
+            Object body = switch (path) {
+                case "/api/ce/task" -> task(parameters.get("id"), current);
+                case "/api/issues/search" -> issues(parameters, current);
+                case "/api/hotspots/search" -> hotspots(parameters, current);
+                case "/api/measures/search" -> measures();
+                case "/api/measures/component_tree" -> componentTree(parameters, current);
+                case "/api/projects/search" -> Map.of(
+                        "paging", paging(1, 500, 0),
+                        "components", List.of());
+                default -> null;
+            };
+
+            if (path.equals("/api/projects/delete")) {
+                exchange.sendResponseHeaders(204, -1);
+            } else if (body == null) {
+                exchange.sendResponseHeaders(404, -1);
+            } else {
+                byte[] json = objectMapper.writeValueAsBytes(body);
+                exchange.getResponseHeaders().set("Content-Type", "application/json");
+                exchange.sendResponseHeaders(200, json.length);
+                try (OutputStream outputStream = exchange.getResponseBody()) {
+                    outputStream.write(json);
+                }
+            }
+        } finally {
+            exchange.close();
+        }
+    }
+
+    private Map<String, Object> task(String id, Settings current) {
+        Instant firstPolled = tasks.computeIfAbsent(id, key -> Instant.now());
+        boolean processed = !Instant.now().isBefore(firstPolled.plus(current.processingTime()));
+        String status = processed ? "SUCCESS" : "IN_PROGRESS";
+        if (processed) {
+            tasks.remove(id);
+        }
+
+        return Map.of("task", Map.of("id", id, "status", status));
+    }
+
+    private Map<String, Object> issues(Map<String, String> parameters, Settings current) {
+        String projectKey = parameters.get("componentKeys");
+        Severity[] severities = Severity.values();
+
+        return page(parameters, current.issuesPerProject(), "issues", i -> Map.of(
+                "rule", "python:S" + (100 + i % 50),
+                "severity", severities[i % severities.length].name(),
+                "component", projectKey + ":" + file(i, current),
+                "project", projectKey,
+                "line", i + 1,
+                "message", "Issue " + i,
+                "type", ISSUE_TYPES.get(i % ISSUE_TYPES.size())));
+    }
+
+    private Map<String, Object> hotspots(Map<String, String> parameters, Settings current) {
+        String projectKey = parameters.get("projectKey");
+        VulnerabilityProbability[] probabilities = VulnerabilityProbability.values();
+
+        return page(parameters, current.hotspotsPerProject(), "hotspots", i -> Map.of(
+                "component", projectKey + ":" + file(i, current),
+                "securityCategory", "weak-cryptography",
+                "vulnerabilityProbability", probabilities[i % probabilities.length].name(),
+                "line", i + 1,
+                "message", "Hotspot " + i,
+                "ruleKey", "python:S2245"));
+    }
+
+    private Map<String, Object> measures() {
+        List<Map<String, Object>> measures = new ArrayList<>();
+        METRICS.forEach(metric -> measures.add(Map.of("metric", metric, "value", 10.0)));
+
+        return Map.of("measures", measures);
+    }
+
+    private Map<String, Object> componentTree(Map<String, String> parameters, Settings current) {
+        return page(parameters, current.filesPerProject(), "components", i -> {
+            List<Map<String, Object>> measures = new ArrayList<>();
+            FILE_METRICS.forEach(metric -> measures.add(Map.of("metric", metric, "value", 10.0)));
+
+            return Map.of("path", file(i, current), "measures", measures);
+        });
+    }
+
+    private Map<String, Object> page(Map<String, String> parameters,
+                                     int total,
+                                     String itemsField,
+                                     ItemFactory itemFactory) {
+        int pageIndex = Integer.parseInt(parameters.getOrDefault("p", "1"));
+        int pageSize = Integer.parseInt(parameters.getOrDefault("ps", "100"));
+        List<Map<String, Object>> items = new ArrayList<>();
+
+        for (int i = (pageIndex - 1) * pageSize; i < Math.min(total, pageIndex * pageSize); i++) {
+            items.add(itemFactory.create(i));
+        }
+
+        Map<String, Object> page = new LinkedHashMap<>();
+        page.put("paging", paging(pageIndex, pageSize, total));
+        page.put(itemsField, items);
+
+        return page;
+    }
+
+    private Map<String, Object> paging(int pageIndex, int pageSize, int total) {
+        return Map.of("pageIndex", pageIndex, "pageSize", pageSize, "total", total);
+    }
+
+    private String file(int item, Settings current) {
+        return "module_" + item % Math.max(1, current.filesPerProject()) + ".py";
+    }
+
+    private Map<String, String> parseQuery(String query) {
+        Map<String, String> parameters = new HashMap<>();
+        if (query == null) {
+            return parameters;
+        }
+
+        for (String parameter : query.split("&")) {
+            String[] keyValue = parameter.split("=", 2);
+            parameters.put(
+                    URLDecoder.decode(keyValue[0], StandardCharsets.UTF_8),
+                    keyValue.length > 1 ? URLDecoder.decode(keyValue[1], StandardCharsets.UTF_8) : "");
+        }
+
+        return parameters;
+    }
+
+    @FunctionalInterface
+    private interface ItemFactory {
+        Map<String, Object> create(int item);
+    }
+}
@@ -0,0 +1,51 @@
+package gr.aegean.mapper.row;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import gr.aegean.entity.AnalysisReportCacheEntry;
+
+
+class AnalysisReportCacheEntryRowMapperTest {
+    private AnalysisReportCacheEntryRowMapper underTest;
+
+    @BeforeEach
+    void setUp() {
+        underTest = new AnalysisReportCacheEntryRowMapper();
+    }
+
+    @Test
+    void shouldMapRowToAnalysisReportCacheEntry() throws SQLException {
+        try (ResultSet resultSet = mock(ResultSet.class)) {
+            // Arrange
+            LocalDateTime createdDate = LocalDateTime.now();
+            AnalysisReportCacheEntry expected = new AnalysisReportCacheEntry(
+                    "https://github.com/user/repo",
+                    "0123456789abcdef0123456789abcdef01234567",
+                    "{}",
+                    "{\"main.py\": {\"ncloc\": 10.0}}",
+                    createdDate);
+
+            when(resultSet.getString("project_url")).thenReturn("https://github.com/user/repo");
+            when(resultSet.getString("commit_sha")).thenReturn("0123456789abcdef0123456789abcdef01234567");
+            when(resultSet.getString("report")).thenReturn("{}");
+            when(resultSet.getString("file_measures")).thenReturn("{\"main.py\": {\"ncloc\": 10.0}}");
+            when(resultSet.getTimestamp("created_date")).thenReturn(Timestamp.valueOf(createdDate));
+
+            // Act
+            AnalysisReportCacheEntry actual = underTest.mapRow(resultSet, 1);
+
+            // Assert
+            assertThat(actual).isEqualTo(expected);
+        }
+    }
+}
@@ -0,0 +1,207 @@
+package gr.aegean.service.analysis;
+
+import gr.aegean.exception.ResourceNotFoundException;
+import gr.aegean.model.analysis.AnalysisJob;
+import gr.aegean.model.analysis.AnalysisJobListener;
+import gr.aegean.model.analysis.AnalysisJobStatus;
+import gr.aegean.model.analysis.AnalysisProgressEvent;
+import gr.aegean.model.analysis.AnalysisProgressStage;
+import gr.aegean.service.auth.JwtService;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.awaitility.Awaitility.await;
+import static org.mockito.Mockito.when;
+
+
+@ExtendWith(MockitoExtension.class)
+class AnalysisJobServiceTest {
+    @Mock
+    private JwtService jwtService;
+    private AnalysisJobService underTest;
+
+    @BeforeEach
+    void setup() {
+        underTest = new AnalysisJobService(jwtService, Duration.ofHours(1), Duration.ofMinutes(30));
+    }
+
+    @AfterEach
+    void tearDown() {
+        underTest.shutdown();
+    }
+
+    @Test
+    void shouldFindJob() {
+        //Arrange
+        AnalysisJob job = underTest.createJob(1);
+        when(jwtService.getSubject()).thenReturn("1");
+
+        //Act
+        AnalysisJob actual = underTest.findJob(job.getId());
+
+        //Assert
+        assertThat(actual).isSameAs(job);
+        assertThat(actual.getStatus()).isEqualTo(AnalysisJobStatus.QUEUED);
+    }
+
+    @Test
+    void shouldThrowResourceNotFoundExceptionWhenJobBelongsToAnotherUser() {
+        //Arrange
+        AnalysisJob job = underTest.createJob(1);
+        when(jwtService.getSubject()).thenReturn("2");
+
+        //Act Assert
+        assertThatThrownBy(() -> underTest.findJob(job.getId()))
+                .isInstanceOf(ResourceNotFoundException.class)
+                .hasMessage("No analysis job was found for job id: " + job.getId());
+    }
+
+    @Test
+    void shouldEvictFinishedJobsAfterRetention() {
+        //Arrange
+        underTest = new AnalysisJobService(jwtService, Duration.ZERO, Duration.ofMinutes(30));
+        AnalysisJob job = underTest.createJob(1);
+        job.complete(1);
+        when(jwtService.getSubject()).thenReturn("1");
+
+        //Act
+        underTest.createJob(1);
+
+        //Assert
+        assertThatThrownBy(() -> underTest.findJob(job.getId()))
+                .isInstanceOf(ResourceNotFoundException.class);
+    }
+
+    @Test
+    void shouldNotMoveJobBackwards() {
+        //Arrange
+        AnalysisJob job = underTest.createJob(1);
+
+        //Act
+        job.advanceTo(AnalysisJobStatus.FETCHING);
+        job.advanceTo(AnalysisJobStatus.CLONING);
+
+        //Assert
+        assertThat(job.getStatus()).isEqualTo(AnalysisJobStatus.FETCHING);
+    }
+
+    /*
+        The stages that were still running when the job was cancelled don't complete it afterwards.
+     */
+    @Test
+    void shouldCancelJob() {
+        //Arrange
+        AnalysisJob job = underTest.createJob(1);
+        List<String> hooks = new ArrayList<>();
+        job.onCancel(() -> hooks.add("stage"));
+        when(jwtService.getSubject()).thenReturn("1");
+
+        //Act
+        underTest.cancelJob(job.getId());
+        job.complete(1);
+
+        //Assert
+        assertThat(job.getStatus()).isEqualTo(AnalysisJobStatus.CANCELLED);
+        assertThat(job.getAnalysisId()).isNull();
+        assertThat(job.getErrorMessage()).isEqualTo("The analysis was cancelled");
+        assertThat(hooks).containsExactly("stage");
+    }
+
+    /*
+        A client that subscribes late still gets every event, and the job is finished once for every listener.
+     */
+    @Test
+    void shouldReplayRecordedEventsToLateSubscriber() {
+        //Arrange
+        AnalysisJob job = underTest.createJob(1);
+        job.record("https://github.com/user/repo", AnalysisProgressStage.CLONED);
+        List<AnalysisProgressStage> stages = new CopyOnWriteArrayList<>();
+        List<AnalysisJobStatus> statuses = new CopyOnWriteArrayList<>();
+
+        //Act
+        job.subscribe(new AnalysisJobListener() {
+            @Override
+            public void onProgress(AnalysisProgressEvent event) {
+                stages.add(event.stage());
+            }
+
+            @Override
+            public void onFinished(AnalysisJob finishedJob) {
+                statuses.add(finishedJob.getStatus());
+            }
+        });
+        job.record("https://github.com/user/repo", AnalysisProgressStage.SCORED);
+        job.complete(1);
+        job.record("https://github.com/user/repo", AnalysisProgressStage.FAILED);
+
+        //Assert
+        await().atMost(Duration.ofSeconds(5)).until(() -> !statuses.isEmpty());
+        assertThat(stages).containsExactly(AnalysisProgressStage.CLONED, AnalysisProgressStage.SCORED);
+        assertThat(statuses).containsExactly(AnalysisJobStatus.DONE);
+        assertThat(job.getEvents()).hasSize(2);
+    }
+
+    /*
+        A client that stopped reading blocks the send to its stream, which must not block the stages that report to
+        the job or the cancellation of the job. The events that were recorded meanwhile are still sent in order.
+     */
+    @Test
+    void shouldNotBlockStagesWhileListenerIsBlocked() throws Exception {
+        //Arrange
+        AnalysisJob job = underTest.createJob(1);
+        CountDownLatch sending = new CountDownLatch(1);
+        CountDownLatch unblock = new CountDownLatch(1);
+        List<AnalysisProgressStage> stages = new CopyOnWriteArrayList<>();
+        List<String> notifiedBy = new CopyOnWriteArrayList<>();
+        job.subscribe(new AnalysisJobListener() {
+            @Override
+            public void onProgress(AnalysisProgressEvent event) {
+                notifiedBy.add(Thread.currentThread().getName());
+                stages.add(event.stage());
+                sending.countDown();
+                try {
+                    unblock.await(5, TimeUnit.SECONDS);
+                } catch (InterruptedException ie) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+
+            @Override
+            public void onFinished(AnalysisJob finishedJob) {
+                notifiedBy.add(Thread.currentThread().getName());
+            }
+        });
+        job.record("https://github.com/user/repo", AnalysisProgressStage.CLONED);
+        sending.await(5, TimeUnit.SECONDS);
+
+        //Act
+        CompletableFuture.runAsync(() -> {
+            job.record("https://github.com/user/repo", AnalysisProgressStage.SCORED);
+            job.cancel();
+        }).get(1, TimeUnit.SECONDS);
+
+        //Assert
+        assertThat(job.getStatus()).isEqualTo(AnalysisJobStatus.CANCELLED);
+        assertThat(job.getEvents()).hasSize(2);
+
+        unblock.countDown();
+        await().atMost(Duration.ofSeconds(5)).until(() -> notifiedBy.size() == 3);
+        assertThat(stages).containsExactly(AnalysisProgressStage.CLONED, AnalysisProgressStage.SCORED);
+        assertThat(notifiedBy).allMatch(name -> name.startsWith("JobEvents-"));
+    }
+}
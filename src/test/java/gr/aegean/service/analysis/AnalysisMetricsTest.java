@@ -0,0 +1,82 @@
+package gr.aegean.service.analysis;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeoutException;
+
+import gr.aegean.exception.StageTimeoutException;
+import gr.aegean.model.analysis.ProjectProfile;
+import gr.aegean.model.analysis.TimedStage;
+
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+
+class AnalysisMetricsTest {
+    private AnalysisMetrics underTest;
+    private SimpleMeterRegistry meterRegistry;
+
+    @BeforeEach
+    void setup() {
+        meterRegistry = new SimpleMeterRegistry();
+        underTest = new AnalysisMetrics(meterRegistry);
+    }
+
+    /*
+        The bytes of files in languages that were not detected, e.g. a vendored library, don't count towards the size.
+     */
+    @Test
+    void shouldTagProjectWithMainLanguageAndSizeBucket() {
+        //Arrange
+        ProjectProfile profile = new ProjectProfile(
+                Path.of("project"),
+                Set.of(),
+                Set.of(),
+                3,
+                60 * 1024 * 1024,
+                Map.of(),
+                Map.of("Python", 2L * 1024 * 1024, "Shell", 1024L, "C", 50L * 1024 * 1024));
+
+        //Act
+        Tags actual = AnalysisMetrics.tagsOf(profile, Map.of("Python", 99.9, "Shell", 0.1));
+
+        //Assert
+        assertThat(actual).isEqualTo(Tags.of("language", "Python", "size", "medium"));
+    }
+
+    @Test
+    void shouldTimeStageTaggedWithProject() {
+        //Arrange
+        Tags projectTags = Tags.of("language", "Java", "size", "small");
+
+        //Act
+        String actual = underTest.time(TimedStage.UTF, projectTags, () -> "report");
+
+        //Assert
+        Timer timer = meterRegistry.get("analysis.stage.duration")
+                .tags("stage", "utf", "language", "Java", "size", "small")
+                .timer();
+        assertThat(actual).isEqualTo("report");
+        assertThat(timer.count()).isEqualTo(1);
+    }
+
+    @Test
+    void shouldCountFailuresByCause() {
+        //Act
+        underTest.recordFailure(new StageTimeoutException("The scan stage did not finish within PT30M"));
+        underTest.recordFailure(new TimeoutException());
+
+        //Assert
+        assertThat(meterRegistry.get("analysis.repositories.failed").tag("cause", "timeout").counter().count())
+                .isEqualTo(1);
+        assertThat(meterRegistry.get("analysis.repositories.failed").tag("cause", "error").counter().count())
+                .isEqualTo(1);
+    }
+}
@@ -0,0 +1,231 @@
+package gr.aegean.service.analysis;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.env.MockEnvironment;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.awaitility.Awaitility.await;
+
+import java.util.Optional;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import gr.aegean.exception.StageTimeoutException;
+import gr.aegean.model.analysis.AnalysisJob;
+import gr.aegean.model.analysis.AnalysisJobStatus;
+import gr.aegean.model.analysis.ExecutionMode;
+import gr.aegean.model.analysis.PipelineStage;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+
+class AnalysisPipelineTest {
+    private AnalysisPipeline underTest;
+    private SimpleMeterRegistry meterRegistry;
+    private AnalysisJob job;
+
+    @BeforeEach
+    void setup() {
+        MockEnvironment environment = new MockEnvironment();
+        for (PipelineStage stage : PipelineStage.values()) {
+            environment.setProperty("analysis.pipeline." + stage.key() + ".threads", "1");
+            environment.setProperty("analysis.pipeline." + stage.key() + ".queueCapacity", "10");
+        }
+        environment.setProperty("analysis.pipeline.scan.deadline", "100ms");
+        meterRegistry = new SimpleMeterRegistry();
+        job = new AnalysisJob(1);
+
+        underTest = new AnalysisPipeline(Runnable::run, ExecutionMode.PLATFORM, environment, meterRegistry);
+    }
+
+    @AfterEach
+    void tearDown() {
+        underTest.shutdown();
+    }
+
+    @Test
+    void shouldRunEachStageOnItsOwnPool() throws Exception {
+        //Arrange Act
+        String actual = underTest.thenAsync(
+                        underTest.supplyAsync(
+                                PipelineStage.CLONE,
+                                job,
+                                () -> Optional.of(Thread.currentThread().getName())),
+                        PipelineStage.SCAN,
+                        job,
+                        cloneThread -> Optional.of(cloneThread + " " + Thread.currentThread().getName()))
+                .get(5, TimeUnit.SECONDS)
+                .orElseThrow();
+
+        //Assert
+        assertThat(actual).matches("Clone-\\d+ Scan-\\d+");
+    }
+
+    @Test
+    void shouldSkipStageWhenPreviousStageReturnedEmpty() throws Exception {
+        //Arrange Act
+        Optional<String> actual = underTest.<String, String>thenAsync(
+                        underTest.supplyAsync(PipelineStage.DETECT, job, Optional::empty),
+                        PipelineStage.SCAN,
+                        job,
+                        value -> {
+                            throw new IllegalStateException();
+                        })
+                .get(5, TimeUnit.SECONDS);
+
+        //Assert
+        assertThat(actual).isEmpty();
+    }
+
+    /*
+        The pool counts a task as completed only after the worker is done with it, which can be after its future
+        completes.
+     */
+    @Test
+    void shouldPublishQueueDepthAndCompletedTasksPerStage() throws Exception {
+        //Arrange
+        underTest.supplyAsync(PipelineStage.FETCH, job, () -> true).get(5, TimeUnit.SECONDS);
+
+        //Act
+        double queued = meterRegistry.get("analysis.pipeline.executor.queued").tag("stage", "fetch").gauge().value();
+
+        //Assert
+        assertThat(queued).isZero();
+        await().atMost(5, TimeUnit.SECONDS).until(() -> meterRegistry.get("analysis.pipeline.executor.completed")
+                .tag("stage", "fetch")
+                .functionCounter()
+                .count() == 1);
+    }
+
+    /*
+        The hook stands in for a container or a process that only stops when it's killed.
+     */
+    @Test
+    void shouldCancelStageThatRunsPastItsDeadline() throws Exception {
+        //Arrange
+        CountDownLatch killed = new CountDownLatch(1);
+
+        //Act
+        CompletableFuture<Boolean> actual = underTest.supplyAsync(PipelineStage.SCAN, job, () -> {
+            CancellationScope.current().onCancel(killed::countDown);
+            awaitQuietly(killed);
+
+            return true;
+        });
+
+        //Assert
+        assertThatThrownBy(() -> actual.get(5, TimeUnit.SECONDS))
+                .isInstanceOf(ExecutionException.class)
+                .hasCauseInstanceOf(StageTimeoutException.class);
+        assertThat(killed.getCount()).isZero();
+    }
+
+    /*
+        The scan waits for the permit longer than its deadline, but the deadline only starts once it gets the permit.
+     */
+    @Test
+    void shouldNotCountPermitWaitAgainstDeadline() throws Exception {
+        //Arrange
+        ConcurrencyLimits concurrencyLimits = new ConcurrencyLimits(1, 1);
+        CountDownLatch permitTaken = new CountDownLatch(1);
+        CompletableFuture<Boolean> otherScan = CompletableFuture.supplyAsync(() -> concurrencyLimits.withScanPermit(
+                () -> {
+                    permitTaken.countDown();
+                    try {
+                        Thread.sleep(300);
+                    } catch (InterruptedException ie) {
+                        Thread.currentThread().interrupt();
+                    }
+
+                    return true;
+                }));
+        permitTaken.await(5, TimeUnit.SECONDS);
+
+        //Act
+        CompletableFuture<Boolean> actual = underTest.supplyAsync(
+                PipelineStage.SCAN,
+                job,
+                () -> concurrencyLimits.withScanPermit(() -> true));
+
+        //Assert
+        assertThat(actual.get(5, TimeUnit.SECONDS)).isTrue();
+        assertThat(otherScan.get(5, TimeUnit.SECONDS)).isTrue();
+    }
+
+    @Test
+    void shouldCancelRunningStageWhenJobIsCancelled() throws Exception {
+        //Arrange
+        CountDownLatch started = new CountDownLatch(1);
+        CompletableFuture<Boolean> actual = underTest.supplyAsync(PipelineStage.FETCH, job, () -> {
+            started.countDown();
+            try {
+                Thread.sleep(TimeUnit.SECONDS.toMillis(10));
+            } catch (InterruptedException ie) {
+                Thread.currentThread().interrupt();
+            }
+
+            return true;
+        });
+        started.await(5, TimeUnit.SECONDS);
+
+        //Act
+        job.cancel();
+
+        //Assert
+        assertThatThrownBy(() -> actual.get(5, TimeUnit.SECONDS))
+                .isInstanceOf(ExecutionException.class)
+                .hasCauseInstanceOf(CancellationException.class);
+        assertThat(job.getStatus()).isEqualTo(AnalysisJobStatus.CANCELLED);
+    }
+
+    /*
+        The detect stage has one thread and room for one task. The third task waits in the thread that submits it, and
+        still runs on the stage once the stage catches up.
+     */
+    @Test
+    void shouldBlockSubmitterWhenStageQueueIsFull() throws Exception {
+        //Arrange
+        MockEnvironment environment = new MockEnvironment();
+        for (PipelineStage stage : PipelineStage.values()) {
+            environment.setProperty("analysis.pipeline." + stage.key() + ".threads", "1");
+            environment.setProperty("analysis.pipeline." + stage.key() + ".queueCapacity", "1");
+        }
+        underTest.shutdown();
+        underTest = new AnalysisPipeline(Runnable::run, ExecutionMode.PLATFORM, environment, meterRegistry);
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        underTest.supplyAsync(PipelineStage.DETECT, job, () -> {
+            started.countDown();
+            awaitQuietly(release);
+
+            return true;
+        });
+        started.await(5, TimeUnit.SECONDS);
+        underTest.supplyAsync(PipelineStage.DETECT, job, () -> true);
+
+        //Act
+        CompletableFuture<CompletableFuture<String>> submitted = CompletableFuture.supplyAsync(
+                () -> underTest.supplyAsync(PipelineStage.DETECT, job, () -> Thread.currentThread().getName()));
+
+        //Assert
+        Thread.sleep(200);
+        assertThat(submitted).isNotDone();
+
+        release.countDown();
+        assertThat(submitted.get(5, TimeUnit.SECONDS).get(5, TimeUnit.SECONDS)).startsWith("Detect-");
+    }
+
+    private void awaitQuietly(CountDownLatch latch) {
+        try {
+            latch.await(10, TimeUnit.SECONDS);
+        } catch (InterruptedException ie) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,163 @@
+package gr.aegean.service.analysis;
+
+import gr.aegean.entity.AnalysisReport;
+import gr.aegean.entity.AnalysisReportCacheEntry;
+import gr.aegean.model.analysis.PreviousAnalysis;
+import gr.aegean.repository.AnalysisReportCacheRepository;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.Map;
+import java.util.Optional;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+
+@ExtendWith(MockitoExtension.class)
+class AnalysisReportCacheServiceTest {
+    @Mock
+    private AnalysisReportCacheRepository cacheRepository;
+    private AnalysisReportCacheService underTest;
+    private static final String PROJECT_URL = "https://github.com/user/repo";
+    private static final String COMMIT_SHA = "0123456789abcdef0123456789abcdef01234567";
+
+    @BeforeEach
+    void setup() {
+        underTest = new AnalysisReportCacheService(cacheRepository, Duration.ofDays(1), 2);
+    }
+
+    @Test
+    void shouldReturnReportFromMemoryWithoutQueryingTheDatabase() {
+        //Arrange
+        AnalysisReport report = new AnalysisReport();
+        report.setLanguages(Map.of("Python", 100.0));
+        underTest.saveReport(PROJECT_URL, COMMIT_SHA, report);
+
+        //Act
+        Optional<AnalysisReport> actual = underTest.findReport(PROJECT_URL, COMMIT_SHA);
+
+        //Assert
+        assertThat(actual).isPresent();
+        assertThat(actual.get().getLanguages()).containsEntry("Python", 100.0);
+        verify(cacheRepository, never()).findEntry(any(), any(), any());
+    }
+
+    /*
+        Every hit returns its own copy, so setting the analysis id of one report can not leak into the next hit.
+     */
+    @Test
+    void shouldReturnCopyOfCachedReport() {
+        //Arrange
+        underTest.saveReport(PROJECT_URL, COMMIT_SHA, new AnalysisReport());
+
+        //Act
+        AnalysisReport first = underTest.findReport(PROJECT_URL, COMMIT_SHA).orElseThrow();
+        first.setAnalysisId(1);
+        AnalysisReport second = underTest.findReport(PROJECT_URL, COMMIT_SHA).orElseThrow();
+
+        //Assert
+        assertThat(second).isNotSameAs(first);
+        assertThat(second.getAnalysisId()).isNull();
+    }
+
+    @Test
+    void shouldCopyReport() {
+        //Arrange
+        AnalysisReport report = new AnalysisReport();
+        report.setLanguages(Map.of("Python", 100.0));
+        report.setAnalysisId(1);
+
+        //Act
+        AnalysisReport actual = underTest.copyReport(report);
+
+        //Assert
+        assertThat(actual).isNotSameAs(report);
+        assertThat(actual.getLanguages()).containsEntry("Python", 100.0);
+        verify(cacheRepository, never()).saveEntry(any());
+    }
+
+    @Test
+    void shouldFindLatestReportWithFileMeasures() {
+        //Arrange
+        AnalysisReportCacheEntry entry = new AnalysisReportCacheEntry(
+                PROJECT_URL,
+                COMMIT_SHA,
+                "{\"languages\": {\"Go\": 100.0}}",
+                "{\"main.go\": {\"ncloc\": 10.0}}",
+                LocalDateTime.now());
+        when(cacheRepository.findLatestEntry(eq(PROJECT_URL), any(LocalDateTime.class)))
+                .thenReturn(Optional.of(entry));
+
+        //Act
+        Optional<PreviousAnalysis> actual = underTest.findLatestReport(PROJECT_URL);
+
+        //Assert
+        assertThat(actual).isPresent();
+        assertThat(actual.get().commitSha()).isEqualTo(COMMIT_SHA);
+        assertThat(actual.get().report().getLanguages()).containsEntry("Go", 100.0);
+        assertThat(actual.get().report().getFileMeasures()).containsEntry("main.go", Map.of("ncloc", 10.0));
+    }
+
+    @Test
+    void shouldFallBackToDatabaseOnMemoryMissAndKeepEntryInMemory() {
+        //Arrange
+        AnalysisReportCacheEntry entry = new AnalysisReportCacheEntry(
+                PROJECT_URL,
+                COMMIT_SHA,
+                "{\"languages\": {\"Go\": 100.0}}",
+                null,
+                LocalDateTime.now());
+        when(cacheRepository.findEntry(eq(PROJECT_URL), eq(COMMIT_SHA), any(LocalDateTime.class)))
+                .thenReturn(Optional.of(entry));
+
+        //Act
+        underTest.findReport(PROJECT_URL, COMMIT_SHA);
+        Optional<AnalysisReport> actual = underTest.findReport(PROJECT_URL, COMMIT_SHA);
+
+        //Assert
+        assertThat(actual).isPresent();
+        assertThat(actual.get().getLanguages()).containsEntry("Go", 100.0);
+        verify(cacheRepository, times(1)).findEntry(eq(PROJECT_URL), eq(COMMIT_SHA), any(LocalDateTime.class));
+    }
+
+    @Test
+    void shouldEvictLeastRecentlyUsedEntryWhenMaxEntriesIsExceeded() {
+        //Arrange
+        underTest.saveReport(PROJECT_URL, "a", new AnalysisReport());
+        underTest.saveReport(PROJECT_URL, "b", new AnalysisReport());
+        underTest.findReport(PROJECT_URL, "a");
+
+        //Act
+        underTest.saveReport(PROJECT_URL, "c", new AnalysisReport());
+        Optional<AnalysisReport> actual = underTest.findReport(PROJECT_URL, "b");
+
+        //Assert
+        assertThat(actual).isEmpty();
+        verify(cacheRepository, times(1)).findEntry(eq(PROJECT_URL), eq("b"), any(LocalDateTime.class));
+    }
+
+    @Test
+    void shouldNotReturnExpiredEntry() {
+        //Arrange
+        underTest = new AnalysisReportCacheService(cacheRepository, Duration.ZERO, 2);
+        underTest.saveReport(PROJECT_URL, COMMIT_SHA, new AnalysisReport());
+
+        //Act
+        Optional<AnalysisReport> actual = underTest.findReport(PROJECT_URL, COMMIT_SHA);
+
+        //Assert
+        assertThat(actual).isEmpty();
+    }
+}
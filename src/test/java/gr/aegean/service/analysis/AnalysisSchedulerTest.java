@@ -0,0 +1,173 @@
+package gr.aegean.service.analysis;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Supplier;
+
+import gr.aegean.model.analysis.ExecutionMode;
+
+
+/*
+    The executor only collects the tasks it's given, and every pipeline is a future the test completes, so each test
+    decides when a pipeline starts and when it's done.
+ */
+class AnalysisSchedulerTest {
+    private AnalysisScheduler underTest;
+    private List<Runnable> dispatched;
+    private Map<String, CompletableFuture<String>> started;
+
+    @BeforeEach
+    void setup() {
+        dispatched = new ArrayList<>();
+        started = new LinkedHashMap<>();
+        underTest = new AnalysisScheduler(dispatched::add, ExecutionMode.PLATFORM, 2, 100, 2);
+    }
+
+    @Test
+    void shouldNotStartMorePipelinesThanMaxConcurrentTasks() {
+        //Arrange
+        for (int i = 0; i < 5; i++) {
+            underTest.submit(1, pipeline("1-" + i));
+        }
+
+        //Act
+        dispatched.forEach(Runnable::run);
+
+        //Assert
+        assertThat(started).containsOnlyKeys("1-0", "1-1");
+        assertThat(underTest.getQueuedTaskCount(1)).isEqualTo(3);
+    }
+
+    /*
+        User 1 submits a batch first, user 2 submits a single repository afterwards. The next free slot goes to user 2,
+        because user 1 was served more recently.
+     */
+    @Test
+    void shouldStartPipelineOfLeastRecentlyServedUserWhenSlotIsFree() {
+        //Arrange
+        for (int i = 0; i < 5; i++) {
+            underTest.submit(1, pipeline("1-" + i));
+        }
+        underTest.submit(2, pipeline("2-0"));
+        dispatched.get(0).run();
+        dispatched.get(1).run();
+
+        //Act
+        started.get("1-0").complete("1-0");
+        dispatched.get(2).run();
+
+        //Assert
+        assertThat(started).containsOnlyKeys("1-0", "1-1", "2-0");
+        assertThat(underTest.getQueuedTaskCount(2)).isZero();
+    }
+
+    @Test
+    void shouldNotExceedMaxConcurrentTasksPerUser() {
+        //Arrange
+        underTest = new AnalysisScheduler(dispatched::add, ExecutionMode.PLATFORM, 3, 100, 1);
+
+        //Act
+        underTest.submit(1, pipeline("1-0"));
+        underTest.submit(1, pipeline("1-1"));
+        underTest.submit(2, pipeline("2-0"));
+
+        //Assert
+        assertThat(dispatched).hasSize(2);
+        dispatched.get(0).run();
+        dispatched.get(1).run();
+        assertThat(started).containsOnlyKeys("1-0", "2-0");
+    }
+
+    @Test
+    void shouldCompleteFutureWhenPipelineCompletes() {
+        //Arrange
+        CompletableFuture<String> actual = underTest.submit(1, pipeline("1-0"));
+        dispatched.get(0).run();
+
+        //Act
+        started.get("1-0").complete("report");
+
+        //Assert
+        assertThat(actual).isCompletedWithValue("report");
+    }
+
+    @Test
+    void shouldFailFutureAndFreeSlotWhenPipelineFailsToStart() {
+        //Arrange
+        underTest = new AnalysisScheduler(dispatched::add, ExecutionMode.PLATFORM, 1, 100, 1);
+        CompletableFuture<String> actual = underTest.submit(1, () -> {
+            throw new IllegalStateException();
+        });
+        underTest.submit(1, pipeline("1-1"));
+
+        //Act
+        dispatched.get(0).run();
+
+        //Assert
+        assertThat(actual).isCompletedExceptionally();
+        assertThat(dispatched).hasSize(2);
+    }
+
+    /*
+        The rejected pipeline is not started in the calling thread, it waits at the head of the queue of its user until
+        the running pipeline frees its slot.
+     */
+    @Test
+    void shouldQueuePipelineAgainWhenExecutorRejectsIt() {
+        //Arrange
+        AtomicBoolean rejecting = new AtomicBoolean();
+        underTest = new AnalysisScheduler(task -> {
+            if (rejecting.get()) {
+                throw new RejectedExecutionException();
+            }
+            dispatched.add(task);
+        }, ExecutionMode.PLATFORM, 2, 100, 2);
+        underTest.submit(1, pipeline("1-0"));
+        dispatched.get(0).run();
+        rejecting.set(true);
+
+        //Act
+        underTest.submit(1, pipeline("1-1"));
+        underTest.submit(1, pipeline("1-2"));
+
+        //Assert
+        assertThat(started).containsOnlyKeys("1-0");
+        assertThat(underTest.getQueuedTaskCount(1)).isEqualTo(2);
+
+        rejecting.set(false);
+        started.get("1-0").complete("1-0");
+        dispatched.get(1).run();
+        dispatched.get(2).run();
+        assertThat(started).containsOnlyKeys("1-0", "1-1", "1-2");
+    }
+
+    @Test
+    void shouldFailPipelineWhenExecutorRejectsItAndNothingIsRunning() {
+        //Arrange
+        underTest = new AnalysisScheduler(task -> {
+            throw new RejectedExecutionException();
+        }, ExecutionMode.PLATFORM, 2, 100, 2);
+
+        //Act
+        CompletableFuture<String> actual = underTest.submit(1, pipeline("1-0"));
+
+        //Assert
+        assertThat(actual).isCompletedExceptionally();
+        assertThat(started).isEmpty();
+        assertThat(underTest.getQueuedTaskCount(1)).isZero();
+    }
+
+    private Supplier<CompletableFuture<String>> pipeline(String name) {
+        return () -> started.computeIfAbsent(name, key -> new CompletableFuture<>());
+    }
+}
@@ -40,9 +40,13 @@ import static org.mockito.Mockito.when;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.type.CollectionType;
 
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
 
 @ExtendWith(MockitoExtension.class)
 class AnalysisServiceTest extends AbstractUnitTest {
+    @Mock
+    private ProjectProfileService projectProfileService;
     @Mock
     private LanguageService languageService;
     @Mock
@@ -77,14 +81,17 @@ class AnalysisServiceTest extends AbstractUnitTest {
         AnalysisRepository analysisRepository = new AnalysisRepository(
                 getJdbcTemplate());
         underTest = new AnalysisService(
+                projectProfileService,
                 languageService,
                 sonarService,
                 metricService,
                 assessmentService,
                 dockerService,
+                new ConcurrencyLimits(1, 1),
                 jwtService,
                 treeService,
-                analysisRepository
+                analysisRepository,
+                new AnalysisMetrics(new SimpleMeterRegistry())
         );
 
         UserRepository userRepository = new UserRepository(getJdbcTemplate());
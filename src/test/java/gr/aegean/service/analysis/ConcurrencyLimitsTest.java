@@ -0,0 +1,67 @@
+package gr.aegean.service.analysis;
+
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+
+class ConcurrencyLimitsTest {
+    private final ConcurrencyLimits underTest = new ConcurrencyLimits(1, 1);
+
+    @Test
+    void shouldWaitForPermitWhenLimitIsReached() throws Exception {
+        //Arrange
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        AtomicBoolean secondCloneRan = new AtomicBoolean();
+
+        CompletableFuture<Boolean> first = CompletableFuture.supplyAsync(() -> underTest.withClonePermit(() -> {
+            started.countDown();
+            await(release);
+
+            return true;
+        }));
+        started.await(5, TimeUnit.SECONDS);
+
+        //Act
+        CompletableFuture<Boolean> second = CompletableFuture.supplyAsync(() -> underTest.withClonePermit(
+                () -> secondCloneRan.getAndSet(true)));
+
+        //Assert
+        Thread.sleep(100);
+        assertThat(secondCloneRan).isFalse();
+
+        release.countDown();
+        assertThat(first.get(5, TimeUnit.SECONDS)).isTrue();
+        second.get(5, TimeUnit.SECONDS);
+        assertThat(secondCloneRan).isTrue();
+    }
+
+    @Test
+    void shouldReleasePermitWhenScanFails() {
+        //Arrange
+        assertThatThrownBy(() -> underTest.withScanPermit(() -> {
+            throw new IllegalStateException();
+        })).isInstanceOf(IllegalStateException.class);
+
+        //Act
+        boolean actual = underTest.withScanPermit(() -> true);
+
+        //Assert
+        assertThat(actual).isTrue();
+    }
+
+    private void await(CountDownLatch latch) {
+        try {
+            latch.await(5, TimeUnit.SECONDS);
+        } catch (InterruptedException ie) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
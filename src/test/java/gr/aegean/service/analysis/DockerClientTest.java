@@ -0,0 +1,194 @@
+package gr.aegean.service.analysis;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReference;
+
+import gr.aegean.exception.ServerErrorException;
+
+
+/*
+    The daemon is replaced by an http server on a local port, which the client reaches through a tcp docker host.
+ */
+class DockerClientTest {
+    private DockerClient underTest;
+    private HttpServer server;
+    @TempDir
+    private Path projectPath;
+
+    @BeforeEach
+    void setup() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        server.start();
+
+        underTest = new DockerClient("tcp://localhost:" + server.getAddress().getPort(), "v1.41");
+    }
+
+    @AfterEach
+    void tearDown() throws IOException {
+        underTest.close();
+        server.stop(0);
+    }
+
+    @Test
+    void shouldReturnExitCodeOfContainer() throws IOException {
+        //Arrange
+        respond("/v1.41/containers/id/wait", 200, "{\"StatusCode\":3,\"Error\":null}".getBytes());
+
+        //Act
+        int actual = underTest.waitContainer("id");
+
+        //Assert
+        assertThat(actual).isEqualTo(3);
+    }
+
+    @Test
+    void shouldCreateContainerAndReturnItsId() throws IOException {
+        //Arrange
+        AtomicReference<String> requestBody = new AtomicReference<>();
+        server.createContext("/v1.41/containers/create", exchange -> {
+            requestBody.set(new String(exchange.getRequestBody().readAllBytes(), StandardCharsets.UTF_8));
+            send(exchange, 201, "{\"Id\":\"abc\",\"Warnings\":[]}".getBytes());
+        });
+
+        //Act
+        String actual = underTest.createContainer(
+                "name",
+                "linguist",
+                List.of("github-linguist", "/code"),
+                List.of("/path:/code"),
+                null);
+
+        //Assert
+        assertThat(actual).isEqualTo("abc");
+        assertThat(requestBody.get())
+                .contains("\"Image\":\"linguist\"")
+                .contains("\"Binds\":[\"/path:/code\"]");
+    }
+
+    /*
+        Lines can be split across frames, and stdout and stderr frames can be interleaved.
+     */
+    @Test
+    void shouldDemultiplexContainerLogsIntoLines() throws IOException {
+        //Arrange
+        ByteArrayOutputStream frames = new ByteArrayOutputStream();
+        frames.write(frame(1, "[INFO] Build"));
+        frames.write(frame(2, "warning\n"));
+        frames.write(frame(1, "ing\n[INFO] Done\n"));
+        respond("/v1.41/containers/id/logs", 200, frames.toByteArray());
+        List<String> actual = new ArrayList<>();
+
+        //Act
+        underTest.streamLogs("id", actual::add);
+
+        //Assert
+        assertThat(actual).containsExactly("warning", "[INFO] Building", "[INFO] Done");
+    }
+
+    @Test
+    void shouldThrowServerErrorExceptionWhenDockerRespondsWithError() {
+        //Arrange
+        respond("/v1.41/containers/id/start", 404, "{\"message\":\"No such container: id\"}".getBytes());
+
+        //Act Assert
+        assertThatThrownBy(() -> underTest.startContainer("id"))
+                .isInstanceOf(ServerErrorException.class);
+    }
+
+    /*
+        Names longer than 100 bytes are written in a pax header.
+     */
+    @Test
+    void shouldSendProjectAsTarArchiveWhenBuildingImage() throws IOException {
+        //Arrange
+        String longName = "a".repeat(120) + ".txt";
+        Files.writeString(projectPath.resolve("Dockerfile"), "FROM maven");
+        Files.writeString(projectPath.resolve(longName), "content");
+        Files.createDirectories(projectPath.resolve(".git"));
+        Files.writeString(projectPath.resolve(".git/HEAD"), "ref: refs/heads/main");
+
+        AtomicReference<byte[]> requestBody = new AtomicReference<>();
+        server.createContext("/v1.41/build", exchange -> {
+            requestBody.set(exchange.getRequestBody().readAllBytes());
+            send(exchange, 200, "{\"stream\":\"Step 1/1 : FROM maven\\n\"}\r\n".getBytes());
+        });
+        List<String> output = new ArrayList<>();
+
+        //Act
+        underTest.buildImage("tag", projectPath, output::add);
+
+        //Assert
+        byte[] tar = requestBody.get();
+        String content = new String(tar, StandardCharsets.UTF_8);
+
+        assertThat(tar.length % 512).isZero();
+        assertThat(content)
+                .contains("Dockerfile")
+                .contains("FROM maven")
+                .contains("path=" + longName)
+                .doesNotContain("refs/heads/main");
+        assertThat(output).containsExactly("Step 1/1 : FROM maven");
+    }
+
+    @Test
+    void shouldThrowServerErrorExceptionWhenBuildFails() throws IOException {
+        //Arrange
+        Files.writeString(projectPath.resolve("Dockerfile"), "FROM maven");
+        server.createContext("/v1.41/build", exchange -> {
+            exchange.getRequestBody().readAllBytes();
+            send(exchange, 200, "{\"error\":\"failed\",\"errorDetail\":{\"message\":\"failed\"}}".getBytes());
+        });
+
+        //Act Assert
+        assertThatThrownBy(() -> underTest.buildImage("tag", projectPath, line -> { }))
+                .isInstanceOf(ServerErrorException.class);
+    }
+
+    private void respond(String path, int status, byte[] body) {
+        server.createContext(path, exchange -> send(exchange, status, body));
+    }
+
+    /*
+        A length of 0 makes the server send the body in chunks.
+     */
+    private void send(HttpExchange exchange, int status, byte[] body) throws IOException {
+        exchange.sendResponseHeaders(status, 0);
+
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(body);
+        }
+    }
+
+    private byte[] frame(int stream, String payload) {
+        byte[] bytes = payload.getBytes(StandardCharsets.UTF_8);
+        byte[] frame = new byte[8 + bytes.length];
+
+        frame[0] = (byte) stream;
+        frame[4] = (byte) (bytes.length >>> 24);
+        frame[5] = (byte) (bytes.length >>> 16);
+        frame[6] = (byte) (bytes.length >>> 8);
+        frame[7] = (byte) bytes.length;
+        System.arraycopy(bytes, 0, frame, 8, bytes.length);
+
+        return frame;
+    }
+}
@@ -0,0 +1,91 @@
+package gr.aegean.service.analysis;
+
+import org.eclipse.jgit.api.Git;
+import org.eclipse.jgit.api.errors.GitAPIException;
+import org.eclipse.jgit.revwalk.RevCommit;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Optional;
+import java.util.Set;
+
+
+@ExtendWith(MockitoExtension.class)
+class GitHubServiceTest {
+    @Mock
+    private MirrorService mirrorService;
+    private GitHubService underTest;
+    @TempDir
+    private Path projectPath;
+
+    @BeforeEach
+    void setup() {
+        underTest = new GitHubService(mirrorService);
+    }
+
+    @Test
+    void shouldFindFilesChangedSincePreviousCommit() throws IOException, GitAPIException {
+        //Arrange
+        String previousCommitSha;
+        try (Git git = Git.init().setDirectory(projectPath.toFile()).call()) {
+            Files.writeString(projectPath.resolve("unchanged.py"), "print(1)");
+            Files.writeString(projectPath.resolve("modified.py"), "print(2)");
+            Files.writeString(projectPath.resolve("deleted.py"), "print(3)");
+            previousCommitSha = commit(git, "first").name();
+
+            Files.writeString(projectPath.resolve("modified.py"), "print(4)");
+            Files.delete(projectPath.resolve("deleted.py"));
+            Files.createDirectories(projectPath.resolve("src"));
+            Files.writeString(projectPath.resolve("src/added.py"), "print(5)");
+            commit(git, "second");
+        }
+
+        //Act
+        Optional<Set<String>> actual = underTest.findChangedFiles(projectPath, previousCommitSha);
+
+        //Assert
+        assertThat(actual).hasValueSatisfying(changedFiles -> assertThat(changedFiles)
+                .containsExactlyInAnyOrder("modified.py", "deleted.py", "src/added.py"));
+    }
+
+    /*
+        There is no remote to fetch a missing commit from.
+     */
+    @Test
+    void shouldReturnEmptyOptionalWhenPreviousCommitCanNotBeFound() throws IOException, GitAPIException {
+        //Arrange
+        try (Git git = Git.init().setDirectory(projectPath.toFile()).call()) {
+            Files.writeString(projectPath.resolve("main.py"), "print(1)");
+            commit(git, "first");
+        }
+
+        //Act
+        Optional<Set<String>> actual = underTest.findChangedFiles(
+                projectPath,
+                "0123456789abcdef0123456789abcdef01234567");
+
+        //Assert
+        assertThat(actual).isEmpty();
+    }
+
+    private RevCommit commit(Git git, String message) throws GitAPIException {
+        git.add().addFilepattern(".").call();
+        git.add().addFilepattern(".").setUpdate(true).call();
+
+        return git.commit()
+                .setMessage(message)
+                .setAuthor("user", "user@example.com")
+                .setCommitter("user", "user@example.com")
+                .setSign(false)
+                .call();
+    }
+}
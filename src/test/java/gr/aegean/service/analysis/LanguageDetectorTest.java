@@ -0,0 +1,92 @@
+package gr.aegean.service.analysis;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.Optional;
+
+
+class LanguageDetectorTest {
+    private LanguageDetector underTest;
+    @TempDir
+    private Path projectPath;
+
+    @BeforeEach
+    void setup() {
+        underTest = new LanguageDetector();
+    }
+
+    @Test
+    void shouldDetectLanguagesByShareOfBytes() {
+        //Arrange
+        Map<String, Long> bytesByLanguage = Map.of("Python", 300L, "Go", 100L);
+
+        //Act
+        Map<String, Double> actual = underTest.detectLanguages(bytesByLanguage);
+
+        //Assert
+        assertThat(actual)
+                .hasSize(2)
+                .containsEntry("Python", 75.0)
+                .containsEntry("Go", 25.0);
+    }
+
+    @Test
+    void shouldRoundPercentagesToTwoDecimals() {
+        //Arrange
+        Map<String, Long> bytesByLanguage = Map.of("Java", 2L, "PHP", 1L);
+
+        //Act
+        Map<String, Double> actual = underTest.detectLanguages(bytesByLanguage);
+
+        //Assert
+        assertThat(actual)
+                .containsEntry("Java", 66.67)
+                .containsEntry("PHP", 33.33);
+    }
+
+    @Test
+    void shouldReturnEmptyMapWhenNoLanguageIsDetected() {
+        //Act
+        Map<String, Double> actual = underTest.detectLanguages(Map.of());
+
+        //Assert
+        assertThat(actual).isEmpty();
+    }
+
+    @Test
+    void shouldClassifyFilesByNameAndExtension() throws IOException {
+        //Act Assert
+        assertThat(underTest.classify(projectPath.resolve("Dockerfile"), "Dockerfile", 10)).contains("Dockerfile");
+        assertThat(underTest.classify(projectPath.resolve("Main.JAVA"), "Main.JAVA", 10)).contains("Java");
+        assertThat(underTest.classify(projectPath.resolve("README.md"), "README.md", 10)).isEmpty();
+    }
+
+    @Test
+    void shouldClassifyScriptsByShebang() throws IOException {
+        //Arrange
+        Path deploy = projectPath.resolve("deploy");
+        Path run = projectPath.resolve("run");
+        Path license = projectPath.resolve("LICENSE");
+        Files.writeString(deploy, "#!/usr/bin/env python3\nprint('deploy')\n");
+        Files.writeString(run, "#!/bin/bash\necho run\n");
+        Files.writeString(license, "MIT License");
+
+        //Act
+        Optional<String> deployLanguage = underTest.classify(deploy, "deploy", Files.size(deploy));
+        Optional<String> runLanguage = underTest.classify(run, "run", Files.size(run));
+        Optional<String> licenseLanguage = underTest.classify(license, "LICENSE", Files.size(license));
+
+        //Assert
+        assertThat(deployLanguage).contains("Python");
+        assertThat(runLanguage).contains("Shell");
+        assertThat(licenseLanguage).isEmpty();
+    }
+}
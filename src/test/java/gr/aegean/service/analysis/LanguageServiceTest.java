@@ -8,31 +8,63 @@ import org.mockito.junit.jupiter.MockitoExtension;
 
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.verifyNoInteractions;
 import static org.mockito.Mockito.when;
 
+import java.nio.file.Path;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.Set;
+
+import gr.aegean.model.analysis.LanguageDetectionMode;
+import gr.aegean.model.analysis.ProjectProfile;
 
 
 @ExtendWith(MockitoExtension.class)
 class LanguageServiceTest {
     @Mock
     private DockerService dockerService;
+    @Mock
+    private LanguageDetector languageDetector;
     private LanguageService underTest;
+    private static final ProjectProfile PROFILE = new ProjectProfile(
+            Path.of("path"),
+            Set.of(),
+            Set.of(),
+            1,
+            31261,
+            Map.of("py", 31261L),
+            Map.of("Python", 31261L));
 
 
     @BeforeEach
     void setup() {
-        underTest = new LanguageService(dockerService);
+        underTest = new LanguageService(dockerService, languageDetector, LanguageDetectionMode.IN_PROCESS);
+    }
+
+    @Test
+    void shouldDetectLanguagesInProcess() {
+        //Arrange
+        when(languageDetector.detectLanguages(PROFILE.bytesByLanguage())).thenReturn(Map.of("Python", 100.0));
+
+        //Act
+        Map<String, Double> actual = underTest.detectLanguages(PROFILE);
+
+        //Assert
+        assertThat(actual)
+                .hasSize(1)
+                .containsEntry("Python", 100.0);
+        verifyNoInteractions(dockerService);
     }
 
     @Test
-    void shouldDetectLanguages() {
+    void shouldDetectLanguagesWithLinguistContainer() {
         //Arrange
+        underTest = new LanguageService(dockerService, languageDetector, LanguageDetectionMode.LINGUIST);
         when(dockerService.createLinguistContainer(any(String.class))).thenReturn("100.00% 31261      Python");
 
         //Act
-        Map<String, Double> actual = underTest.detectLanguages("path");
+        Map<String, Double> actual = underTest.detectLanguages(PROFILE);
 
         //Assert
         assertThat(actual)
@@ -0,0 +1,163 @@
+package gr.aegean.service.analysis;
+
+import org.eclipse.jgit.api.Git;
+import org.eclipse.jgit.api.errors.GitAPIException;
+import org.eclipse.jgit.lib.Constants;
+import org.eclipse.jgit.revwalk.RevCommit;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.util.unit.DataSize;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.awaitility.Awaitility.await;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+
+class MirrorServiceTest {
+    private MirrorService underTest;
+    @TempDir
+    private Path baseDirectory;
+    @TempDir
+    private Path remoteDirectory;
+
+    @BeforeEach
+    void setup() {
+        underTest = new MirrorService(
+                baseDirectory.toString(),
+                DataSize.ofMegabytes(10),
+                Duration.ofMinutes(1),
+                new SimpleMeterRegistry());
+    }
+
+    @AfterEach
+    void tearDown() {
+        underTest.shutdown();
+    }
+
+    /*
+        The first clone of a repository goes to the remote, while its mirror is filled in the background. Only the
+        branches are mirrored.
+     */
+    @Test
+    void shouldFillMirrorInBackgroundWithBranchesOnly() throws IOException, GitAPIException {
+        //Arrange
+        Path remote = createRemote("repo");
+        try (Git git = Git.open(remote.toFile())) {
+            git.tag().setName("v1").setAnnotated(false).call();
+            git.branchCreate().setName("feature").call();
+        }
+
+        //Act
+        Optional<Path> actual = underTest.acquireMirror("repo", remote.toString());
+
+        //Assert
+        assertThat(actual).isEmpty();
+        Path mirror = awaitMirror("repo", remote.toString());
+        try (Git git = Git.open(mirror.toFile())) {
+            assertThat(git.getRepository().getRefDatabase().getRefsByPrefix(Constants.R_TAGS)).isEmpty();
+            assertThat(git.getRepository().getRefDatabase().getRefsByPrefix(Constants.R_HEADS)).hasSize(2);
+            assertThat(git.getRepository().resolve(Constants.HEAD))
+                    .isEqualTo(Git.open(remote.toFile()).getRepository().resolve(Constants.HEAD));
+        }
+    }
+
+    @Test
+    void shouldFetchNewCommitsIntoExistingMirror() throws IOException, GitAPIException {
+        //Arrange
+        Path remote = createRemote("repo");
+        String remoteUrl = remote.toString();
+        Path mirror = awaitMirror("repo", remoteUrl);
+        underTest.releaseMirror("repo");
+        RevCommit latestCommit = commit(remote, "second");
+
+        //Act
+        Optional<Path> actual = underTest.acquireMirror("repo", remoteUrl);
+
+        //Assert
+        assertThat(actual).contains(mirror);
+        try (Git git = Git.open(mirror.toFile())) {
+            assertThat(git.getRepository().resolve(Constants.HEAD)).isEqualTo(latestCommit.getId());
+        }
+        assertThat(underTest.getMirrorCount()).isEqualTo(1);
+    }
+
+    @Test
+    void shouldReturnEmptyOptionalWhenRemoteCanNotBeFetched() {
+        //Act
+        Optional<Path> actual = underTest.acquireMirror("repo", remoteDirectory.resolve("missing").toString());
+
+        //Assert
+        assertThat(actual).isEmpty();
+        await().atMost(5, TimeUnit.SECONDS).until(() -> underTest.getMirrorCount() == 0);
+    }
+
+    /*
+        The quota fits one and a half mirrors, so filling the second mirror evicts the first one, which is not in use.
+     */
+    @Test
+    void shouldEvictLeastRecentlyUsedMirrorWhenQuotaIsExceeded() throws IOException, GitAPIException {
+        //Arrange
+        Path first = awaitMirror("first", createRemote("first").toString());
+        underTest.releaseMirror("first");
+        long mirrorSize = underTest.getUsedBytes();
+        underTest.shutdown();
+        underTest = new MirrorService(
+                baseDirectory.toString(),
+                DataSize.ofBytes(mirrorSize + mirrorSize / 2),
+                Duration.ofMinutes(1),
+                new SimpleMeterRegistry());
+        underTest.acquireMirror("first", remoteDirectory.resolve("first").toString());
+        underTest.releaseMirror("first");
+
+        //Act
+        Path second = awaitMirror("second", createRemote("second").toString());
+
+        //Assert
+        assertThat(first).doesNotExist();
+        assertThat(second).exists();
+        assertThat(underTest.getMirrorCount()).isEqualTo(1);
+    }
+
+    /*
+        A mirror that is being filled is not handed out, so the mirror is acquired once the fill is over.
+     */
+    private Path awaitMirror(String normalizedUrl, String remoteUrl) {
+        return await().atMost(5, TimeUnit.SECONDS)
+                .until(() -> underTest.acquireMirror(normalizedUrl, remoteUrl), Optional::isPresent)
+                .orElseThrow();
+    }
+
+    private Path createRemote(String name) throws IOException, GitAPIException {
+        Path remote = Files.createDirectories(remoteDirectory.resolve(name));
+        try (Git git = Git.init().setDirectory(remote.toFile()).call()) {
+            Files.writeString(remote.resolve("main.py"), "print(1)");
+        }
+        commit(remote, "first");
+
+        return remote;
+    }
+
+    private RevCommit commit(Path repository, String message) throws IOException, GitAPIException {
+        try (Git git = Git.open(repository.toFile())) {
+            Files.writeString(repository.resolve("main.py"), message);
+            git.add().addFilepattern(".").call();
+
+            return git.commit()
+                    .setMessage(message)
+                    .setAuthor("user", "user@example.com")
+                    .setCommitter("user", "user@example.com")
+                    .setSign(false)
+                    .call();
+        }
+    }
+}
@@ -0,0 +1,121 @@
+package gr.aegean.service.analysis;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.Optional;
+
+import gr.aegean.model.analysis.ProjectProfile;
+
+
+class ProjectProfileServiceTest {
+    private ProjectProfileService underTest;
+    @TempDir
+    private Path projectPath;
+
+    @BeforeEach
+    void setup() {
+        underTest = new ProjectProfileService(new LanguageDetector(), 2);
+    }
+
+    @AfterEach
+    void tearDown() {
+        underTest.shutdown();
+    }
+
+    @Test
+    void shouldCountFilesAndBytesPerExtensionAndLanguage() throws IOException {
+        //Arrange
+        Files.createDirectories(projectPath.resolve("src"));
+        Files.writeString(projectPath.resolve("src/graph.py"), "a".repeat(300));
+        Files.writeString(projectPath.resolve("src/node.py"), "a".repeat(100));
+        Files.writeString(projectPath.resolve("README.md"), "a".repeat(50));
+
+        //Act
+        ProjectProfile actual = underTest.profileProject(projectPath);
+
+        //Assert
+        assertThat(actual.fileCount()).isEqualTo(3);
+        assertThat(actual.totalBytes()).isEqualTo(450);
+        assertThat(actual.bytesByExtension())
+                .containsEntry("py", 400L)
+                .containsEntry("md", 50L);
+        assertThat(actual.bytesByLanguage()).containsOnlyKeys("Python");
+    }
+
+    @Test
+    void shouldFindBuildMarkersAndTopLevelModules() throws IOException {
+        //Arrange
+        Files.createDirectories(projectPath.resolve("backend/core"));
+        Files.createDirectories(projectPath.resolve("frontend"));
+        Files.writeString(projectPath.resolve("pom.xml"), "<project/>");
+        Files.writeString(projectPath.resolve("backend/pom.xml"), "<project/>");
+        Files.writeString(projectPath.resolve("backend/core/pom.xml"), "<project/>");
+        Files.writeString(projectPath.resolve("frontend/package.json"), "{}");
+
+        //Act
+        ProjectProfile actual = underTest.profileProject(projectPath);
+
+        //Assert
+        assertThat(actual.isMavenProject()).isTrue();
+        assertThat(actual.buildMarkers()).containsExactlyInAnyOrder("pom.xml", "package.json");
+        assertThat(actual.modules()).containsExactlyInAnyOrder("backend", "frontend");
+    }
+
+    /*
+        A pom.xml of a dependency doesn't make the project a Maven project.
+     */
+    @Test
+    void shouldSkipDependencyAndVersionControlDirectories() throws IOException {
+        //Arrange
+        Files.createDirectories(projectPath.resolve("node_modules/lib"));
+        Files.createDirectories(projectPath.resolve(".git"));
+        Files.writeString(projectPath.resolve("node_modules/lib/index.js"), "a".repeat(1000));
+        Files.writeString(projectPath.resolve("node_modules/lib/pom.xml"), "<project/>");
+        Files.writeString(projectPath.resolve(".git/HEAD"), "ref: refs/heads/main");
+        Files.writeString(projectPath.resolve("app.ts"), "a".repeat(10));
+
+        //Act
+        ProjectProfile actual = underTest.profileProject(projectPath);
+
+        //Assert
+        assertThat(actual.fileCount()).isEqualTo(1);
+        assertThat(actual.isMavenProject()).isFalse();
+        assertThat(actual.bytesByLanguage()).containsOnlyKeys("TypeScript");
+    }
+
+    /*
+        A file that can't be read is still counted, only its language is unknown.
+     */
+    @Test
+    void shouldProfileProjectWhenFileCantBeRead() throws IOException {
+        //Arrange
+        LanguageDetector languageDetector = mock(LanguageDetector.class);
+        when(languageDetector.classify(any(), eq("graph.py"), anyLong())).thenReturn(Optional.of("Python"));
+        when(languageDetector.classify(any(), eq("run"), anyLong())).thenThrow(new IOException("Access is denied"));
+        underTest.shutdown();
+        underTest = new ProjectProfileService(languageDetector, 2);
+        Files.writeString(projectPath.resolve("graph.py"), "a".repeat(300));
+        Files.writeString(projectPath.resolve("run"), "#!/bin/sh");
+
+        //Act
+        ProjectProfile actual = underTest.profileProject(projectPath);
+
+        //Assert
+        assertThat(actual.fileCount()).isEqualTo(2);
+        assertThat(actual.bytesByLanguage()).containsOnly(Map.entry("Python", 300L));
+    }
+}
@@ -0,0 +1,140 @@
+package gr.aegean.service.analysis;
+
+import gr.aegean.model.analysis.sonarqube.ProjectsReport;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.time.Duration;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+
+@ExtendWith(MockitoExtension.class)
+class SonarProjectServiceTest {
+    @Mock
+    private SonarService sonarService;
+    private SonarProjectService underTest;
+    private static final String ACTIVE_KEY = "2c5f3a1e-8b7d-4e6f-9a0b-1c2d3e4f5a6b";
+    private static final String ORPHAN_KEY = "7d9e1f2a-3b4c-4d5e-8f6a-7b8c9d0e1f2a";
+    private static final String RECENT_KEY = "a1b2c3d4-e5f6-4a7b-8c9d-0e1f2a3b4c5d";
+    private static final String UNANALYZED_KEY = "f0e1d2c3-b4a5-4968-8776-655443322110";
+    private static final DateTimeFormatter ANALYSIS_DATE_FORMAT = DateTimeFormatter.ofPattern(
+            "yyyy-MM-dd'T'HH:mm:ssZ");
+
+    @AfterEach
+    void tearDown() {
+        underTest.shutdown();
+    }
+
+    @Test
+    void shouldDeleteProjectOnceReleasedByEveryAnalysis() {
+        //Arrange
+        underTest = new SonarProjectService(sonarService, Runnable::run, Duration.ZERO, Duration.ofHours(1));
+        underTest.acquireProject(ACTIVE_KEY);
+        underTest.acquireProject(ACTIVE_KEY);
+
+        //Act
+        underTest.releaseProject(ACTIVE_KEY);
+
+        //Assert
+        verify(sonarService, never()).deleteProject(any());
+
+        //Act
+        underTest.releaseProject(ACTIVE_KEY);
+
+        //Assert
+        verify(sonarService).deleteProject(ACTIVE_KEY);
+    }
+
+    /*
+        The deletion runs on its own thread and blocks until it's released. Acquiring another project doesn't wait for
+        it.
+     */
+    @Test
+    void shouldWaitForDeletionBeforeAcquiringProject() throws Exception {
+        //Arrange
+        underTest = new SonarProjectService(
+                sonarService,
+                runnable -> new Thread(runnable).start(),
+                Duration.ZERO,
+                Duration.ofHours(1));
+        CountDownLatch deleting = new CountDownLatch(1);
+        CountDownLatch deleted = new CountDownLatch(1);
+        doAnswer(invocation -> {
+            deleting.countDown();
+            deleted.await(5, TimeUnit.SECONDS);
+
+            return null;
+        }).when(sonarService).deleteProject(ACTIVE_KEY);
+        underTest.acquireProject(ACTIVE_KEY);
+        underTest.releaseProject(ACTIVE_KEY);
+        deleting.await(5, TimeUnit.SECONDS);
+
+        //Act
+        CompletableFuture<Void> acquired = CompletableFuture.runAsync(() -> underTest.acquireProject(ACTIVE_KEY));
+        underTest.acquireProject(ORPHAN_KEY);
+
+        //Assert
+        assertThatThrownBy(() -> acquired.get(200, TimeUnit.MILLISECONDS)).isInstanceOf(TimeoutException.class);
+
+        //Act
+        deleted.countDown();
+
+        //Assert
+        acquired.get(5, TimeUnit.SECONDS);
+    }
+
+    /*
+        Projects that are in use, were analyzed within the retention or were not created by us are kept.
+     */
+    @Test
+    void shouldPurgeOrphanedProjectsOutsideRetention() {
+        //Arrange
+        underTest = new SonarProjectService(sonarService, Runnable::run, Duration.ofHours(1), Duration.ofHours(1));
+        OffsetDateTime now = OffsetDateTime.now(ZoneOffset.ofHours(3));
+        when(sonarService.findProjects()).thenReturn(List.of(
+                project(ACTIVE_KEY, now.minusDays(1)),
+                project(ORPHAN_KEY, now.minusDays(1)),
+                project(RECENT_KEY, now.minusMinutes(5)),
+                project(UNANALYZED_KEY, null),
+                project("my-project", now.minusDays(1))));
+        underTest.acquireProject(ACTIVE_KEY);
+
+        //Act
+        underTest.purgeOrphanedProjects();
+
+        //Assert
+        verify(sonarService).deleteProject(ORPHAN_KEY);
+        verify(sonarService).deleteProject(UNANALYZED_KEY);
+        verify(sonarService, never()).deleteProject(ACTIVE_KEY);
+        verify(sonarService, never()).deleteProject(RECENT_KEY);
+        verify(sonarService, never()).deleteProject("my-project");
+    }
+
+    private ProjectsReport.Project project(String key, OffsetDateTime lastAnalysisDate) {
+        ProjectsReport.Project project = new ProjectsReport.Project();
+        project.setKey(key);
+        if (lastAnalysisDate != null) {
+            project.setLastAnalysisDate(lastAnalysisDate.format(ANALYSIS_DATE_FORMAT));
+        }
+
+        return project;
+    }
+}
@@ -0,0 +1,211 @@
+package gr.aegean.service.analysis;
+
+import gr.aegean.entity.AnalysisReport;
+import gr.aegean.model.analysis.quality.QualityMetric;
+import gr.aegean.model.analysis.sonarqube.IssuesReport;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.http.MediaType;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.test.web.client.MockRestServiceServer;
+import org.springframework.web.client.RestTemplate;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.when;
+import static org.springframework.test.web.client.ExpectedCount.once;
+import static org.springframework.test.web.client.match.MockRestRequestMatchers.header;
+import static org.springframework.test.web.client.match.MockRestRequestMatchers.requestTo;
+import static org.springframework.test.web.client.response.MockRestResponseCreators.withSuccess;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+
+@ExtendWith(MockitoExtension.class)
+class SonarServiceTest {
+    @Mock
+    private SonarWebhookService sonarWebhookService;
+    private MockRestServiceServer server;
+    private SonarService underTest;
+    private static final String BASE_URL = "http://localhost:9000/api";
+    private static final String ISSUES_URL = BASE_URL + "/issues/search?componentKeys=projectKey&ps=500";
+    private static final String HOTSPOTS_URL = BASE_URL + "/hotspots/search?projectKey=projectKey&ps=500";
+    private static final String MEASURES_URL = BASE_URL + "/measures/search?projectKeys=projectKey&metricKeys=" +
+            "comment_lines_density,functions,duplicated_lines_density,sqale_debt_ratio,reliability_remediation_effort," +
+            "cognitive_complexity,complexity,security_remediation_effort,ncloc";
+    private static final String TASK_URL = BASE_URL + "/ce/task?id=taskId";
+
+    @BeforeEach
+    void setup() {
+        RestTemplate restTemplate = new RestTemplate();
+        server = MockRestServiceServer.bindTo(restTemplate)
+                .ignoreExpectOrder(true)
+                .build();
+
+        underTest = new SonarService(
+                sonarWebhookService,
+                Runnable::run,
+                restTemplate,
+                new AnalysisMetrics(new SimpleMeterRegistry()));
+        ReflectionTestUtils.setField(underTest, "baseUrl", BASE_URL);
+        ReflectionTestUtils.setField(underTest, "authToken", "token");
+    }
+
+    @Test
+    void shouldFetchEveryPageOfIssuesBasedOnTotal() {
+        //Arrange
+        expect(ISSUES_URL + "&p=1", issues("rule:1", 501));
+        expect(ISSUES_URL + "&p=2", issues("rule:2", 501));
+        expect(HOTSPOTS_URL + "&p=1", hotspots(1));
+        expect(MEASURES_URL, measures());
+
+        //Act
+        AnalysisReport report = underTest.fetchAnalysisReport("projectKey", AnalysisMetrics.UNKNOWN_PROJECT);
+
+        //Assert
+        assertThat(report.getIssuesReport().getIssues())
+                .extracting(IssuesReport.IssueDetails::getRule)
+                .containsExactly("rule:1", "rule:2");
+        assertThat(report.getHotspotsReport().getHotspots()).hasSize(1);
+        server.verify();
+    }
+
+    /*
+        SonarQube returns nothing past the first 10000 results of a query, so the query is split by issue type.
+     */
+    @Test
+    void shouldSplitIssuesByTypeWhenTotalExceedsResultWindow() {
+        //Arrange
+        expect(ISSUES_URL + "&p=1", issues("rule:0", 10_001));
+        expect(ISSUES_URL + "&types=BUG&p=1", issues("rule:1", 1));
+        expect(ISSUES_URL + "&types=VULNERABILITY&p=1", issues("rule:2", 1));
+        expect(ISSUES_URL + "&types=CODE_SMELL&p=1", issues("rule:3", 1));
+        expect(HOTSPOTS_URL + "&p=1", hotspots(1));
+        expect(MEASURES_URL, measures());
+
+        //Act
+        AnalysisReport report = underTest.fetchAnalysisReport("projectKey", AnalysisMetrics.UNKNOWN_PROJECT);
+
+        //Assert
+        assertThat(report.getIssuesReport().getIssues())
+                .extracting(IssuesReport.IssueDetails::getRule)
+                .containsExactly("rule:1", "rule:2", "rule:3");
+        server.verify();
+    }
+
+    /*
+        The densities and the debt ratio are computed from the totals of every file, not added up.
+     */
+    @Test
+    void shouldAggregateFileMeasures() {
+        //Arrange
+        Map<String, Map<String, Double>> fileMeasures = Map.of(
+                "main.py", Map.of(
+                        "ncloc", 60.0,
+                        "comment_lines", 20.0,
+                        "functions", 4.0,
+                        "lines", 100.0,
+                        "duplicated_lines", 10.0,
+                        "sqale_index", 5.0,
+                        "development_cost", 100.0),
+                "util.py", Map.of(
+                        "ncloc", 20.0,
+                        "comment_lines", 0.0,
+                        "functions", 1.0,
+                        "lines", 100.0,
+                        "duplicated_lines", 0.0,
+                        "sqale_index", 0.0,
+                        "development_cost", 100.0));
+
+        //Act
+        Map<QualityMetric, Double> actual = underTest.aggregateFileMeasures(fileMeasures);
+
+        //Assert
+        assertThat(actual)
+                .containsEntry(QualityMetric.LINES_OF_CODE, 80.0)
+                .containsEntry(QualityMetric.COMMENT_RATE, 20.0)
+                .containsEntry(QualityMetric.METHOD_SIZE, 16.0)
+                .containsEntry(QualityMetric.DUPLICATION, 0.05)
+                .containsEntry(QualityMetric.TECHNICAL_DEBT_RATIO, 0.025);
+    }
+
+    /*
+        A notification that arrived with a status that is not final doesn't end the wait, the task is polled until it
+        is finished.
+     */
+    @Test
+    void shouldKeepPollingWhenWebhookStatusIsNotFinal() {
+        //Arrange
+        ReflectionTestUtils.setField(underTest, "pollInitialDelay", Duration.ofMillis(10));
+        ReflectionTestUtils.setField(underTest, "pollMaxDelay", Duration.ofMillis(20));
+        ReflectionTestUtils.setField(underTest, "taskTimeout", Duration.ofSeconds(5));
+        when(sonarWebhookService.getTask("projectKey")).thenReturn(CompletableFuture.completedFuture("IN_PROGRESS"));
+        expect(TASK_URL, task("PENDING"));
+        expect(TASK_URL, task("IN_PROGRESS"));
+        expect(TASK_URL, task("SUCCESS"));
+
+        //Act
+        boolean actual = underTest.waitForAnalysis("projectKey", "taskId");
+
+        //Assert
+        assertThat(actual).isTrue();
+        server.verify();
+    }
+
+    private void expect(String url, String body) {
+        server.expect(once(), requestTo(url))
+                .andExpect(header("Authorization", "Bearer token"))
+                .andRespond(withSuccess(body, MediaType.APPLICATION_JSON));
+    }
+
+    private String issues(String rule, int total) {
+        return String.format("""
+                {
+                    "paging": { "pageIndex": 1, "pageSize": 500, "total": %d },
+                    "issues": [ { "rule": "%s", "severity": "MAJOR", "type": "BUG" } ]
+                }
+                """, total, rule);
+    }
+
+    private String hotspots(int total) {
+        return String.format("""
+                {
+                    "paging": { "pageIndex": 1, "pageSize": 500, "total": %d },
+                    "hotspots": [ { "ruleKey": "rule", "vulnerabilityProbability": "HIGH" } ]
+                }
+                """, total);
+    }
+
+    private String task(String status) {
+        return String.format("""
+                {
+                    "task": { "id": "taskId", "status": "%s" }
+                }
+                """, status);
+    }
+
+    private String measures() {
+        return """
+                {
+                    "measures": [
+                        { "metric": "comment_lines_density", "value": 10.0 },
+                        { "metric": "functions", "value": 10.0 },
+                        { "metric": "duplicated_lines_density", "value": 5.0 },
+                        { "metric": "sqale_debt_ratio", "value": 1.0 },
+                        { "metric": "reliability_remediation_effort", "value": 3.0 },
+                        { "metric": "cognitive_complexity", "value": 4.0 },
+                        { "metric": "complexity", "value": 6.0 },
+                        { "metric": "security_remediation_effort", "value": 2.0 },
+                        { "metric": "ncloc", "value": 100.0 }
+                    ]
+                }
+                """;
+    }
+}
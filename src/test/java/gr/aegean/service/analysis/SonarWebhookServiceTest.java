@@ -0,0 +1,110 @@
+package gr.aegean.service.analysis;
+
+import gr.aegean.exception.UnauthorizedException;
+
+import org.bouncycastle.util.encoders.Hex;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.CompletableFuture;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+
+class SonarWebhookServiceTest {
+    private SonarWebhookService underTest;
+    private static final String SECRET = "secret";
+    private static final String PAYLOAD = """
+            {
+                "taskId": "AVh21JS2JepAEhwQ-b3u",
+                "status": "SUCCESS",
+                "project": {
+                    "key": "projectKey",
+                    "name": "projectKey"
+                }
+            }
+            """;
+
+    @BeforeEach
+    void setup() {
+        underTest = new SonarWebhookService(SECRET);
+    }
+
+    @Test
+    void shouldCompleteTaskOfProjectWhenSignatureIsValid() throws Exception {
+        //Arrange
+        CompletableFuture<String> task = underTest.getTask("projectKey");
+
+        //Act
+        underTest.handleWebhook(PAYLOAD, sign(PAYLOAD));
+
+        //Assert
+        assertThat(task).isCompletedWithValue("SUCCESS");
+    }
+
+    /*
+        The notification can arrive before the analysis thread starts waiting for the project.
+     */
+    @Test
+    void shouldKeepStatusUntilTaskIsClaimed() throws Exception {
+        //Arrange
+        underTest.handleWebhook(PAYLOAD, sign(PAYLOAD));
+
+        //Act
+        CompletableFuture<String> task = underTest.getTask("projectKey");
+
+        //Assert
+        assertThat(task).isCompletedWithValue("SUCCESS");
+    }
+
+    @Test
+    void shouldThrowUnauthorizedExceptionWhenSignatureIsInvalid() {
+        assertThatThrownBy(() -> underTest.handleWebhook(PAYLOAD, "invalid"))
+                .isInstanceOf(UnauthorizedException.class)
+                .hasMessage("Invalid webhook signature");
+    }
+
+    @Test
+    void shouldThrowUnauthorizedExceptionWhenNoSecretIsConfigured() throws Exception {
+        //Arrange
+        String signature = sign(PAYLOAD);
+        underTest = new SonarWebhookService("");
+
+        //Act Assert
+        assertThatThrownBy(() -> underTest.handleWebhook(PAYLOAD, signature))
+                .isInstanceOf(UnauthorizedException.class)
+                .hasMessage("Invalid webhook signature");
+    }
+
+    @Test
+    void shouldThrowIllegalArgumentExceptionWhenStatusIsMissing() throws Exception {
+        //Arrange
+        String payload = """
+                {
+                    "taskId": "AVh21JS2JepAEhwQ-b3u",
+                    "project": {
+                        "key": "projectKey"
+                    }
+                }
+                """;
+        String signature = sign(payload);
+
+        //Act Assert
+        assertThatThrownBy(() -> underTest.handleWebhook(payload, signature))
+                .isInstanceOf(IllegalArgumentException.class)
+                .hasMessage("Invalid webhook payload");
+        assertThat(underTest.getTask("projectKey")).isNotDone();
+    }
+
+    private String sign(String payload) throws Exception {
+        Mac mac = Mac.getInstance("HmacSHA256");
+        mac.init(new SecretKeySpec(SECRET.getBytes(StandardCharsets.UTF_8), "HmacSHA256"));
+
+        return new String(Hex.encode(mac.doFinal(payload.getBytes(StandardCharsets.UTF_8))));
+    }
+}
@@ -0,0 +1,158 @@
+package gr.aegean.service.analysis;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.util.unit.DataSize;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Optional;
+
+import gr.aegean.exception.ServerErrorException;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+
+class WorkspaceServiceTest {
+    private WorkspaceService underTest;
+    private SimpleMeterRegistry meterRegistry;
+    @TempDir
+    private Path baseDirectory;
+
+    @BeforeEach
+    void setup() {
+        meterRegistry = new SimpleMeterRegistry();
+        underTest = new WorkspaceService(baseDirectory.toString(), DataSize.ofBytes(1000), 2, meterRegistry);
+    }
+
+    @Test
+    void shouldDeleteCheckoutWhenItIsNotKept() throws IOException {
+        //Arrange
+        Path checkout = createCheckout(underTest.createRequestFolder(), 100);
+        underTest.registerCheckout(checkout);
+
+        //Act
+        underTest.releaseCheckout(checkout, "url", "sha", false);
+
+        //Assert
+        assertThat(checkout).doesNotExist();
+        assertThat(underTest.getUsedBytes()).isZero();
+    }
+
+    @Test
+    void shouldReuseKeptCheckoutOfSameCommit() throws IOException {
+        //Arrange
+        File requestFolder = underTest.createRequestFolder();
+        Path checkout = createCheckout(requestFolder, 100);
+        underTest.registerCheckout(checkout);
+        underTest.releaseCheckout(checkout, "url", "sha", true);
+        underTest.deleteRequestFolder(requestFolder);
+
+        //Act
+        Optional<Path> actual = underTest.acquireCheckout("url", "sha");
+
+        //Assert
+        assertThat(actual).isPresent();
+        assertThat(actual.get().resolve("file.txt")).exists();
+        assertThat(actual.get().getFileName()).isEqualTo(checkout.getFileName());
+        assertThat(underTest.acquireCheckout("url", "other")).isEmpty();
+        assertThat(underTest.getActiveCheckoutCount()).isEqualTo(1);
+    }
+
+    /*
+        The task id of the previous scan must not be picked up by the next one, and the pooled checkout still takes the
+        bytes it was registered with.
+     */
+    @Test
+    void shouldRemoveScanOutputFromPooledCheckout() throws IOException {
+        //Arrange
+        Path checkout = createCheckout(underTest.createRequestFolder(), 100);
+        underTest.registerCheckout(checkout);
+        Files.createDirectories(checkout.resolve(".scannerwork"));
+        Files.writeString(checkout.resolve(".scannerwork").resolve("report-task.txt"), "ceTaskId=task");
+        Files.writeString(checkout.resolve("Dockerfile"), "FROM maven");
+
+        //Act
+        underTest.releaseCheckout(checkout, "url", "sha", true);
+
+        //Assert
+        Path pooled = underTest.acquireCheckout("url", "sha").orElseThrow();
+        assertThat(pooled.resolve(".scannerwork")).doesNotExist();
+        assertThat(pooled.resolve("Dockerfile")).doesNotExist();
+        assertThat(pooled.resolve("file.txt")).exists();
+        assertThat(underTest.getUsedBytes()).isEqualTo(100);
+    }
+
+    @Test
+    void shouldEvictLeastRecentlyUsedCheckoutWhenPoolIsFull() throws IOException {
+        //Arrange
+        Path first = keep("sha1", 100);
+        keep("sha2", 100);
+
+        //Act
+        keep("sha3", 100);
+
+        //Assert
+        assertThat(first).doesNotExist();
+        assertThat(underTest.acquireCheckout("url", "sha1")).isEmpty();
+        assertThat(underTest.getPooledCheckoutCount()).isEqualTo(2);
+    }
+
+    @Test
+    void shouldEvictPooledCheckoutsWhenQuotaIsExceeded() throws IOException {
+        //Arrange
+        keep("sha1", 600);
+
+        //Act
+        keep("sha2", 600);
+
+        //Assert
+        assertThat(underTest.acquireCheckout("url", "sha1")).isEmpty();
+        assertThat(underTest.getUsedBytes()).isEqualTo(600);
+    }
+
+    @Test
+    void shouldThrowServerErrorExceptionWhenActiveCheckoutsExhaustQuota() throws IOException {
+        //Arrange
+        underTest.registerCheckout(createCheckout(underTest.createRequestFolder(), 1000));
+
+        //Act Assert
+        assertThatThrownBy(() -> underTest.createRequestFolder())
+                .isInstanceOf(ServerErrorException.class);
+    }
+
+    @Test
+    void shouldExposeUsageMetrics() throws IOException {
+        //Arrange
+        underTest.registerCheckout(createCheckout(underTest.createRequestFolder(), 100));
+
+        //Act
+        double usage = meterRegistry.get("analysis.workspace.usage").gauge().value();
+        double active = meterRegistry.get("analysis.workspace.checkouts").tag("state", "active").gauge().value();
+
+        //Assert
+        assertThat(usage).isEqualTo(100);
+        assertThat(active).isEqualTo(1);
+    }
+
+    private Path keep(String commitSha, int size) throws IOException {
+        Path checkout = createCheckout(underTest.createRequestFolder(), size);
+        underTest.registerCheckout(checkout);
+        underTest.releaseCheckout(checkout, "url", commitSha, true);
+
+        return baseDirectory.resolve("pool").resolve(checkout.getFileName());
+    }
+
+    private Path createCheckout(File requestFolder, int size) throws IOException {
+        Path checkout = Files.createDirectories(requestFolder.toPath().resolve("checkout-" + System.nanoTime()));
+        Files.writeString(checkout.resolve("file.txt"), "a".repeat(size));
+
+        return checkout;
+    }
+}